@@ -18,7 +18,7 @@ package com.torodb.mongowp.bson;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.UnmodifiableIterator;
-import com.torodb.mongowp.bson.utils.IntBaseHasher;
+import com.torodb.mongowp.bson.utils.BsonContentHasher;
 
 import java.util.List;
 import java.util.stream.Stream;
@@ -40,7 +40,8 @@ public interface BsonArray extends BsonValue<BsonArray>, Iterable<BsonValue<?>>
   int size();
 
   /**
-   * @return {@link IntBaseHasher#hash(int) IntBaseHasher.hash(this.size())}
+   * @return the {@link BsonContentHasher content hash} of this array folded with
+   *         {@link BsonContentHasher#toHashCode(long)}
    */
   @Override
   public int hashCode();
@@ -50,6 +51,9 @@ public interface BsonArray extends BsonValue<BsonArray>, Iterable<BsonValue<?>>
    * <p>
    * An easy way to implement that is to delegate on
    * {@link Iterators#elementsEqual(java.lang.Iterator, java.lang.Iterator) }
+   * <p>
+   * As with {@link BsonDocument#equals(java.lang.Object) documents}, arrays serialized with the
+   * same bytes are equal even when they contain a NaN double.
    *
    * @param obj
    * @return
@@ -17,7 +17,7 @@ package com.torodb.mongowp.bson;
 
 import com.google.common.collect.UnmodifiableIterator;
 import com.torodb.mongowp.bson.BsonDocument.Entry;
-import com.torodb.mongowp.bson.utils.IntBaseHasher;
+import com.torodb.mongowp.bson.utils.BsonContentHasher;
 
 import java.io.Serializable;
 import java.util.NoSuchElementException;
@@ -69,6 +69,12 @@ public interface BsonDocument extends BsonValue<BsonDocument>, Iterable<Entry<?>
 
   /**
    * Two documents are equal if they contain the same entries in the same order.
+   * <p>
+   * Documents that are serialized with the same bytes are equal, even when they contain a NaN
+   * double. Compared entry by entry, a NaN double is not equal to another NaN double, so such
+   * documents are not equal to their copies that are not serialized. The cheap comparison of the
+   * bytes is preferred over that rule, which MongoDB does not follow either, as it considers all
+   * NaN values equal.
    *
    * @param obj
    * @return
@@ -77,8 +83,8 @@ public interface BsonDocument extends BsonValue<BsonDocument>, Iterable<Entry<?>
   public boolean equals(Object obj);
 
   /**
-   * The hashCode of a BsonDocument is calculated by calling {@linkplain IntBaseHasher#hash(int)
-   * IntBaseHasher.hash(this.size())}.
+   * The hashCode of a BsonDocument is its {@link BsonContentHasher content hash} folded with
+   * {@link BsonContentHasher#toHashCode(long)}.
    *
    * @return
    */
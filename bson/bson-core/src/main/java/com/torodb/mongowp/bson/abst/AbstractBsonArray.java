@@ -21,8 +21,8 @@ import com.torodb.mongowp.bson.BsonArray;
 import com.torodb.mongowp.bson.BsonType;
 import com.torodb.mongowp.bson.BsonValue;
 import com.torodb.mongowp.bson.BsonValueVisitor;
+import com.torodb.mongowp.bson.utils.BsonContentHasher;
 import com.torodb.mongowp.bson.utils.BsonTypeComparator;
-import com.torodb.mongowp.bson.utils.IntBaseHasher;
 
 public abstract class AbstractBsonArray extends CachedHashAbstractBsonValue<BsonArray>
     implements BsonArray {
@@ -110,7 +110,7 @@ public abstract class AbstractBsonArray extends CachedHashAbstractBsonValue<Bson
 
   @Override
   final int calculateHash() {
-    return IntBaseHasher.hash(size());
+    return BsonContentHasher.toHashCode(BsonContentHasher.getHash(this));
   }
 
   @Override
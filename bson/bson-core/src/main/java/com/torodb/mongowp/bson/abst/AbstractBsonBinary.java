@@ -112,7 +112,8 @@ public abstract class AbstractBsonBinary extends CachedHashAbstractBsonValue<Bso
       return false;
     }
     BsonBinary other = (BsonBinary) obj;
-    if (this.getSubtype() != other.getSubtype()) {
+    //the numeric subtype is compared, as several of them are mapped to the same subtype
+    if (this.getNumericSubType() != other.getNumericSubType()) {
       return false;
     }
     return this.getByteSource().contentEquals(other.getByteSource());
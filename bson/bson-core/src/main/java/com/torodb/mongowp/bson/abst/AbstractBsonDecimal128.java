@@ -86,7 +86,8 @@ public abstract class AbstractBsonDecimal128 extends AbstractBsonNumber<BigDecim
 
   @Override
   public final int hashCode() {
-    return getValue().hashCode();
+    //consistent with equals, which compares the bits, and cheaper than decoding the value
+    return 31 * Long.hashCode(getHigh()) + Long.hashCode(getLow());
   }
 
   @Override
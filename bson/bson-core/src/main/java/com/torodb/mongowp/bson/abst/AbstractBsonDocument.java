@@ -21,8 +21,8 @@ import com.torodb.mongowp.bson.BsonDocument;
 import com.torodb.mongowp.bson.BsonType;
 import com.torodb.mongowp.bson.BsonValue;
 import com.torodb.mongowp.bson.BsonValueVisitor;
+import com.torodb.mongowp.bson.utils.BsonContentHasher;
 import com.torodb.mongowp.bson.utils.BsonTypeComparator;
-import com.torodb.mongowp.bson.utils.IntBaseHasher;
 
 import java.util.Iterator;
 import java.util.Map;
@@ -121,7 +121,7 @@ public abstract class AbstractBsonDocument extends CachedHashAbstractBsonValue<B
 
   @Override
   int calculateHash() {
-    return IntBaseHasher.hash(size());
+    return BsonContentHasher.toHashCode(BsonContentHasher.getHash(this));
   }
 
   @Override
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.impl;
+
+import com.google.common.collect.UnmodifiableIterator;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.abst.AbstractBsonDocument;
+import com.torodb.mongowp.bson.annotations.NotMutable;
+import com.torodb.mongowp.bson.utils.BsonSizeCalculator;
+import com.torodb.mongowp.bson.utils.SerializedSizeAware;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A document that stores its keys and values on two parallel arrays, in insertion order.
+ *
+ * Keyed accesses scan the keys when the document is small. Documents with more than
+ * {@link #INDEX_THRESHOLD} entries build an open addressing hash table on the first keyed access,
+ * which stores the position of each key on the arrays. If a key is repeated, keyed accesses return
+ * its first entry, as {@link ListBasedBsonDocument} does.
+ */
+public class ArrayBasedBsonDocument extends AbstractBsonDocument implements SerializedSizeAware {
+
+  private static final long serialVersionUID = 2748234982735091124L;
+
+  /**
+   * The number of entries above which keyed accesses use a hash table instead of a linear scan.
+   */
+  static final int INDEX_THRESHOLD = 8;
+
+  private final String[] keys;
+  private final BsonValue<?>[] values;
+  /**
+   * The hash table used on keyed accesses, which stores the position of each key plus 1 (so 0
+   * marks an empty slot). It is lazily built and it is immutable once published, so it is safe to
+   * build it more than once when the document is shared between threads.
+   */
+  private transient volatile int[] index;
+  /**
+   * The cached serialized size or 0 if it has not been calculated yet.
+   */
+  private transient int serializedSize;
+
+  /**
+   * Creates a document with the given keys and values, which must not be modified after calling
+   * this constructor.
+   */
+  public ArrayBasedBsonDocument(@NotMutable String[] keys, @NotMutable BsonValue<?>[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("There are " + keys.length + " keys but "
+          + values.length + " values");
+    }
+    this.keys = keys;
+    this.values = values;
+  }
+
+  public static ArrayBasedBsonDocument fromMap(Map<String, BsonValue<?>> map) {
+    int size = map.size();
+    String[] keys = new String[size];
+    BsonValue<?>[] values = new BsonValue<?>[size];
+    int i = 0;
+    for (Map.Entry<String, BsonValue<?>> entry : map.entrySet()) {
+      keys[i] = entry.getKey();
+      values[i] = entry.getValue();
+      i++;
+    }
+    return new ArrayBasedBsonDocument(keys, values);
+  }
+
+  public static ArrayBasedBsonDocument fromEntries(List<Entry<?>> entries) {
+    int size = entries.size();
+    String[] keys = new String[size];
+    BsonValue<?>[] values = new BsonValue<?>[size];
+    for (int i = 0; i < size; i++) {
+      Entry<?> entry = entries.get(i);
+      keys[i] = entry.getKey();
+      values[i] = entry.getValue();
+    }
+    return new ArrayBasedBsonDocument(keys, values);
+  }
+
+  @Override
+  public BsonValue<?> get(String key) {
+    int pos = find(key);
+    if (pos < 0) {
+      return null;
+    }
+    return values[pos];
+  }
+
+  @Override
+  public boolean containsKey(String key) {
+    return find(key) >= 0;
+  }
+
+  @Override
+  public Entry<?> getEntry(String key) {
+    int pos = find(key);
+    if (pos < 0) {
+      return null;
+    }
+    return new SimpleEntry<>(keys[pos], values[pos]);
+  }
+
+  @Override
+  public Entry<?> getFirstEntry() throws NoSuchElementException {
+    if (keys.length == 0) {
+      throw new NoSuchElementException();
+    }
+    return new SimpleEntry<>(keys[0], values[0]);
+  }
+
+  @Override
+  public int size() {
+    return keys.length;
+  }
+
+  @Override
+  public int getSerializedSize() {
+    int result = serializedSize;
+    if (result == 0) {
+      result = BsonSizeCalculator.calculateDocumentSize(this);
+      serializedSize = result;
+    }
+    return result;
+  }
+
+  @Override
+  public UnmodifiableIterator<Entry<?>> iterator() {
+    return new UnmodifiableIterator<Entry<?>>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < keys.length;
+      }
+
+      @Override
+      public Entry<?> next() {
+        if (next >= keys.length) {
+          throw new NoSuchElementException();
+        }
+        Entry<?> result = new SimpleEntry<>(keys[next], values[next]);
+        next++;
+        return result;
+      }
+    };
+  }
+
+  private int find(String key) {
+    if (keys.length <= INDEX_THRESHOLD) {
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i].equals(key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+    int[] table = getIndex();
+    int mask = table.length - 1;
+    for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+      int pos = table[slot] - 1;
+      if (pos < 0) {
+        return -1;
+      }
+      if (keys[pos].equals(key)) {
+        return pos;
+      }
+    }
+  }
+
+  private int[] getIndex() {
+    int[] result = index;
+    if (result == null) {
+      result = buildIndex();
+      index = result;
+    }
+    return result;
+  }
+
+  private int[] buildIndex() {
+    //the load factor is kept below 0.5, so probe sequences are short and there is an empty slot
+    int[] table = new int[Integer.highestOneBit(keys.length * 2 - 1) << 1];
+    int mask = table.length - 1;
+    for (int i = 0; i < keys.length; i++) {
+      int slot = hash(keys[i]) & mask;
+      while (table[slot] != 0) {
+        if (keys[table[slot] - 1].equals(keys[i])) {
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+      if (table[slot] == 0) {
+        table[slot] = i + 1;
+      }
+    }
+    return table;
+  }
+
+  private static int hash(String key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+}
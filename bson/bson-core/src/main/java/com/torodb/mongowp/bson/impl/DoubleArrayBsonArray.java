@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.impl;
+
+import com.google.common.collect.UnmodifiableIterator;
+import com.torodb.mongowp.bson.BsonDouble;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.abst.AbstractBsonArray;
+import com.torodb.mongowp.bson.annotations.NotMutable;
+import com.torodb.mongowp.bson.utils.BsonSizeCalculator;
+import com.torodb.mongowp.bson.utils.SerializedSizeAware;
+
+import java.util.NoSuchElementException;
+
+/**
+ * An array whose elements are all double values, which are stored on a {@code double[]}.
+ *
+ * The {@link BsonDouble} of each element is created when it is accessed.
+ */
+public class DoubleArrayBsonArray extends AbstractBsonArray implements SerializedSizeAware {
+
+  private static final long serialVersionUID = 4923847198237492381L;
+
+  private final double[] values;
+
+  /**
+   * @param values the values of the array, which must not be modified after calling this
+   *               constructor
+   */
+  public DoubleArrayBsonArray(@NotMutable double[] values) {
+    this.values = values;
+  }
+
+  /**
+   * @return the primitive value of the element at the given position
+   */
+  public double getDouble(int index) {
+    return values[index];
+  }
+
+  @Override
+  public BsonValue<?> get(int index) {
+    return PrimitiveBsonDouble.newInstance(values[index]);
+  }
+
+  @Override
+  public boolean contains(BsonValue<?> element) {
+    if (!(element instanceof BsonDouble)) {
+      return false;
+    }
+    double value = ((BsonDouble) element).doubleValue();
+    for (double candidate : values) {
+      if (candidate == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+
+  @Override
+  public int getSerializedSize() {
+    return BsonSizeCalculator.getFixedSizeArraySize(values.length, Double.BYTES);
+  }
+
+  @Override
+  public UnmodifiableIterator<BsonValue<?>> iterator() {
+    return new UnmodifiableIterator<BsonValue<?>>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < values.length;
+      }
+
+      @Override
+      public BsonValue<?> next() {
+        if (next >= values.length) {
+          throw new NoSuchElementException();
+        }
+        return PrimitiveBsonDouble.newInstance(values[next++]);
+      }
+    };
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.impl;
+
+import com.google.common.collect.UnmodifiableIterator;
+import com.torodb.mongowp.bson.BsonInt32;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.abst.AbstractBsonArray;
+import com.torodb.mongowp.bson.annotations.NotMutable;
+import com.torodb.mongowp.bson.utils.BsonSizeCalculator;
+import com.torodb.mongowp.bson.utils.SerializedSizeAware;
+
+import java.util.NoSuchElementException;
+
+/**
+ * An array whose elements are all int32 values, which are stored on a {@code int[]}.
+ *
+ * The {@link BsonInt32} of each element is created when it is accessed.
+ */
+public class IntArrayBsonArray extends AbstractBsonArray implements SerializedSizeAware {
+
+  private static final long serialVersionUID = 8231748923749823479L;
+
+  private final int[] values;
+
+  /**
+   * @param values the values of the array, which must not be modified after calling this
+   *               constructor
+   */
+  public IntArrayBsonArray(@NotMutable int[] values) {
+    this.values = values;
+  }
+
+  /**
+   * @return the primitive value of the element at the given position
+   */
+  public int getInt(int index) {
+    return values[index];
+  }
+
+  @Override
+  public BsonValue<?> get(int index) {
+    return PrimitiveBsonInt32.newInstance(values[index]);
+  }
+
+  @Override
+  public boolean contains(BsonValue<?> element) {
+    if (!(element instanceof BsonInt32)) {
+      return false;
+    }
+    int value = ((BsonInt32) element).intValue();
+    for (int candidate : values) {
+      if (candidate == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+
+  @Override
+  public int getSerializedSize() {
+    return BsonSizeCalculator.getFixedSizeArraySize(values.length, Integer.BYTES);
+  }
+
+  @Override
+  public UnmodifiableIterator<BsonValue<?>> iterator() {
+    return new UnmodifiableIterator<BsonValue<?>>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < values.length;
+      }
+
+      @Override
+      public BsonValue<?> next() {
+        if (next >= values.length) {
+          throw new NoSuchElementException();
+        }
+        return PrimitiveBsonInt32.newInstance(values[next++]);
+      }
+    };
+  }
+}
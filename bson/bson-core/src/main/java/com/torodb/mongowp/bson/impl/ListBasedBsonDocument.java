@@ -20,6 +20,8 @@ import com.google.common.collect.UnmodifiableIterator;
 import com.torodb.mongowp.bson.BsonDocument;
 import com.torodb.mongowp.bson.abst.AbstractIterableBasedBsonDocument;
 import com.torodb.mongowp.bson.annotations.NotMutable;
+import com.torodb.mongowp.bson.utils.BsonSizeCalculator;
+import com.torodb.mongowp.bson.utils.SerializedSizeAware;
 
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -27,11 +29,16 @@ import java.util.NoSuchElementException;
 /**
  *
  */
-public class ListBasedBsonDocument extends AbstractIterableBasedBsonDocument {
+public class ListBasedBsonDocument extends AbstractIterableBasedBsonDocument
+    implements SerializedSizeAware {
 
   private static final long serialVersionUID = -6475758693810996556L;
 
   private final List<BsonDocument.Entry<?>> entries;
+  /**
+   * The cached serialized size or 0 if it has not been calculated yet.
+   */
+  private transient int serializedSize;
 
   public ListBasedBsonDocument(@NotMutable List<Entry<?>> entries) {
     this.entries = entries;
@@ -50,6 +57,16 @@ public class ListBasedBsonDocument extends AbstractIterableBasedBsonDocument {
     return entries.get(0);
   }
 
+  @Override
+  public int getSerializedSize() {
+    int result = serializedSize;
+    if (result == 0) {
+      result = BsonSizeCalculator.calculateDocumentSize(this);
+      serializedSize = result;
+    }
+    return result;
+  }
+
   @Override
   public UnmodifiableIterator<Entry<?>> iterator() {
     return Iterators.unmodifiableIterator(entries.iterator());
@@ -20,17 +20,24 @@ import com.google.common.collect.UnmodifiableIterator;
 import com.torodb.mongowp.bson.BsonValue;
 import com.torodb.mongowp.bson.abst.AbstractBsonDocument;
 import com.torodb.mongowp.bson.annotations.NotMutable;
+import com.torodb.mongowp.bson.utils.BsonSizeCalculator;
+import com.torodb.mongowp.bson.utils.SerializedSizeAware;
 
 import java.util.LinkedHashMap;
 
 /**
  *
  */
-public class MapBasedBsonDocument extends AbstractBsonDocument {
+public class MapBasedBsonDocument extends AbstractBsonDocument
+    implements SerializedSizeAware {
 
   private static final long serialVersionUID = 4020431717465865262L;
 
   private final LinkedHashMap<String, BsonValue<?>> map;
+  /**
+   * The cached serialized size or 0 if it has not been calculated yet.
+   */
+  private transient int serializedSize;
 
   public MapBasedBsonDocument(@NotMutable LinkedHashMap<String, BsonValue<?>> map) {
     this.map = map;
@@ -60,6 +67,16 @@ public class MapBasedBsonDocument extends AbstractBsonDocument {
     return new SimpleEntry<>(key, value);
   }
 
+  @Override
+  public int getSerializedSize() {
+    int result = serializedSize;
+    if (result == 0) {
+      result = BsonSizeCalculator.calculateDocumentSize(this);
+      serializedSize = result;
+    }
+    return result;
+  }
+
   @Override
   public UnmodifiableIterator<Entry<?>> iterator() {
     return Iterators.unmodifiableIterator(
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.impl;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.UnmodifiableIterator;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.abst.AbstractBsonDocument;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A document that is a view of another document plus the entries that have been replaced,
+ * appended or removed, so a copy of a big document with a few changes shares the entries that
+ * have not been changed with the original one.
+ *
+ * Changes follow the semantic of a {@link LinkedHashMap}: replaced entries keep their position
+ * and new entries are appended after the ones of the original document. Documents are immutable,
+ * but {@link #with(String, BsonValue)} and {@link #without(String)} return new documents that only
+ * copy the changes.
+ */
+public class OverlayBsonDocument extends AbstractBsonDocument {
+
+  private static final long serialVersionUID = -2930281947014574931L;
+
+  private final BsonDocument base;
+  /**
+   * The entries of the base document whose value has been changed.
+   */
+  private final Map<String, BsonValue<?>> replaced;
+  /**
+   * The entries whose keys are not (or are no longer) on the base document.
+   */
+  private final LinkedHashMap<String, BsonValue<?>> appended;
+  /**
+   * The keys of the base document that have been removed.
+   */
+  private final Set<String> removed;
+  /**
+   * The cached number of entries plus one or 0 if it has not been calculated yet.
+   */
+  private transient int sizePlusOne;
+
+  private OverlayBsonDocument(BsonDocument base, Map<String, BsonValue<?>> replaced,
+      LinkedHashMap<String, BsonValue<?>> appended, Set<String> removed) {
+    this.base = base;
+    this.replaced = replaced;
+    this.appended = appended;
+    this.removed = removed;
+  }
+
+  /**
+   * Returns a builder whose initial entries are the entries of the given document, which are not
+   * copied.
+   */
+  public static Builder builder(@Nonnull BsonDocument base) {
+    return new Builder(base);
+  }
+
+  /**
+   * Returns a document that contains the entries of this document plus the given one, which
+   * replaces the value of the key if it was already contained.
+   */
+  public OverlayBsonDocument with(@Nonnull String key, @Nonnull BsonValue<?> value) {
+    return builder(this).put(key, value).buildOverlay();
+  }
+
+  /**
+   * Returns a document that contains the entries of this document except the one with the given
+   * key.
+   */
+  public OverlayBsonDocument without(@Nonnull String key) {
+    return builder(this).remove(key).buildOverlay();
+  }
+
+  @Override
+  public BsonValue<?> get(String key) {
+    BsonValue<?> value = appended.get(key);
+    if (value != null) {
+      return value;
+    }
+    if (removed.contains(key)) {
+      return null;
+    }
+    value = replaced.get(key);
+    if (value != null) {
+      return value;
+    }
+    return base.get(key);
+  }
+
+  @Override
+  public boolean containsKey(String key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public Entry<?> getEntry(String key) {
+    BsonValue<?> value = get(key);
+    if (value == null) {
+      return null;
+    }
+    return new SimpleEntry<>(key, value);
+  }
+
+  @Override
+  public int size() {
+    int result = sizePlusOne;
+    if (result == 0) {
+      result = calculateSize() + 1;
+      sizePlusOne = result;
+    }
+    return result - 1;
+  }
+
+  /**
+   * Some documents (like {@link ListBasedBsonDocument} or the ones read from a buffer) may contain
+   * repeated keys and each removed or replaced key applies to all its occurrences, so the entries
+   * are counted while iterated unless the keys of the base document are known to be unique.
+   */
+  private int calculateSize() {
+    if (base instanceof MapBasedBsonDocument || base.isEmpty()) {
+      return base.size() - removed.size() + appended.size();
+    }
+    return Iterators.size(iterator());
+  }
+
+  @Override
+  public UnmodifiableIterator<Entry<?>> iterator() {
+    return Iterators.unmodifiableIterator(
+        Iterators.concat(
+            Iterators.transform(
+                Iterators.filter(base.iterator(), entry -> !removed.contains(entry.getKey())),
+                this::replace
+            ),
+            Iterators.transform(
+                appended.entrySet().iterator(),
+                AbstractBsonDocument.FromEntryMap.INSTANCE
+            )
+        )
+    );
+  }
+
+  private Entry<?> replace(Entry<?> baseEntry) {
+    if (replaced.isEmpty()) {
+      return baseEntry;
+    }
+    BsonValue<?> value = replaced.get(baseEntry.getKey());
+    if (value == null) {
+      return baseEntry;
+    }
+    return new SimpleEntry<>(baseEntry.getKey(), value);
+  }
+
+  /**
+   * A builder that records the changes done to a document.
+   *
+   * The builder cannot be modified once it has been built.
+   */
+  public static class Builder {
+
+    private final BsonDocument base;
+    private final Map<String, BsonValue<?>> replaced;
+    private final LinkedHashMap<String, BsonValue<?>> appended;
+    private final Set<String> removed;
+    private boolean built;
+
+    private Builder(BsonDocument doc) {
+      if (doc instanceof OverlayBsonDocument) {
+        //the changes are copied, so overlays are never nested
+        OverlayBsonDocument overlay = (OverlayBsonDocument) doc;
+        this.base = overlay.base;
+        this.replaced = new HashMap<>(overlay.replaced);
+        this.appended = new LinkedHashMap<>(overlay.appended);
+        this.removed = new HashSet<>(overlay.removed);
+      } else {
+        this.base = doc;
+        this.replaced = new HashMap<>();
+        this.appended = new LinkedHashMap<>();
+        this.removed = new HashSet<>();
+      }
+    }
+
+    private boolean isOnBase(String key) {
+      return !removed.contains(key) && base.containsKey(key);
+    }
+
+    public boolean containsKey(String key) {
+      return appended.containsKey(key) || isOnBase(key);
+    }
+
+    public Builder put(@Nonnull String key, @Nonnull BsonValue<?> value) {
+      Preconditions.checkState(!built, "The builder has already been built");
+      Preconditions.checkNotNull(value, "value");
+      if (appended.containsKey(key)) {
+        appended.put(key, value);
+      } else if (isOnBase(key)) {
+        replaced.put(key, value);
+      } else {
+        appended.put(key, value);
+      }
+      return this;
+    }
+
+    public Builder remove(@Nonnull String key) {
+      Preconditions.checkState(!built, "The builder has already been built");
+      if (appended.remove(key) == null && isOnBase(key)) {
+        removed.add(key);
+        replaced.remove(key);
+      }
+      return this;
+    }
+
+    private OverlayBsonDocument buildOverlay() {
+      built = true;
+      return new OverlayBsonDocument(base, replaced, appended, removed);
+    }
+
+    /**
+     * Returns the built document, which is the original document if it has not been changed.
+     */
+    @Nonnull
+    public BsonDocument build() {
+      if (replaced.isEmpty() && appended.isEmpty() && removed.isEmpty()) {
+        built = true;
+        return base;
+      }
+      return buildOverlay();
+    }
+  }
+}
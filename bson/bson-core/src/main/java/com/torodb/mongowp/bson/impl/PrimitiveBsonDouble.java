@@ -24,8 +24,7 @@ public class PrimitiveBsonDouble extends AbstractBsonDouble {
 
   private static final long serialVersionUID = -8649710470577957984L;
 
-  private static final PrimitiveBsonDouble ZERO = new PrimitiveBsonDouble(0);
-  private static final PrimitiveBsonDouble ONE = new PrimitiveBsonDouble(1);
+  private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0.0);
 
   private final double value;
 
@@ -33,12 +32,18 @@ public class PrimitiveBsonDouble extends AbstractBsonDouble {
     this.value = value;
   }
 
+  /**
+   * Returns a {@link PrimitiveBsonDouble} instance with the given value, which is shared when the
+   * value is an integral value on the {@link SmallValuesCacheRange cached range}.
+   *
+   * -0.0 is never shared, so its sign is not lost.
+   */
   public static PrimitiveBsonDouble newInstance(double value) {
-    if (value == 0) {
-      return ZERO;
-    }
-    if (value == 1) {
-      return ONE;
+    if (value >= SmallValuesCacheRange.LOW && value <= SmallValuesCacheRange.HIGH) {
+      int intValue = (int) value;
+      if (intValue == value && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO_BITS) {
+        return Cache.VALUES[intValue - SmallValuesCacheRange.LOW];
+      }
     }
     return new PrimitiveBsonDouble(value);
   }
@@ -53,4 +58,20 @@ public class PrimitiveBsonDouble extends AbstractBsonDouble {
     return value;
   }
 
+  private Object readResolve() {
+    return newInstance(value);
+  }
+
+  private static class Cache {
+
+    private static final PrimitiveBsonDouble[] VALUES =
+        new PrimitiveBsonDouble[SmallValuesCacheRange.size()];
+
+    static {
+      for (int i = 0; i < VALUES.length; i++) {
+        VALUES[i] = new PrimitiveBsonDouble(i + SmallValuesCacheRange.LOW);
+      }
+    }
+  }
+
 }
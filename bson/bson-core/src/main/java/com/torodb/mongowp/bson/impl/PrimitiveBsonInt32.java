@@ -24,10 +24,6 @@ public class PrimitiveBsonInt32 extends AbstractBsonInt32 {
 
   private static final long serialVersionUID = -7671326038453610325L;
 
-  private static final PrimitiveBsonInt32 ZERO = new PrimitiveBsonInt32(0);
-  private static final PrimitiveBsonInt32 ONE = new PrimitiveBsonInt32(1);
-  private static final PrimitiveBsonInt32 MINUS_ONE = new PrimitiveBsonInt32(-1);
-
   private final int value;
 
   PrimitiveBsonInt32(int value) {
@@ -35,19 +31,14 @@ public class PrimitiveBsonInt32 extends AbstractBsonInt32 {
   }
 
   /**
-   * Returns a {@link PrimitiveBsonInt32} instance with the given value.
+   * Returns a {@link PrimitiveBsonInt32} instance with the given value, which is shared when the
+   * value is on the {@link SmallValuesCacheRange cached range}.
    */
   public static PrimitiveBsonInt32 newInstance(int value) {
-    switch (value) {
-      case 0:
-        return ZERO;
-      case 1:
-        return ONE;
-      case -1:
-        return MINUS_ONE;
-      default:
-        return new PrimitiveBsonInt32(value);
+    if (value >= SmallValuesCacheRange.LOW && value <= SmallValuesCacheRange.HIGH) {
+      return Cache.VALUES[value - SmallValuesCacheRange.LOW];
     }
+    return new PrimitiveBsonInt32(value);
   }
 
   @Override
@@ -59,4 +50,20 @@ public class PrimitiveBsonInt32 extends AbstractBsonInt32 {
   public Integer getValue() {
     return value;
   }
+
+  private Object readResolve() {
+    return newInstance(value);
+  }
+
+  private static class Cache {
+
+    private static final PrimitiveBsonInt32[] VALUES =
+        new PrimitiveBsonInt32[SmallValuesCacheRange.size()];
+
+    static {
+      for (int i = 0; i < VALUES.length; i++) {
+        VALUES[i] = new PrimitiveBsonInt32(i + SmallValuesCacheRange.LOW);
+      }
+    }
+  }
 }
@@ -24,21 +24,19 @@ public class PrimitiveBsonInt64 extends AbstractBsonInt64 {
 
   private static final long serialVersionUID = 2881925179255803046L;
 
-  private static final PrimitiveBsonInt64 ZERO = new PrimitiveBsonInt64(0);
-  private static final PrimitiveBsonInt64 ONE = new PrimitiveBsonInt64(1);
-
   private final long value;
 
   private PrimitiveBsonInt64(long value) {
     this.value = value;
   }
 
+  /**
+   * Returns a {@link PrimitiveBsonInt64} instance with the given value, which is shared when the
+   * value is on the {@link SmallValuesCacheRange cached range}.
+   */
   public static PrimitiveBsonInt64 newInstance(long value) {
-    if (value == 0) {
-      return ZERO;
-    }
-    if (value == 1) {
-      return ONE;
+    if (value >= SmallValuesCacheRange.LOW && value <= SmallValuesCacheRange.HIGH) {
+      return Cache.VALUES[(int) value - SmallValuesCacheRange.LOW];
     }
     return new PrimitiveBsonInt64(value);
   }
@@ -52,4 +50,20 @@ public class PrimitiveBsonInt64 extends AbstractBsonInt64 {
   public Long getValue() {
     return value;
   }
+
+  private Object readResolve() {
+    return newInstance(value);
+  }
+
+  private static class Cache {
+
+    private static final PrimitiveBsonInt64[] VALUES =
+        new PrimitiveBsonInt64[SmallValuesCacheRange.size()];
+
+    static {
+      for (int i = 0; i < VALUES.length; i++) {
+        VALUES[i] = new PrimitiveBsonInt64(i + SmallValuesCacheRange.LOW);
+      }
+    }
+  }
 }
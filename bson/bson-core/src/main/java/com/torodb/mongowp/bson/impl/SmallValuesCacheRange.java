@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.impl;
+
+/**
+ * The range of the integral values whose {@link PrimitiveBsonInt32}, {@link PrimitiveBsonInt64}
+ * and {@link PrimitiveBsonDouble} instances are cached, as small numbers like counters and array
+ * indexes are very common on documents.
+ *
+ * The upper bound is {@value #DEFAULT_HIGH} by default and it can be changed (but not lowered
+ * below 127) with the system property {@value #HIGH_PROPERTY}.
+ */
+final class SmallValuesCacheRange {
+
+  static final String HIGH_PROPERTY = "com.torodb.mongowp.bson.smallValuesCache.high";
+  static final int DEFAULT_HIGH = 1023;
+  static final int LOW = -128;
+  static final int HIGH = Math.max(127, Math.min(Integer.getInteger(HIGH_PROPERTY, DEFAULT_HIGH),
+      Integer.MAX_VALUE + LOW - 1));
+
+  private SmallValuesCacheRange() {
+  }
+
+  static int size() {
+    return HIGH - LOW + 1;
+  }
+
+}
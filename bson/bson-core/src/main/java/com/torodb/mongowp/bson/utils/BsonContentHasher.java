@@ -0,0 +1,303 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.utils;
+
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.torodb.mongowp.bson.BsonArray;
+import com.torodb.mongowp.bson.BsonBinary;
+import com.torodb.mongowp.bson.BsonBoolean;
+import com.torodb.mongowp.bson.BsonDateTime;
+import com.torodb.mongowp.bson.BsonDbPointer;
+import com.torodb.mongowp.bson.BsonDecimal128;
+import com.torodb.mongowp.bson.BsonDeprecated;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.BsonDocument.Entry;
+import com.torodb.mongowp.bson.BsonDouble;
+import com.torodb.mongowp.bson.BsonInt32;
+import com.torodb.mongowp.bson.BsonInt64;
+import com.torodb.mongowp.bson.BsonJavaScript;
+import com.torodb.mongowp.bson.BsonJavaScriptWithScope;
+import com.torodb.mongowp.bson.BsonMax;
+import com.torodb.mongowp.bson.BsonMin;
+import com.torodb.mongowp.bson.BsonNull;
+import com.torodb.mongowp.bson.BsonObjectId;
+import com.torodb.mongowp.bson.BsonRegex;
+import com.torodb.mongowp.bson.BsonString;
+import com.torodb.mongowp.bson.BsonTimestamp;
+import com.torodb.mongowp.bson.BsonType;
+import com.torodb.mongowp.bson.BsonUndefined;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.BsonValueVisitor;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Calculates a 64 bits hash of the content of documents and arrays that is stable between
+ * executions and implementations, so it can be used to deduplicate, cache or join values.
+ *
+ * The hash of a document is the murmur3 hash of the following sequence, where ints and longs are
+ * little endian:
+ * <ul>
+ * <li>For each entry: the UTF-8 bytes of its key followed by 0x00, the
+ * {@link BsonType#ordinal() ordinal} of its type as a byte and the value.</li>
+ * <li>Doubles are written as {@link Double#doubleToLongBits(double)}, where -0.0 is written as
+ * 0.0.</li>
+ * <li>Strings, javascripts and deprecated values are written as the length of their UTF-8
+ * encoding as an int and then the UTF-8 bytes. Regex are written as their pattern and then
+ * their options, both as strings. DB pointers are written as their namespace as string and then
+ * the 12 bytes of their id.</li>
+ * <li>Documents and arrays are written as their own content hash, so implementations can cache
+ * it.</li>
+ * <li>Binaries are written as their length as an int, their numeric subtype and their content.
+ * </li>
+ * <li>Booleans are written as 0x01 or 0x00, datetimes as their millis as long, timestamps as
+ * their seconds and their ordinal as ints and decimals as their low and high longs.
+ * Ints, longs and object ids are written as they are serialized on BSON. Null, undefined, min
+ * and max are not written.</li>
+ * <li>Javascripts with scope are written as their code as string and the content hash of their
+ * scope.</li>
+ * </ul>
+ * The hash of an array is calculated in the same way, but keys are not written.
+ *
+ * Documents and arrays that implement {@link ContentHashAware} are not visited, so
+ * implementations backed by serialized BSON can calculate it without decoding their content
+ * (for example, by receiving the {@link BsonEventHandler events} of its content).
+ */
+public final class BsonContentHasher implements BsonValueVisitor<Void, Hasher> {
+
+  public static final BsonContentHasher INSTANCE = new BsonContentHasher();
+
+  private static final HashFunction FUNCTION = Hashing.murmur3_128();
+  private static final byte CSTRING_TERMINATION = 0x00;
+
+  private BsonContentHasher() {
+  }
+
+  /**
+   * @return a new hasher that uses the function used to calculate content hashes
+   */
+  public static Hasher newHasher() {
+    return FUNCTION.newHasher();
+  }
+
+  /**
+   * @return the 64 bits that represent the hash calculated by the given hasher
+   */
+  public static long getHash(Hasher hasher) {
+    return hasher.hash().asLong();
+  }
+
+  /**
+   * Folds the given content hash into an int that can be returned by {@link Object#hashCode()},
+   * which is never 0.
+   */
+  public static int toHashCode(long contentHash) {
+    int hash = (int) (contentHash ^ (contentHash >>> 32));
+    return hash == 0 ? 1 : hash;
+  }
+
+  /**
+   * @return the content hash of the given document
+   */
+  public static long getHash(BsonDocument doc) {
+    if (doc instanceof ContentHashAware) {
+      return ((ContentHashAware) doc).getContentHash();
+    }
+    return calculateDocumentHash(doc);
+  }
+
+  /**
+   * @return the content hash of the given array
+   */
+  public static long getHash(BsonArray array) {
+    if (array instanceof ContentHashAware) {
+      return ((ContentHashAware) array).getContentHash();
+    }
+    return calculateArrayHash(array);
+  }
+
+  /**
+   * Calculates the content hash of the given document from its entries, ignoring the hash it may
+   * know.
+   */
+  public static long calculateDocumentHash(BsonDocument doc) {
+    Hasher hasher = newHasher();
+    for (Entry<?> entry : doc) {
+      BsonValue<?> value = entry.getValue();
+      hasher.putString(entry.getKey(), StandardCharsets.UTF_8).putByte(CSTRING_TERMINATION);
+      putType(hasher, value.getType());
+      value.accept(INSTANCE, hasher);
+    }
+    return getHash(hasher);
+  }
+
+  /**
+   * Calculates the content hash of the given array from its elements, ignoring the hash it may
+   * know.
+   */
+  public static long calculateArrayHash(BsonArray array) {
+    Hasher hasher = newHasher();
+    for (BsonValue<?> value : array) {
+      putType(hasher, value.getType());
+      value.accept(INSTANCE, hasher);
+    }
+    return getHash(hasher);
+  }
+
+  public static void putType(Hasher hasher, BsonType type) {
+    hasher.putByte((byte) type.ordinal());
+  }
+
+  public static void putDouble(Hasher hasher, double value) {
+    //-0.0 == 0.0, so they must have the same hash
+    hasher.putLong(Double.doubleToLongBits(value == 0 ? 0.0 : value));
+  }
+
+  private static void putString(Hasher hasher, String value) {
+    hasher.putInt(BsonSizeCalculator.getUtf8Size(value))
+        .putString(value, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public Void visit(BsonArray value, Hasher arg) {
+    arg.putLong(getHash(value));
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonBinary value, Hasher arg) {
+    NonIoByteSource byteSource = value.getByteSource();
+    arg.putInt((int) byteSource.size()).putByte(value.getNumericSubType());
+    byteSource.copyTo(Funnels.asOutputStream(arg));
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonDbPointer value, Hasher arg) {
+    putString(arg, value.getNamespace());
+    arg.putBytes(value.getId().toByteArray());
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonDateTime value, Hasher arg) {
+    arg.putLong(value.getMillisFromUnix());
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonDocument value, Hasher arg) {
+    arg.putLong(getHash(value));
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonDouble value, Hasher arg) {
+    putDouble(arg, value.doubleValue());
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonInt32 value, Hasher arg) {
+    arg.putInt(value.intValue());
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonInt64 value, Hasher arg) {
+    arg.putLong(value.longValue());
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonBoolean value, Hasher arg) {
+    arg.putBoolean(value.getPrimitiveValue());
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonJavaScript value, Hasher arg) {
+    putString(arg, value.getValue());
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonJavaScriptWithScope value, Hasher arg) {
+    putString(arg, value.getJavaScript());
+    arg.putLong(getHash(value.getScope()));
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonMax value, Hasher arg) {
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonMin value, Hasher arg) {
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonNull value, Hasher arg) {
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonObjectId value, Hasher arg) {
+    arg.putBytes(value.toByteArray());
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonRegex value, Hasher arg) {
+    putString(arg, value.getPattern());
+    putString(arg, value.getOptionsAsText());
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonString value, Hasher arg) {
+    putString(arg, value.getValue());
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonUndefined value, Hasher arg) {
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonTimestamp value, Hasher arg) {
+    arg.putInt(value.getSecondsSinceEpoch()).putInt(value.getOrdinal());
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonDeprecated value, Hasher arg) {
+    putString(arg, value.getValue());
+    return null;
+  }
+
+  @Override
+  public Void visit(BsonDecimal128 value, Hasher arg) {
+    arg.putLong(value.getLow()).putLong(value.getHigh());
+    return null;
+  }
+}
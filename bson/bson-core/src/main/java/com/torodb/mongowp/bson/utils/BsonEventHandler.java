@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.utils;
+
+import com.torodb.mongowp.bson.BinarySubtype;
+
+/**
+ * A push style (SAX like) handler that receives the events produced when a serialized document is
+ * read, without any {@link com.torodb.mongowp.bson.BsonValue} being created.
+ *
+ * Names, strings and other variable length values are received as the raw bytes of the source,
+ * whose type depends on the reader. These raw values are only valid during the callback that
+ * receives them. Strings and names are the UTF-8 bytes without the final 0x00.
+ *
+ * All methods do nothing by default, so handlers only override the events they care about.
+ * Each value of a document is preceded by a {@link #onName(Object) name event} and each value of
+ * an array is preceded by an {@link #onIndex(int) index event}.
+ *
+ * @param <RawT> the type of the raw bytes
+ */
+public interface BsonEventHandler<RawT> {
+
+  public default void startDocument() {
+  }
+
+  public default void endDocument() {
+  }
+
+  public default void startArray() {
+  }
+
+  public default void endArray() {
+  }
+
+  public default void onName(RawT name) {
+  }
+
+  public default void onIndex(int index) {
+  }
+
+  public default void onDouble(double value) {
+  }
+
+  public default void onString(RawT value) {
+  }
+
+  public default void onBinary(BinarySubtype subtype, byte numericSubtype, RawT data) {
+  }
+
+  public default void onUndefined() {
+  }
+
+  /**
+   * @param value the 12 bytes of the object id
+   */
+  public default void onObjectId(RawT value) {
+  }
+
+  public default void onBoolean(boolean value) {
+  }
+
+  public default void onDateTime(long millisFromUnix) {
+  }
+
+  public default void onNull() {
+  }
+
+  public default void onRegex(RawT pattern, RawT options) {
+  }
+
+  /**
+   * @param namespace the namespace of the pointer
+   * @param id        the 12 bytes of the object id of the pointer
+   */
+  public default void onDbPointer(RawT namespace, RawT id) {
+  }
+
+  public default void onJavaScript(RawT code) {
+  }
+
+  /**
+   * Called when a JavaScript with scope value is found. The events of the scope document are
+   * produced after this one.
+   */
+  public default void startJavaScriptWithScope(RawT code) {
+  }
+
+  public default void endJavaScriptWithScope() {
+  }
+
+  public default void onInt32(int value) {
+  }
+
+  public default void onTimestamp(int secondsSinceEpoch, int ordinal) {
+  }
+
+  public default void onInt64(long value) {
+  }
+
+  /**
+   * @param low  the low 64 bits of the IEEE 754-2008 decimal
+   * @param high the high 64 bits of the IEEE 754-2008 decimal
+   */
+  public default void onDecimal128(long low, long high) {
+  }
+
+  public default void onMin() {
+  }
+
+  public default void onMax() {
+  }
+
+  public default void onDeprecated(RawT value) {
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.utils;
+
+import com.torodb.mongowp.bson.BsonArray;
+import com.torodb.mongowp.bson.BsonBinary;
+import com.torodb.mongowp.bson.BsonBoolean;
+import com.torodb.mongowp.bson.BsonDateTime;
+import com.torodb.mongowp.bson.BsonDbPointer;
+import com.torodb.mongowp.bson.BsonDecimal128;
+import com.torodb.mongowp.bson.BsonDeprecated;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.BsonDocument.Entry;
+import com.torodb.mongowp.bson.BsonDouble;
+import com.torodb.mongowp.bson.BsonInt32;
+import com.torodb.mongowp.bson.BsonInt64;
+import com.torodb.mongowp.bson.BsonJavaScript;
+import com.torodb.mongowp.bson.BsonJavaScriptWithScope;
+import com.torodb.mongowp.bson.BsonMax;
+import com.torodb.mongowp.bson.BsonMin;
+import com.torodb.mongowp.bson.BsonNull;
+import com.torodb.mongowp.bson.BsonObjectId;
+import com.torodb.mongowp.bson.BsonRegex;
+import com.torodb.mongowp.bson.BsonString;
+import com.torodb.mongowp.bson.BsonTimestamp;
+import com.torodb.mongowp.bson.BsonUndefined;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.BsonValueVisitor;
+
+/**
+ * A visitor that returns the exact number of bytes a value uses once it is serialized as BSON,
+ * without the type byte and the key that precede it when it is stored on a document.
+ *
+ * Documents and arrays that implement {@link SerializedSizeAware} are not visited, so the sizes
+ * they cache (or know, like the ones read from a buffer) are reused.
+ */
+public final class BsonSizeCalculator implements BsonValueVisitor<Integer, Void> {
+
+  public static final BsonSizeCalculator INSTANCE = new BsonSizeCalculator();
+
+  private static final int EMPTY_DOCUMENT_SIZE = 5;
+
+  private BsonSizeCalculator() {
+  }
+
+  /**
+   * @return the number of bytes the given value uses once it is serialized as BSON
+   */
+  public static int getSize(BsonValue<?> value) {
+    return value.accept(INSTANCE, null);
+  }
+
+  /**
+   * Calculates the size of the given document from its entries, ignoring the size it may cache.
+   *
+   * It is designed to be used by {@link SerializedSizeAware} documents to calculate the size they
+   * cache.
+   */
+  public static int calculateDocumentSize(BsonDocument doc) {
+    int size = EMPTY_DOCUMENT_SIZE;
+    for (Entry<?> entry : doc) {
+      size += 1 + getCStringSize(entry.getKey()) + getSize(entry.getValue());
+    }
+    return size;
+  }
+
+  /**
+   * Calculates the size of the given array from its elements, ignoring the size it may cache.
+   */
+  public static int calculateArraySize(BsonArray array) {
+    int size = EMPTY_DOCUMENT_SIZE;
+    int i = 0;
+    for (BsonValue<?> child : array) {
+      size += 1 + getIndexKeySize(i) + getSize(child);
+      i++;
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of bytes the UTF-8 encoding of the given string uses, where unpaired
+   *         surrogates use one byte, as they are encoded as {@code '?'}
+   */
+  public static int getUtf8Size(String str) {
+    int length = str.length();
+    int size = length;
+    for (int i = 0; i < length; i++) {
+      char c = str.charAt(i);
+      if (c < 0x80) {
+        continue;
+      }
+      if (c < 0x800) {
+        size += 1;
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(str.charAt(i + 1))) {
+        //the pair uses 4 bytes and 2 chars
+        size += 2;
+        i++;
+      } else if (!Character.isSurrogate(c)) {
+        size += 2;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of bytes the keys of the first {@code count} elements of an array use,
+   *         including their 0x00 terminators
+   */
+  public static int getIndexKeysSize(int count) {
+    int size = 0;
+    int first = 0;
+    int bandEnd = 10;
+    for (int digits = 1; first < count; digits++) {
+      int end = Math.min(count, bandEnd);
+      size += (end - first) * (digits + 1);
+      first = end;
+      bandEnd = bandEnd > Integer.MAX_VALUE / 10 ? Integer.MAX_VALUE : bandEnd * 10;
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of bytes an array of {@code count} elements uses when all its elements
+   *         use {@code elementSize} bytes
+   */
+  public static int getFixedSizeArraySize(int count, int elementSize) {
+    return EMPTY_DOCUMENT_SIZE + getIndexKeysSize(count) + count * (1 + elementSize);
+  }
+
+  private static int getCStringSize(String str) {
+    return getUtf8Size(str) + 1;
+  }
+
+  private static int getStringSize(String str) {
+    return Integer.BYTES + getUtf8Size(str) + 1;
+  }
+
+  private static int getIndexKeySize(int index) {
+    int digits = 1;
+    for (int value = index; value >= 10; value /= 10) {
+      digits++;
+    }
+    return digits + 1;
+  }
+
+  @Override
+  public Integer visit(BsonArray value, Void arg) {
+    if (value instanceof SerializedSizeAware) {
+      return ((SerializedSizeAware) value).getSerializedSize();
+    }
+    return calculateArraySize(value);
+  }
+
+  @Override
+  public Integer visit(BsonBinary value, Void arg) {
+    return Integer.BYTES + 1 + value.size();
+  }
+
+  @Override
+  public Integer visit(BsonDbPointer value, Void arg) {
+    return getStringSize(value.getNamespace()) + 12;
+  }
+
+  @Override
+  public Integer visit(BsonDateTime value, Void arg) {
+    return Long.BYTES;
+  }
+
+  @Override
+  public Integer visit(BsonDocument value, Void arg) {
+    if (value instanceof SerializedSizeAware) {
+      return ((SerializedSizeAware) value).getSerializedSize();
+    }
+    return calculateDocumentSize(value);
+  }
+
+  @Override
+  public Integer visit(BsonDouble value, Void arg) {
+    return Double.BYTES;
+  }
+
+  @Override
+  public Integer visit(BsonInt32 value, Void arg) {
+    return Integer.BYTES;
+  }
+
+  @Override
+  public Integer visit(BsonInt64 value, Void arg) {
+    return Long.BYTES;
+  }
+
+  @Override
+  public Integer visit(BsonBoolean value, Void arg) {
+    return 1;
+  }
+
+  @Override
+  public Integer visit(BsonJavaScript value, Void arg) {
+    return getStringSize(value.getValue());
+  }
+
+  @Override
+  public Integer visit(BsonJavaScriptWithScope value, Void arg) {
+    return Integer.BYTES + getStringSize(value.getJavaScript()) + getSize(value.getScope());
+  }
+
+  @Override
+  public Integer visit(BsonMax value, Void arg) {
+    return 0;
+  }
+
+  @Override
+  public Integer visit(BsonMin value, Void arg) {
+    return 0;
+  }
+
+  @Override
+  public Integer visit(BsonNull value, Void arg) {
+    return 0;
+  }
+
+  @Override
+  public Integer visit(BsonObjectId value, Void arg) {
+    return 12;
+  }
+
+  @Override
+  public Integer visit(BsonRegex value, Void arg) {
+    return getCStringSize(value.getPattern()) + getCStringSize(value.getOptionsAsText());
+  }
+
+  @Override
+  public Integer visit(BsonString value, Void arg) {
+    return getStringSize(value.getValue());
+  }
+
+  @Override
+  public Integer visit(BsonUndefined value, Void arg) {
+    return 0;
+  }
+
+  @Override
+  public Integer visit(BsonTimestamp value, Void arg) {
+    return Long.BYTES;
+  }
+
+  @Override
+  public Integer visit(BsonDeprecated value, Void arg) {
+    return getStringSize(value.getValue());
+  }
+
+  @Override
+  public Integer visit(BsonDecimal128 value, Void arg) {
+    return 16;
+  }
+}
@@ -32,16 +32,15 @@ import com.torodb.mongowp.bson.BsonTimestamp;
 import com.torodb.mongowp.bson.BsonUndefined;
 import com.torodb.mongowp.bson.BsonValue;
 import com.torodb.mongowp.bson.annotations.NotMutable;
+import com.torodb.mongowp.bson.impl.ArrayBasedBsonDocument;
 import com.torodb.mongowp.bson.impl.DefaultBsonTimestamp;
 import com.torodb.mongowp.bson.impl.EmptyBsonArray;
 import com.torodb.mongowp.bson.impl.EmptyBsonDocument;
 import com.torodb.mongowp.bson.impl.FalseBsonBoolean;
 import com.torodb.mongowp.bson.impl.InstantBsonDateTime;
-import com.torodb.mongowp.bson.impl.ListBasedBsonDocument;
 import com.torodb.mongowp.bson.impl.ListBsonArray;
 import com.torodb.mongowp.bson.impl.LongBsonDateTime;
 import com.torodb.mongowp.bson.impl.LongsBsonDecimal128;
-import com.torodb.mongowp.bson.impl.MapBasedBsonDocument;
 import com.torodb.mongowp.bson.impl.PrimitiveBsonDouble;
 import com.torodb.mongowp.bson.impl.PrimitiveBsonInt32;
 import com.torodb.mongowp.bson.impl.PrimitiveBsonInt64;
@@ -142,7 +141,7 @@ public class DefaultBsonValues {
         Entry<?> entry = list.get(0);
         return new SingleEntryBsonDocument(entry.getKey(), entry.getValue());
       default:
-        return new ListBasedBsonDocument(list);
+        return ArrayBasedBsonDocument.fromEntries(list);
     }
   }
 
@@ -156,7 +155,7 @@ public class DefaultBsonValues {
         return new SingleEntryBsonDocument(entry.getKey(), entry.getValue());
       }
       default:
-        return new MapBasedBsonDocument(map);
+        return ArrayBasedBsonDocument.fromMap(map);
     }
   }
 
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.utils;
+
+/**
+ * A document or array that knows (or caches) the number of bytes it uses once it is serialized
+ * as BSON.
+ *
+ * @see BsonSizeCalculator
+ */
+public interface SerializedSizeAware {
+
+  /**
+   * @return the number of bytes this value uses when it is serialized as BSON
+   */
+  int getSerializedSize();
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import com.torodb.mongowp.bson.netty.annotations.Loose;
+import com.torodb.mongowp.bson.netty.annotations.ModifiesIndexes;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Writes the keys of array elements, which are their indexes as decimal cstrings.
+ *
+ * The keys of the first {@link #CACHED_KEYS} indexes are stored on a single table, so they are
+ * written with a single copy. Greater indexes are written digit by digit on the buffer.
+ */
+final class ArrayIndexKeys {
+
+  static final int CACHED_KEYS = 10000;
+  /**
+   * The keys of all cached indexes, including their 0x00 terminators. The keys with the same
+   * number of digits are contiguous, so the offset of each key can be calculated.
+   */
+  private static final byte[] KEYS;
+  /**
+   * The offset on {@link #KEYS} of the first key with {@code i + 1} digits.
+   */
+  private static final int[] DIGITS_OFFSETS = new int[4];
+
+  static {
+    int size = 0;
+    for (int digits = 1, first = 1; digits <= 4; digits++, first *= 10) {
+      DIGITS_OFFSETS[digits - 1] = size;
+      int count = digits == 1 ? 10 : first * 9;
+      size += count * (digits + 1);
+    }
+    KEYS = new byte[size];
+    int offset = 0;
+    for (int i = 0; i < CACHED_KEYS; i++) {
+      offset += writeDigits(KEYS, offset, i, digits(i));
+      KEYS[offset++] = 0x00;
+    }
+    assert offset == size;
+  }
+
+  private ArrayIndexKeys() {
+  }
+
+  /**
+   * Writes the key of the given index, including the 0x00 terminator.
+   */
+  static void writeKey(@Loose @ModifiesIndexes ByteBuf byteBuf, int index) {
+    assert index >= 0;
+    int digits = digits(index);
+    if (index < CACHED_KEYS) {
+      int offset = DIGITS_OFFSETS[digits - 1] + (index - firstWithDigits(digits)) * (digits + 1);
+      byteBuf.writeBytes(KEYS, offset, digits + 1);
+    } else {
+      byteBuf.ensureWritable(digits + 1);
+      int writerIndex = byteBuf.writerIndex();
+      int value = index;
+      for (int i = writerIndex + digits - 1; i >= writerIndex; i--) {
+        byteBuf.setByte(i, '0' + value % 10);
+        value /= 10;
+      }
+      byteBuf.setByte(writerIndex + digits, 0x00);
+      byteBuf.writerIndex(writerIndex + digits + 1);
+    }
+  }
+
+  /**
+   * Returns the number of bytes the key of the given index uses, including the 0x00 terminator.
+   */
+  static int getKeySize(int index) {
+    return digits(index) + 1;
+  }
+
+  private static int digits(int index) {
+    int digits = 1;
+    for (int value = index; value >= 10; value /= 10) {
+      digits++;
+    }
+    return digits;
+  }
+
+  private static int firstWithDigits(int digits) {
+    switch (digits) {
+      case 1:
+        return 0;
+      case 2:
+        return 10;
+      case 3:
+        return 100;
+      case 4:
+        return 1000;
+      default:
+        throw new AssertionError("Only keys with up to 4 digits are cached");
+    }
+  }
+
+  private static int writeDigits(byte[] target, int offset, int value, int digits) {
+    int remaining = value;
+    for (int i = offset + digits - 1; i >= offset; i--) {
+      target[i] = (byte) ('0' + remaining % 10);
+      remaining /= 10;
+    }
+    return digits;
+  }
+}
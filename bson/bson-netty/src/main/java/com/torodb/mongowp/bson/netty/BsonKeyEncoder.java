@@ -0,0 +1,484 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import com.google.common.base.Preconditions;
+import com.torodb.mongowp.bson.BsonArray;
+import com.torodb.mongowp.bson.BsonBinary;
+import com.torodb.mongowp.bson.BsonBoolean;
+import com.torodb.mongowp.bson.BsonDateTime;
+import com.torodb.mongowp.bson.BsonDbPointer;
+import com.torodb.mongowp.bson.BsonDecimal128;
+import com.torodb.mongowp.bson.BsonDeprecated;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.BsonDocument.Entry;
+import com.torodb.mongowp.bson.BsonDouble;
+import com.torodb.mongowp.bson.BsonInt32;
+import com.torodb.mongowp.bson.BsonInt64;
+import com.torodb.mongowp.bson.BsonJavaScript;
+import com.torodb.mongowp.bson.BsonJavaScriptWithScope;
+import com.torodb.mongowp.bson.BsonMax;
+import com.torodb.mongowp.bson.BsonMin;
+import com.torodb.mongowp.bson.BsonNull;
+import com.torodb.mongowp.bson.BsonObjectId;
+import com.torodb.mongowp.bson.BsonRegex;
+import com.torodb.mongowp.bson.BsonString;
+import com.torodb.mongowp.bson.BsonTimestamp;
+import com.torodb.mongowp.bson.BsonUndefined;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.BsonValueVisitor;
+import com.torodb.mongowp.bson.utils.NonIoByteSource;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+
+/**
+ * Encodes {@link BsonValue bson values} as keys whose unsigned lexicographical order is the order
+ * used by MongoDB to compare BSON values, so they can be sorted or indexed using a plain byte
+ * comparison.
+ *
+ * Each value starts with a byte that identifies its canonical type, which means that all numeric
+ * types are encoded in the same way (so {@code 1}, {@code 1L}, {@code 1.0} and
+ * {@code NumberDecimal("1.00")} have the same key) and that strings and symbols are equivalent.
+ * Encodings are prefix free, so several values can be concatenated to create a compound key and
+ * the descending encoding of a value is its ascending encoding with all bits inverted.
+ *
+ * Keys are not meant to be decoded: the original type of numbers and the precision of decimals are
+ * lost.
+ */
+@ThreadSafe
+public class BsonKeyEncoder {
+
+  private static final byte END = 0x00;
+  private static final byte ESCAPE = (byte) 0xFF;
+
+  //canonical types, on the same order MongoDB uses. 0x00 is reserved to mark the end of a container
+  private static final byte MIN_KEY_RANK = 0x01;
+  private static final byte UNDEFINED_RANK = 0x02;
+  private static final byte NULL_RANK = 0x03;
+  private static final byte NUMBER_RANK = 0x04;
+  private static final byte STRING_RANK = 0x05;
+  private static final byte DOCUMENT_RANK = 0x06;
+  private static final byte ARRAY_RANK = 0x07;
+  private static final byte BINARY_RANK = 0x08;
+  private static final byte OBJECT_ID_RANK = 0x09;
+  private static final byte BOOLEAN_RANK = 0x0A;
+  private static final byte DATETIME_RANK = 0x0B;
+  private static final byte TIMESTAMP_RANK = 0x0C;
+  private static final byte REGEX_RANK = 0x0D;
+  private static final byte DB_POINTER_RANK = 0x0E;
+  private static final byte JAVA_SCRIPT_RANK = 0x0F;
+  private static final byte JAVA_SCRIPT_WITH_SCOPE_RANK = 0x10;
+  private static final byte MAX_KEY_RANK = 0x7F;
+
+  //numeric classes. NaN is lower than any other number, as it is on MongoDB
+  private static final byte NAN = 0x01;
+  private static final byte NEGATIVE_INFINITY = 0x02;
+  private static final byte NEGATIVE = 0x03;
+  private static final byte ZERO = 0x04;
+  private static final byte POSITIVE = 0x05;
+  private static final byte POSITIVE_INFINITY = 0x06;
+
+  private static final long DECIMAL_SIGN_MASK = 0x8000000000000000L;
+  private static final long DECIMAL_INFINITY_MASK = 0x7800000000000000L;
+  private static final long DECIMAL_NAN_MASK = 0x7C00000000000000L;
+  /**
+   * Doubles whose absolute value is lower than this are encoded as longs when they are integral.
+   */
+  private static final double MAX_LONG_AS_DOUBLE = 0x1p63;
+
+  private final KeyVisitor visitor = new KeyVisitor();
+
+  @Inject
+  public BsonKeyEncoder() {
+  }
+
+  /**
+   * Writes the ascending key of the given value on the writer index of the buffer.
+   */
+  public void encode(ByteBuf buf, BsonValue<?> value) {
+    visitor.writeValue(buf.order(ByteOrder.BIG_ENDIAN), value);
+  }
+
+  /**
+   * Writes the descending key of the given value on the writer index of the buffer, so the keys
+   * of bigger values are lower than the keys of smaller ones.
+   */
+  public void encodeDescending(ByteBuf buf, BsonValue<?> value) {
+    int start = buf.writerIndex();
+    encode(buf, value);
+    int end = buf.writerIndex();
+    for (int i = start; i < end; i++) {
+      buf.setByte(i, ~buf.getByte(i));
+    }
+  }
+
+  /**
+   * Returns the compound key of the given values, where each value is encoded on ascending order.
+   */
+  public byte[] toByteArray(BsonValue<?>... values) {
+    Preconditions.checkArgument(values.length > 0, "At least one value is required");
+    ByteBuf buf = Unpooled.buffer();
+    for (BsonValue<?> value : values) {
+      encode(buf, value);
+    }
+    byte[] result = new byte[buf.readableBytes()];
+    buf.readBytes(result);
+    return result;
+  }
+
+  private static void writeRank(ByteBuf buf, BsonValue<?> value) {
+    switch (value.getType()) {
+      case MIN:
+        buf.writeByte(MIN_KEY_RANK);
+        break;
+      case UNDEFINED:
+        buf.writeByte(UNDEFINED_RANK);
+        break;
+      case NULL:
+        buf.writeByte(NULL_RANK);
+        break;
+      case DOUBLE:
+      case INT32:
+      case INT64:
+      case DECIMAL128:
+        buf.writeByte(NUMBER_RANK);
+        break;
+      case STRING:
+      case DEPRECATED:
+        buf.writeByte(STRING_RANK);
+        break;
+      case DOCUMENT:
+        buf.writeByte(DOCUMENT_RANK);
+        break;
+      case ARRAY:
+        buf.writeByte(ARRAY_RANK);
+        break;
+      case BINARY:
+        buf.writeByte(BINARY_RANK);
+        break;
+      case OBJECT_ID:
+        buf.writeByte(OBJECT_ID_RANK);
+        break;
+      case BOOLEAN:
+        buf.writeByte(BOOLEAN_RANK);
+        break;
+      case DATETIME:
+        buf.writeByte(DATETIME_RANK);
+        break;
+      case TIMESTAMP:
+        buf.writeByte(TIMESTAMP_RANK);
+        break;
+      case REGEX:
+        buf.writeByte(REGEX_RANK);
+        break;
+      case DB_POINTER:
+        buf.writeByte(DB_POINTER_RANK);
+        break;
+      case JAVA_SCRIPT:
+        buf.writeByte(JAVA_SCRIPT_RANK);
+        break;
+      case JAVA_SCRIPT_WITH_SCOPE:
+        buf.writeByte(JAVA_SCRIPT_WITH_SCOPE_RANK);
+        break;
+      case MAX:
+        buf.writeByte(MAX_KEY_RANK);
+        break;
+      default:
+        throw new AssertionError("Unexpected bson type " + value.getType());
+    }
+  }
+
+  /**
+   * Writes the string as UTF-8, escaping each 0x00 as 0x00 0xFF and ending with 0x00 0x00.
+   */
+  private static void writeString(ByteBuf buf, String str) {
+    int length = str.length();
+    for (int i = 0; i < length; i++) {
+      char c = str.charAt(i);
+      if (c == 0) {
+        buf.writeByte(END).writeByte(ESCAPE);
+      } else if (c < 0x80) {
+        buf.writeByte(c);
+      } else {
+        writeEscaped(buf, str.substring(i).getBytes(StandardCharsets.UTF_8));
+        break;
+      }
+    }
+    buf.writeByte(END).writeByte(END);
+  }
+
+  private static void writeEscaped(ByteBuf buf, byte[] bytes) {
+    for (byte b : bytes) {
+      if (b == 0) {
+        buf.writeByte(END).writeByte(ESCAPE);
+      } else {
+        buf.writeByte(b);
+      }
+    }
+  }
+
+  private static void writeLong(ByteBuf buf, long value) {
+    if (value == 0) {
+      buf.writeByte(ZERO);
+    } else if (value > 0) {
+      writeFinite(buf, false, Long.toString(value));
+    } else {
+      //Long.toString(Long.MIN_VALUE) cannot be negated as a long
+      writeFinite(buf, true, Long.toString(value).substring(1));
+    }
+  }
+
+  private static void writeDouble(ByteBuf buf, double value) {
+    if (Double.isNaN(value)) {
+      buf.writeByte(NAN);
+    } else if (Double.isInfinite(value)) {
+      buf.writeByte(value > 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY);
+    } else if (value == Math.rint(value) && Math.abs(value) < MAX_LONG_AS_DOUBLE) {
+      writeLong(buf, (long) value);
+    } else {
+      writeBigDecimal(buf, new BigDecimal(value));
+    }
+  }
+
+  private static void writeDecimal128(ByteBuf buf, BsonDecimal128 value) {
+    long high = value.getHigh();
+    if ((high & DECIMAL_NAN_MASK) == DECIMAL_NAN_MASK) {
+      buf.writeByte(NAN);
+    } else if ((high & DECIMAL_INFINITY_MASK) == DECIMAL_INFINITY_MASK) {
+      buf.writeByte((high & DECIMAL_SIGN_MASK) == 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY);
+    } else {
+      BigDecimal decimal;
+      try {
+        decimal = value.getValue();
+      } catch (ArithmeticException ex) {
+        //negative zero cannot be represented as a BigDecimal
+        buf.writeByte(ZERO);
+        return;
+      }
+      writeBigDecimal(buf, decimal);
+    }
+  }
+
+  private static void writeBigDecimal(ByteBuf buf, BigDecimal value) {
+    if (value.signum() == 0) {
+      buf.writeByte(ZERO);
+      return;
+    }
+    BigDecimal stripped = value.stripTrailingZeros();
+    String digits = stripped.unscaledValue().abs().toString();
+    writeFinite(buf, stripped.signum() < 0, digits, digits.length() - stripped.scale());
+  }
+
+  private static void writeFinite(ByteBuf buf, boolean negative, String integerDigits) {
+    int significant = integerDigits.length();
+    while (integerDigits.charAt(significant - 1) == '0') {
+      significant--;
+    }
+    writeFinite(buf, negative, integerDigits.substring(0, significant), integerDigits.length());
+  }
+
+  /**
+   * Writes the non zero number {@code (negative ? -1 : 1) * 0.digits * 10^exponent}, where digits
+   * has no leading or trailing zeros.
+   *
+   * The exponent is written as a big endian int whose sign bit is flipped and then the digits are
+   * packed in pairs as {@code 10 * first + second + 1}, followed by 0x00. Negative numbers are
+   * written with all bits (except the numeric class) inverted.
+   */
+  private static void writeFinite(ByteBuf buf, boolean negative, String digits, int exponent) {
+    int mask = negative ? 0xFF : 0x00;
+    buf.writeByte(negative ? NEGATIVE : POSITIVE);
+    int biasedExponent = exponent ^ Integer.MIN_VALUE;
+    buf.writeInt(negative ? ~biasedExponent : biasedExponent);
+    int length = digits.length();
+    for (int i = 0; i < length; i += 2) {
+      int first = digits.charAt(i) - '0';
+      int second = i + 1 < length ? digits.charAt(i + 1) - '0' : 0;
+      buf.writeByte((first * 10 + second + 1) ^ mask);
+    }
+    buf.writeByte(END ^ mask);
+  }
+
+  private static void writeObjectId(ByteBuf buf, BsonObjectId value) {
+    if (value instanceof NettyBsonObjectId) {
+      ((NettyBsonObjectId) value).writeTo(buf);
+    } else {
+      buf.writeBytes(value.toByteArray());
+    }
+  }
+
+  private static class KeyVisitor implements BsonValueVisitor<Void, ByteBuf> {
+
+    private void writeValue(ByteBuf buf, BsonValue<?> value) {
+      writeRank(buf, value);
+      value.accept(this, buf);
+    }
+
+    @Override
+    public Void visit(BsonArray value, ByteBuf arg) {
+      for (BsonValue<?> child : value) {
+        writeValue(arg, child);
+      }
+      arg.writeByte(END);
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonBinary value, ByteBuf arg) {
+      //MongoDB compares the length before the subtype and the content
+      NonIoByteSource byteSource = value.getByteSource();
+      arg.writeInt((int) byteSource.size()).writeByte(value.getNumericSubType());
+      try (OutputStream os = new ByteBufOutputStream(arg)) {
+        byteSource.copyTo(os);
+      } catch (IOException ex) {
+        throw new AssertionError("Unexpected IOException", ex);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonDbPointer value, ByteBuf arg) {
+      //MongoDB compares the size of the namespace before its content
+      byte[] namespace = value.getNamespace().getBytes(StandardCharsets.UTF_8);
+      arg.writeInt(namespace.length).writeBytes(namespace);
+      writeObjectId(arg, value.getId());
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonDateTime value, ByteBuf arg) {
+      arg.writeLong(value.getMillisFromUnix() ^ Long.MIN_VALUE);
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonDocument value, ByteBuf arg) {
+      for (Entry<?> entry : value) {
+        BsonValue<?> child = entry.getValue();
+        writeRank(arg, child);
+        writeString(arg, entry.getKey());
+        child.accept(this, arg);
+      }
+      arg.writeByte(END);
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonDouble value, ByteBuf arg) {
+      writeDouble(arg, value.doubleValue());
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonInt32 value, ByteBuf arg) {
+      writeLong(arg, value.intValue());
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonInt64 value, ByteBuf arg) {
+      writeLong(arg, value.longValue());
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonBoolean value, ByteBuf arg) {
+      arg.writeByte(value.getPrimitiveValue() ? 1 : 0);
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonJavaScript value, ByteBuf arg) {
+      writeString(arg, value.getValue());
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonJavaScriptWithScope value, ByteBuf arg) {
+      writeString(arg, value.getJavaScript());
+      visit(value.getScope(), arg);
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonMax value, ByteBuf arg) {
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonMin value, ByteBuf arg) {
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonNull value, ByteBuf arg) {
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonObjectId value, ByteBuf arg) {
+      writeObjectId(arg, value);
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonRegex value, ByteBuf arg) {
+      writeString(arg, value.getPattern());
+      writeString(arg, value.getOptionsAsText());
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonString value, ByteBuf arg) {
+      writeString(arg, value.getValue());
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonUndefined value, ByteBuf arg) {
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonTimestamp value, ByteBuf arg) {
+      //both fields are compared as unsigned ints
+      arg.writeInt(value.getSecondsSinceEpoch()).writeInt(value.getOrdinal());
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonDeprecated value, ByteBuf arg) {
+      writeString(arg, value.getValue());
+      return null;
+    }
+
+    @Override
+    public Void visit(BsonDecimal128 value, ByteBuf arg) {
+      writeDecimal128(arg, value);
+      return null;
+    }
+  }
+}
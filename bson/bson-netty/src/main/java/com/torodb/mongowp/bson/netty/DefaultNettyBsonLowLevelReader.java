@@ -45,11 +45,12 @@ import com.torodb.mongowp.bson.impl.DefaultBsonJavaScript;
 import com.torodb.mongowp.bson.impl.DefaultBsonJavaScriptWithCode;
 import com.torodb.mongowp.bson.impl.DefaultBsonRegex;
 import com.torodb.mongowp.bson.impl.DefaultBsonTimestamp;
+import com.torodb.mongowp.bson.impl.DoubleArrayBsonArray;
 import com.torodb.mongowp.bson.impl.FalseBsonBoolean;
+import com.torodb.mongowp.bson.impl.IntArrayBsonArray;
 import com.torodb.mongowp.bson.impl.ListBsonArray;
-import com.torodb.mongowp.bson.impl.LongBsonDateTime;
+import com.torodb.mongowp.bson.impl.LongArrayBsonArray;
 import com.torodb.mongowp.bson.impl.LongsBsonDecimal128;
-import com.torodb.mongowp.bson.impl.MapBasedBsonDocument;
 import com.torodb.mongowp.bson.impl.PrimitiveBsonDouble;
 import com.torodb.mongowp.bson.impl.PrimitiveBsonInt32;
 import com.torodb.mongowp.bson.impl.PrimitiveBsonInt64;
@@ -62,10 +63,11 @@ import com.torodb.mongowp.bson.impl.StringBsonString;
 import com.torodb.mongowp.bson.impl.TrueBsonBoolean;
 import com.torodb.mongowp.bson.netty.annotations.Loose;
 import com.torodb.mongowp.bson.netty.annotations.ModifiesIndexes;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
 import io.netty.buffer.ByteBuf;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 
 import javax.annotation.concurrent.Immutable;
@@ -77,6 +79,12 @@ import javax.inject.Inject;
 @Immutable
 public class DefaultNettyBsonLowLevelReader extends NettyBsonLowLevelReader {
 
+  /**
+   * The minimum number of bytes an array element uses besides its value: the type and a key of
+   * at least one digit plus its terminator.
+   */
+  private static final int MIN_ELEMENT_OVERHEAD = 3;
+
   @Inject
   public DefaultNettyBsonLowLevelReader(NettyStringReader stringReader) {
     super(stringReader);
@@ -92,11 +100,96 @@ public class DefaultNettyBsonLowLevelReader extends NettyBsonLowLevelReader {
     byte b = byteBuf.readByte();
     assert b == 0x00;
 
-    ArrayList<BsonValue<?>> list = new ArrayList<>();
-    while (significantSlice.readableBytes() > 0) {
-      list.add(readArrayEntry(significantSlice));
+    if (significantSlice.readableBytes() > 0) {
+      switch (significantSlice.getByte(significantSlice.readerIndex())) {
+        case ParsingTools.INT32_TYPE_BYTE:
+          return readInt32Array(significantSlice);
+        case ParsingTools.INT64_TYPE_BYTE:
+          return readInt64Array(significantSlice);
+        case ParsingTools.DOUBLE_TYPE_BYTE:
+          return readDoubleArray(significantSlice);
+        default:
+          break;
+      }
+    }
+    return new ListBsonArray(readArrayEntries(significantSlice, new ArrayList<>()));
+  }
+
+  private ArrayList<BsonValue<?>> readArrayEntries(@Loose @ModifiesIndexes ByteBuf byteBuf,
+      ArrayList<BsonValue<?>> list) throws NettyBsonReaderException {
+    while (byteBuf.readableBytes() > 0) {
+      list.add(readArrayEntry(byteBuf));
+    }
+    return list;
+  }
+
+  /**
+   * Reads an array whose first element is an int32. If all elements are int32, they are stored
+   * on an {@link IntArrayBsonArray}.
+   */
+  private BsonArray readInt32Array(@Loose @ModifiesIndexes ByteBuf byteBuf)
+      throws NettyBsonReaderException {
+    int[] values = new int[byteBuf.readableBytes() / (MIN_ELEMENT_OVERHEAD + Integer.BYTES)];
+    int count = 0;
+    while (byteBuf.readableBytes() > 0) {
+      if (byteBuf.getByte(byteBuf.readerIndex()) != ParsingTools.INT32_TYPE_BYTE) {
+        ArrayList<BsonValue<?>> list = new ArrayList<>(count + 1);
+        for (int i = 0; i < count; i++) {
+          list.add(PrimitiveBsonInt32.newInstance(values[i]));
+        }
+        return new ListBsonArray(readArrayEntries(byteBuf, list));
+      }
+      byteBuf.skipBytes(1);
+      getStringReader().skipCString(byteBuf);
+      values[count++] = byteBuf.readInt();
+    }
+    return new IntArrayBsonArray(Arrays.copyOf(values, count));
+  }
+
+  /**
+   * Reads an array whose first element is an int64. If all elements are int64, they are stored
+   * on a {@link LongArrayBsonArray}.
+   */
+  private BsonArray readInt64Array(@Loose @ModifiesIndexes ByteBuf byteBuf)
+      throws NettyBsonReaderException {
+    long[] values = new long[byteBuf.readableBytes() / (MIN_ELEMENT_OVERHEAD + Long.BYTES)];
+    int count = 0;
+    while (byteBuf.readableBytes() > 0) {
+      if (byteBuf.getByte(byteBuf.readerIndex()) != ParsingTools.INT64_TYPE_BYTE) {
+        ArrayList<BsonValue<?>> list = new ArrayList<>(count + 1);
+        for (int i = 0; i < count; i++) {
+          list.add(PrimitiveBsonInt64.newInstance(values[i]));
+        }
+        return new ListBsonArray(readArrayEntries(byteBuf, list));
+      }
+      byteBuf.skipBytes(1);
+      getStringReader().skipCString(byteBuf);
+      values[count++] = byteBuf.readLong();
+    }
+    return new LongArrayBsonArray(Arrays.copyOf(values, count));
+  }
+
+  /**
+   * Reads an array whose first element is a double. If all elements are doubles, they are stored
+   * on a {@link DoubleArrayBsonArray}.
+   */
+  private BsonArray readDoubleArray(@Loose @ModifiesIndexes ByteBuf byteBuf)
+      throws NettyBsonReaderException {
+    double[] values = new double[byteBuf.readableBytes() / (MIN_ELEMENT_OVERHEAD + Double.BYTES)];
+    int count = 0;
+    while (byteBuf.readableBytes() > 0) {
+      if (byteBuf.getByte(byteBuf.readerIndex()) != ParsingTools.DOUBLE_TYPE_BYTE) {
+        ArrayList<BsonValue<?>> list = new ArrayList<>(count + 1);
+        for (int i = 0; i < count; i++) {
+          list.add(PrimitiveBsonDouble.newInstance(values[i]));
+        }
+        return new ListBsonArray(readArrayEntries(byteBuf, list));
+      }
+      byteBuf.skipBytes(1);
+      getStringReader().skipCString(byteBuf);
+      values[count++] = byteBuf.readDouble();
     }
-    return new ListBsonArray(list);
+    return new DoubleArrayBsonArray(Arrays.copyOf(values, count));
   }
 
   @Override
@@ -112,7 +205,7 @@ public class DefaultNettyBsonLowLevelReader extends NettyBsonLowLevelReader {
 
   @Override
   BsonDateTime readDateTime(@Loose @ModifiesIndexes ByteBuf byteBuf) {
-    return new LongBsonDateTime(byteBuf.readLong());
+    return DefaultBsonValues.newDateTime(byteBuf.readLong());
   }
 
   @Override
@@ -146,7 +239,7 @@ public class DefaultNettyBsonLowLevelReader extends NettyBsonLowLevelReader {
       Entry<?> entry = readDocumentEntry(significantSlice);
       values.put(entry.getKey(), entry.getValue());
     }
-    return new MapBasedBsonDocument(values);
+    return DefaultBsonValues.newDocument(values);
   }
 
   @Override
@@ -162,7 +255,9 @@ public class DefaultNettyBsonLowLevelReader extends NettyBsonLowLevelReader {
 
   @Override
   BsonDecimal128 readDecimal128(@Loose @ModifiesIndexes ByteBuf byteBuf) {
-    return LongsBsonDecimal128.newInstance(new BigDecimal(byteBuf.readDouble()));
+    long low = byteBuf.readLong();
+    long high = byteBuf.readLong();
+    return LongsBsonDecimal128.newInstance(high, low);
   }
   
   
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import com.torodb.mongowp.bson.BsonType;
+import com.torodb.mongowp.bson.netty.annotations.ConservesIndexes;
+import com.torodb.mongowp.bson.netty.annotations.Tight;
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An index of the fields of a serialized BSON document that stores, for each field, the hash of
+ * its name, its type and the offset of its value.
+ *
+ * The index is built with a single scan that skips the values without decoding them. Keyed
+ * lookups compare the UTF-8 bytes of the name on the buffer with the looked key, so no string is
+ * created. Small documents are scanned linearly, bigger ones use an open addressing table. If a
+ * name is repeated, the first field with that name is found, as it happens when the document is
+ * iterated.
+ */
+@Immutable
+final class FieldOffsetIndex {
+
+  /**
+   * Documents with more fields than this use a hash table to find fields.
+   */
+  private static final int LINEAR_SCAN_THRESHOLD = 8;
+  private static final BsonType[] BSON_TYPES = BsonType.values();
+
+  private final int size;
+  private final int[] hashes;
+  private final int[] nameOffsets;
+  private final int[] valueOffsets;
+  private final byte[] types;
+  /**
+   * Positions (plus one) of the fields or null if the index is scanned linearly.
+   */
+  private final int[] table;
+
+  private FieldOffsetIndex(int size, int[] hashes, int[] nameOffsets, int[] valueOffsets,
+      byte[] types) {
+    this.size = size;
+    this.hashes = hashes;
+    this.nameOffsets = nameOffsets;
+    this.valueOffsets = valueOffsets;
+    this.types = types;
+    this.table = size > LINEAR_SCAN_THRESHOLD ? createTable(size, hashes) : null;
+  }
+
+  /**
+   * Indexes the fields of a document.
+   *
+   * @param byteBuf the document without its length prefix. It must include the final 0x00
+   */
+  static FieldOffsetIndex build(@Tight @ConservesIndexes ByteBuf byteBuf,
+      NettyBsonLowLevelReader reader) throws NettyBsonReaderException {
+    ByteBuf scanned = byteBuf.slice();
+    int base = byteBuf.readerIndex();
+    int capacity = 4;
+    int[] hashes = new int[capacity];
+    int[] nameOffsets = new int[capacity];
+    int[] valueOffsets = new int[capacity];
+    byte[] types = new byte[capacity];
+    int size = 0;
+    while (reader.hasNext(scanned)) {
+      if (size == capacity) {
+        capacity <<= 1;
+        hashes = Arrays.copyOf(hashes, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        valueOffsets = Arrays.copyOf(valueOffsets, capacity);
+        types = Arrays.copyOf(types, capacity);
+      }
+      BsonType bsonType = ParsingTools.getBsonType(scanned.readByte());
+      int nameOffset = scanned.readerIndex();
+      int nameEnd = scanned.bytesBefore((byte) 0x00) + nameOffset;
+      if (nameEnd < nameOffset) {
+        throw new NettyBsonReaderException("Unterminated field name");
+      }
+      int hash = 1;
+      for (int i = nameOffset; i < nameEnd; i++) {
+        hash = 31 * hash + scanned.getByte(i);
+      }
+      scanned.readerIndex(nameEnd + 1);
+
+      hashes[size] = hash;
+      nameOffsets[size] = base + nameOffset;
+      valueOffsets[size] = base + scanned.readerIndex();
+      types[size] = (byte) bsonType.ordinal();
+      size++;
+
+      reader.skipValue(bsonType, scanned);
+    }
+    return new FieldOffsetIndex(size, hashes, nameOffsets, valueOffsets, types);
+  }
+
+  private static int[] createTable(int size, int[] hashes) {
+    int[] table = new int[Integer.highestOneBit(size) << 2];
+    int mask = table.length - 1;
+    for (int pos = 0; pos < size; pos++) {
+      int slot = spread(hashes[pos]) & mask;
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = pos + 1;
+    }
+    return table;
+  }
+
+  private static int spread(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the position of the first field whose name is the given one or -1 if there is no such
+   * field.
+   */
+  int find(@Tight @ConservesIndexes ByteBuf byteBuf, String key) {
+    byte[] utf8Key = isAscii(key) ? null : key.getBytes(StandardCharsets.UTF_8);
+    int hash = utf8Key == null ? asciiHash(key) : hash(utf8Key);
+
+    if (table == null) {
+      for (int pos = 0; pos < size; pos++) {
+        if (hashes[pos] == hash && nameEquals(byteBuf, pos, key, utf8Key)) {
+          return pos;
+        }
+      }
+      return -1;
+    }
+    int mask = table.length - 1;
+    int slot = spread(hash) & mask;
+    int candidate;
+    while ((candidate = table[slot]) != 0) {
+      int pos = candidate - 1;
+      if (hashes[pos] == hash && nameEquals(byteBuf, pos, key, utf8Key)) {
+        return pos;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  BsonType getType(int pos) {
+    return BSON_TYPES[types[pos]];
+  }
+
+  int getValueOffset(int pos) {
+    return valueOffsets[pos];
+  }
+
+  private boolean nameEquals(ByteBuf byteBuf, int pos, String key, byte[] utf8Key) {
+    int nameOffset = nameOffsets[pos];
+    //the name is followed by a 0x00 and the type byte of the value is not stored between them
+    int nameLength = valueOffsets[pos] - nameOffset - 1;
+    if (utf8Key == null) {
+      if (nameLength != key.length()) {
+        return false;
+      }
+      for (int i = 0; i < nameLength; i++) {
+        if (byteBuf.getByte(nameOffset + i) != key.charAt(i)) {
+          return false;
+        }
+      }
+    } else {
+      if (nameLength != utf8Key.length) {
+        return false;
+      }
+      for (int i = 0; i < nameLength; i++) {
+        if (byteBuf.getByte(nameOffset + i) != utf8Key[i]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean isAscii(String key) {
+    for (int i = 0; i < key.length(); i++) {
+      if (key.charAt(i) >= 0x80) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int asciiHash(String key) {
+    int hash = 1;
+    for (int i = 0; i < key.length(); i++) {
+      hash = 31 * hash + key.charAt(i);
+    }
+    return hash;
+  }
+
+  private static int hash(byte[] utf8Key) {
+    int hash = 1;
+    for (byte b : utf8Key) {
+      hash = 31 * hash + b;
+    }
+    return hash;
+  }
+}
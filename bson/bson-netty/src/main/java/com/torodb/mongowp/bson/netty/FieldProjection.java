@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.BsonDocument.Entry;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.netty.annotations.ConservesIndexes;
+import com.torodb.mongowp.bson.netty.annotations.Tight;
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A set of dotted field paths that selects the parts of a document that must be read.
+ *
+ * It is a tree whose nodes are field names. A node that {@link #includesAll() includes all}
+ * selects the whole value of its field, while other nodes only select the fields of their
+ * children. As in MongoDB projections, a path that traverses an array is applied to each document
+ * of the array.
+ *
+ * @see NettyBsonDocumentReader#readDocument(
+ * com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType, ByteBuf, FieldProjection)
+ */
+@Immutable
+public final class FieldProjection {
+
+  private static final Splitter PATH_SPLITTER = Splitter.on('.');
+  private static final FieldProjection ALL = new FieldProjection(true, new LinkedHashMap<>());
+
+  private final boolean includesAll;
+  private final String[] names;
+  private final byte[][] utf8Names;
+  private final FieldProjection[] children;
+
+  private FieldProjection(boolean includesAll, Map<String, Node> childNodes) {
+    this.includesAll = includesAll;
+    this.names = new String[childNodes.size()];
+    this.utf8Names = new byte[childNodes.size()][];
+    this.children = new FieldProjection[childNodes.size()];
+    int i = 0;
+    for (Map.Entry<String, Node> childNode : childNodes.entrySet()) {
+      names[i] = childNode.getKey();
+      utf8Names[i] = childNode.getKey().getBytes(StandardCharsets.UTF_8);
+      children[i] = childNode.getValue().build();
+      i++;
+    }
+  }
+
+  /**
+   * Creates a projection that selects the given dotted paths.
+   */
+  public static FieldProjection of(String... paths) {
+    return of(Arrays.asList(paths));
+  }
+
+  /**
+   * Creates a projection that selects the given dotted paths.
+   */
+  public static FieldProjection of(Iterable<String> paths) {
+    Node root = new Node();
+    for (String path : paths) {
+      root.add(path);
+    }
+    return root.build();
+  }
+
+  /**
+   * Creates a projection from a MongoDB projection document, like the
+   * {@code returnFieldsSelector} of a query.
+   *
+   * Fields whose value is {@code false} or {@code 0} are excluded and other fields are included.
+   * As in MongoDB, the {@code _id} field is included unless it is explicitly excluded. Fields
+   * whose value is an operator (like {@code $slice} or {@code $elemMatch}) are completely
+   * included, so the operator can be applied later.
+   *
+   * An empty projection or one that only contains exclusions selects the whole document: a
+   * projection can only select fields, so the excluded ones must be removed later.
+   */
+  public static FieldProjection fromProjection(BsonDocument projection) {
+    Node root = new Node();
+    boolean includeId = true;
+    boolean hasInclusions = false;
+    for (Entry<?> entry : projection) {
+      String key = entry.getKey();
+      if (isExclusion(entry.getValue())) {
+        if (key.equals("_id")) {
+          includeId = false;
+        }
+      } else {
+        root.add(key);
+        hasInclusions = true;
+      }
+    }
+    if (!hasInclusions) {
+      return ALL;
+    }
+    if (includeId) {
+      root.add("_id");
+    }
+    return root.build();
+  }
+
+  private static boolean isExclusion(BsonValue<?> value) {
+    if (value.isBoolean()) {
+      return !value.asBoolean().getPrimitiveValue();
+    }
+    return value.isNumber() && value.asNumber().doubleValue() == 0;
+  }
+
+  /**
+   * @return true iff the whole value of the field this projection refers to is selected
+   */
+  public boolean includesAll() {
+    return includesAll;
+  }
+
+  /**
+   * @return true iff no field is selected
+   */
+  public boolean isEmpty() {
+    return !includesAll && children.length == 0;
+  }
+
+  /**
+   * Returns the position of the child whose name is stored on the given region of the buffer or
+   * -1 if there is no such child.
+   */
+  int findChild(@Tight @ConservesIndexes ByteBuf byteBuf, int nameOffset, int nameLength) {
+    for (int i = 0; i < utf8Names.length; i++) {
+      byte[] utf8Name = utf8Names[i];
+      if (utf8Name.length == nameLength && nameEquals(byteBuf, nameOffset, utf8Name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean nameEquals(ByteBuf byteBuf, int nameOffset, byte[] utf8Name) {
+    for (int j = 0; j < utf8Name.length; j++) {
+      if (byteBuf.getByte(nameOffset + j) != utf8Name[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Nonnull
+  String getChildName(int pos) {
+    return names[pos];
+  }
+
+  @Nonnull
+  FieldProjection getChild(int pos) {
+    return children[pos];
+  }
+
+  @Override
+  public String toString() {
+    if (includesAll) {
+      return "*";
+    }
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = 0; i < names.length; i++) {
+      if (i != 0) {
+        sb.append(", ");
+      }
+      sb.append(names[i]).append(": ").append(children[i]);
+    }
+    return sb.append('}').toString();
+  }
+
+  private static class Node {
+
+    private boolean includesAll;
+    private final Map<String, Node> children = new LinkedHashMap<>();
+
+    private void add(String path) {
+      Preconditions.checkArgument(!path.isEmpty(), "Empty paths are not allowed");
+      Node node = this;
+      for (String name : PATH_SPLITTER.split(path)) {
+        if (node.includesAll) {
+          //a prefix of the path is already completely included
+          return;
+        }
+        node = node.children.computeIfAbsent(name, key -> new Node());
+      }
+      node.includesAll = true;
+      node.children.clear();
+    }
+
+    private FieldProjection build() {
+      if (includesAll) {
+        return ALL;
+      }
+      return new FieldProjection(false, children);
+    }
+  }
+}
@@ -23,6 +23,8 @@ import com.torodb.mongowp.bson.impl.ListBsonArray;
 import com.torodb.mongowp.bson.netty.annotations.Loose;
 import com.torodb.mongowp.bson.netty.annotations.ModifiesIndexes;
 import com.torodb.mongowp.bson.netty.annotations.Tight;
+import com.torodb.mongowp.bson.utils.ContentHashAware;
+import com.torodb.mongowp.bson.utils.SerializedSizeAware;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 
@@ -34,11 +36,16 @@ import java.util.NoSuchElementException;
  */
 @SuppressFBWarnings(value = {"SE_BAD_FIELD", "SE_NO_SERIALVERSIONID"},
     justification = "writeReplace is used")
-public class IterableNettyBsonArray extends AbstractIterableBasedBsonArray {
+public class IterableNettyBsonArray extends AbstractIterableBasedBsonArray
+    implements SerializedSizeAware, ContentHashAware {
 
   @Loose
   private final ByteBuf byteBuf;
   private final OffHeapNettyBsonLowLevelReader offHeapReader;
+  /**
+   * The cached content hash or 0 if it has not been calculated yet.
+   */
+  private transient long contentHash;
 
   /**
    *
@@ -51,6 +58,53 @@ public class IterableNettyBsonArray extends AbstractIterableBasedBsonArray {
     this.offHeapReader = offHeapReader;
   }
 
+  @Override
+  public int getSerializedSize() {
+    return Integer.BYTES + byteBuf.readableBytes();
+  }
+
+  @Override
+  public long getContentHash() {
+    long result = contentHash;
+    if (result == 0) {
+      try {
+        result = NettyBsonContentHasher.hashArray(byteBuf);
+      } catch (NettyBsonReaderException ex) {
+        throw new RuntimeException(ex);
+      }
+      contentHash = result;
+    }
+    return result;
+  }
+
+  /**
+   * Two serialized arrays with the same bytes are equal without decoding them (even when they
+   * contain a NaN double, see {@link com.torodb.mongowp.bson.BsonArray#equals(java.lang.Object)}),
+   * and they are not equal when their content hashes are different. Otherwise their elements are
+   * compared.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof IterableNettyBsonArray) {
+      IterableNettyBsonArray other = (IterableNettyBsonArray) obj;
+      if (byteBuf.equals(other.byteBuf)) {
+        return true;
+      }
+      if (getContentHash() != other.getContentHash()) {
+        return false;
+      }
+    }
+    return super.equals(obj);
+  }
+
+  /**
+   * @return the bytes of this array after its length field, including the final 0x00
+   */
+  @Loose
+  ByteBuf getContent() {
+    return byteBuf;
+  }
+
   @Override
   public UnmodifiableIterator<BsonValue<?>> iterator() {
     return new MyIterator(byteBuf.slice(), offHeapReader);
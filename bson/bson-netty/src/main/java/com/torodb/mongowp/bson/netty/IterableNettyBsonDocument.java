@@ -18,11 +18,14 @@ package com.torodb.mongowp.bson.netty;
 import com.google.common.collect.Lists;
 import com.google.common.collect.UnmodifiableIterator;
 import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.BsonValue;
 import com.torodb.mongowp.bson.abst.AbstractIterableBasedBsonDocument;
 import com.torodb.mongowp.bson.impl.ListBasedBsonDocument;
 import com.torodb.mongowp.bson.netty.annotations.Loose;
 import com.torodb.mongowp.bson.netty.annotations.ModifiesIndexes;
 import com.torodb.mongowp.bson.netty.annotations.Tight;
+import com.torodb.mongowp.bson.utils.ContentHashAware;
+import com.torodb.mongowp.bson.utils.SerializedSizeAware;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 
@@ -34,11 +37,21 @@ import java.util.NoSuchElementException;
  */
 @SuppressFBWarnings(value = {"SE_BAD_FIELD", "SE_NO_SERIALVERSIONID"},
     justification = "writeReplace is used")
-public class IterableNettyBsonDocument extends AbstractIterableBasedBsonDocument {
+public class IterableNettyBsonDocument extends AbstractIterableBasedBsonDocument
+    implements SerializedSizeAware, ContentHashAware {
 
   @Loose
   private final ByteBuf byteBuf;
   private final OffHeapNettyBsonLowLevelReader offHeapReader;
+  /**
+   * Lazily built on the first keyed access. It is immutable, so it is safe to build it more than
+   * once when the document is shared between threads.
+   */
+  private transient FieldOffsetIndex index;
+  /**
+   * The cached content hash or 0 if it has not been calculated yet.
+   */
+  private transient long contentHash;
 
   /**
    *
@@ -51,6 +64,105 @@ public class IterableNettyBsonDocument extends AbstractIterableBasedBsonDocument
     this.offHeapReader = offHeapReader;
   }
 
+  @Override
+  public int getSerializedSize() {
+    return Integer.BYTES + byteBuf.readableBytes();
+  }
+
+  @Override
+  public long getContentHash() {
+    long result = contentHash;
+    if (result == 0) {
+      try {
+        result = NettyBsonContentHasher.hashDocument(byteBuf);
+      } catch (NettyBsonReaderException ex) {
+        throw new RuntimeException(ex);
+      }
+      contentHash = result;
+    }
+    return result;
+  }
+
+  /**
+   * Two serialized documents with the same bytes are equal without decoding them (even when they
+   * contain a NaN double, see {@link BsonDocument#equals(java.lang.Object)}), and they are not
+   * equal when their content hashes are different. Otherwise their entries are compared.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof IterableNettyBsonDocument) {
+      IterableNettyBsonDocument other = (IterableNettyBsonDocument) obj;
+      if (byteBuf.equals(other.byteBuf)) {
+        return true;
+      }
+      if (getContentHash() != other.getContentHash()) {
+        return false;
+      }
+    }
+    return super.equals(obj);
+  }
+
+  /**
+   * @return the bytes of this document after its length field, including the final 0x00
+   */
+  @Loose
+  ByteBuf getContent() {
+    return byteBuf;
+  }
+
+  @Override
+  public BsonValue<?> get(String key) {
+    FieldOffsetIndex index = getIndex();
+    int pos = index.find(byteBuf, key);
+    if (pos < 0) {
+      return null;
+    }
+    return readValue(index, pos);
+  }
+
+  @Override
+  public boolean containsKey(String key) {
+    return getIndex().find(byteBuf, key) >= 0;
+  }
+
+  @Override
+  public Entry<?> getEntry(String key) {
+    FieldOffsetIndex index = getIndex();
+    int pos = index.find(byteBuf, key);
+    if (pos < 0) {
+      return null;
+    }
+    return new SimpleEntry<>(key, readValue(index, pos));
+  }
+
+  @Override
+  public int size() {
+    return getIndex().size();
+  }
+
+  private FieldOffsetIndex getIndex() {
+    FieldOffsetIndex result = index;
+    if (result == null) {
+      try {
+        result = FieldOffsetIndex.build(byteBuf, offHeapReader);
+      } catch (NettyBsonReaderException ex) {
+        throw new RuntimeException(ex);
+      }
+      index = result;
+    }
+    return result;
+  }
+
+  private BsonValue<?> readValue(FieldOffsetIndex index, int pos) {
+    int valueOffset = index.getValueOffset(pos);
+    ByteBuf valueBuf = byteBuf.slice(valueOffset, byteBuf.writerIndex() - valueOffset);
+    try {
+      return offHeapReader.readValue(index.getType(pos), valueBuf);
+    } catch (NettyBsonReaderException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
   @Override
   public UnmodifiableIterator<Entry<?>> iterator() {
     return new MyIterator(byteBuf.slice(), offHeapReader);
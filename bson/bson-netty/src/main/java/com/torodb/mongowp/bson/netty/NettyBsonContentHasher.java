@@ -0,0 +1,230 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.torodb.mongowp.bson.BinarySubtype;
+import com.torodb.mongowp.bson.BsonType;
+import com.torodb.mongowp.bson.netty.annotations.Loose;
+import com.torodb.mongowp.bson.utils.BsonContentHasher;
+import com.torodb.mongowp.bson.utils.BsonEventHandler;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Calculates the {@link BsonContentHasher content hash} of serialized documents and arrays from
+ * the events of their content, so no value is created.
+ */
+final class NettyBsonContentHasher implements BsonEventHandler<ByteBuf> {
+
+  private static final NettyBsonEventReader EVENT_READER = new NettyBsonEventReader();
+  private static final byte CSTRING_TERMINATION = 0x00;
+
+  private final Deque<Hasher> hashers = new ArrayDeque<>();
+  private boolean scopeExpected;
+  private long result;
+
+  private NettyBsonContentHasher() {
+  }
+
+  /**
+   * @param content the bytes of a document after its length field, including the final 0x00
+   */
+  static long hashDocument(@Loose ByteBuf content) throws NettyBsonReaderException {
+    NettyBsonContentHasher hasher = new NettyBsonContentHasher();
+    EVENT_READER.readDocumentContent(content.slice(), hasher);
+    return hasher.result;
+  }
+
+  /**
+   * @param content the bytes of an array after its length field, including the final 0x00
+   */
+  static long hashArray(@Loose ByteBuf content) throws NettyBsonReaderException {
+    NettyBsonContentHasher hasher = new NettyBsonContentHasher();
+    EVENT_READER.readArrayContent(content.slice(), hasher);
+    return hasher.result;
+  }
+
+  private Hasher startValue(BsonType type) {
+    Hasher hasher = hashers.element();
+    BsonContentHasher.putType(hasher, type);
+    return hasher;
+  }
+
+  private static void putBytes(Hasher hasher, ByteBuf raw) {
+    try {
+      raw.getBytes(raw.readerIndex(), Funnels.asOutputStream(hasher), raw.readableBytes());
+    } catch (IOException ex) {
+      throw new AssertionError("Unexpected IOException", ex);
+    }
+  }
+
+  private static void putString(Hasher hasher, ByteBuf raw) {
+    hasher.putInt(raw.readableBytes());
+    putBytes(hasher, raw);
+  }
+
+  private void startContainer(BsonType type) {
+    if (scopeExpected) {
+      scopeExpected = false;
+    } else if (!hashers.isEmpty()) {
+      startValue(type);
+    }
+    hashers.push(BsonContentHasher.newHasher());
+  }
+
+  private void endContainer() {
+    long hash = BsonContentHasher.getHash(hashers.pop());
+    if (hashers.isEmpty()) {
+      result = hash;
+    } else {
+      hashers.element().putLong(hash);
+    }
+  }
+
+  @Override
+  public void startDocument() {
+    startContainer(BsonType.DOCUMENT);
+  }
+
+  @Override
+  public void endDocument() {
+    endContainer();
+  }
+
+  @Override
+  public void startArray() {
+    startContainer(BsonType.ARRAY);
+  }
+
+  @Override
+  public void endArray() {
+    endContainer();
+  }
+
+  @Override
+  public void onName(ByteBuf name) {
+    Hasher hasher = hashers.element();
+    putBytes(hasher, name);
+    hasher.putByte(CSTRING_TERMINATION);
+  }
+
+  @Override
+  public void onDouble(double value) {
+    BsonContentHasher.putDouble(startValue(BsonType.DOUBLE), value);
+  }
+
+  @Override
+  public void onString(ByteBuf value) {
+    putString(startValue(BsonType.STRING), value);
+  }
+
+  @Override
+  public void onBinary(BinarySubtype subtype, byte numericSubtype, ByteBuf data) {
+    Hasher hasher = startValue(BsonType.BINARY);
+    hasher.putInt(data.readableBytes()).putByte(numericSubtype);
+    putBytes(hasher, data);
+  }
+
+  @Override
+  public void onUndefined() {
+    startValue(BsonType.UNDEFINED);
+  }
+
+  @Override
+  public void onObjectId(ByteBuf value) {
+    putBytes(startValue(BsonType.OBJECT_ID), value);
+  }
+
+  @Override
+  public void onBoolean(boolean value) {
+    startValue(BsonType.BOOLEAN).putBoolean(value);
+  }
+
+  @Override
+  public void onDateTime(long millisFromUnix) {
+    startValue(BsonType.DATETIME).putLong(millisFromUnix);
+  }
+
+  @Override
+  public void onNull() {
+    startValue(BsonType.NULL);
+  }
+
+  @Override
+  public void onRegex(ByteBuf pattern, ByteBuf options) {
+    Hasher hasher = startValue(BsonType.REGEX);
+    putString(hasher, pattern);
+    putString(hasher, options);
+  }
+
+  @Override
+  public void onDbPointer(ByteBuf namespace, ByteBuf id) {
+    Hasher hasher = startValue(BsonType.DB_POINTER);
+    putString(hasher, namespace);
+    putBytes(hasher, id);
+  }
+
+  @Override
+  public void onJavaScript(ByteBuf code) {
+    putString(startValue(BsonType.JAVA_SCRIPT), code);
+  }
+
+  @Override
+  public void startJavaScriptWithScope(ByteBuf code) {
+    putString(startValue(BsonType.JAVA_SCRIPT_WITH_SCOPE), code);
+    scopeExpected = true;
+  }
+
+  @Override
+  public void onInt32(int value) {
+    startValue(BsonType.INT32).putInt(value);
+  }
+
+  @Override
+  public void onTimestamp(int secondsSinceEpoch, int ordinal) {
+    startValue(BsonType.TIMESTAMP).putInt(secondsSinceEpoch).putInt(ordinal);
+  }
+
+  @Override
+  public void onInt64(long value) {
+    startValue(BsonType.INT64).putLong(value);
+  }
+
+  @Override
+  public void onDecimal128(long low, long high) {
+    startValue(BsonType.DECIMAL128).putLong(low).putLong(high);
+  }
+
+  @Override
+  public void onMin() {
+    startValue(BsonType.MIN);
+  }
+
+  @Override
+  public void onMax() {
+    startValue(BsonType.MAX);
+  }
+
+  @Override
+  public void onDeprecated(ByteBuf value) {
+    putString(startValue(BsonType.DEPRECATED), value);
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import com.torodb.mongowp.bson.abst.AbstractBsonDecimal128;
+import com.torodb.mongowp.bson.impl.LongsBsonDecimal128;
+import com.torodb.mongowp.bson.netty.annotations.ConservesIndexes;
+import com.torodb.mongowp.bson.netty.annotations.Loose;
+import com.torodb.mongowp.bson.netty.annotations.ModifiesIndexes;
+import com.torodb.mongowp.bson.netty.annotations.Tight;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.netty.buffer.ByteBuf;
+
+import java.io.ObjectStreamException;
+import java.math.BigDecimal;
+import java.nio.ByteOrder;
+
+/**
+ * A decimal128 whose two halves are read from a buffer when they are needed.
+ */
+@SuppressFBWarnings(value = {"SE_BAD_FIELD", "SE_NO_SERIALVERSIONID"},
+    justification = "writeReplace is used")
+public class NettyBsonDecimal128 extends AbstractBsonDecimal128 {
+
+  private static final long serialVersionUID = -1238792341873498734L;
+
+  @Tight
+  private final ByteBuf byteBuf;
+  private final int offset;
+
+  /**
+   * @param byteBuf a buffer whose readable bytes are the 16 bytes of the decimal, as they are
+   *                stored on BSON: the low half first, both in little endian
+   */
+  public NettyBsonDecimal128(@Tight @ConservesIndexes ByteBuf byteBuf) {
+    assert byteBuf.readableBytes() == 16;
+    this.byteBuf = byteBuf.order(ByteOrder.LITTLE_ENDIAN);
+    this.offset = byteBuf.readerIndex();
+  }
+
+  @Override
+  public long getLow() {
+    return byteBuf.getLong(offset);
+  }
+
+  @Override
+  public long getHigh() {
+    return byteBuf.getLong(offset + 8);
+  }
+
+  @Override
+  public BigDecimal getValue() {
+    return toLongsDecimal128().getValue();
+  }
+
+  @Override
+  public byte[] getBytes() {
+    return toLongsDecimal128().getBytes();
+  }
+
+  /**
+   * Writes the 16 bytes of this decimal on the given buffer.
+   */
+  void writeTo(@Loose @ModifiesIndexes ByteBuf target) {
+    target.writeBytes(byteBuf, offset, 16);
+  }
+
+  private LongsBsonDecimal128 toLongsDecimal128() {
+    return LongsBsonDecimal128.newInstance(getHigh(), getLow());
+  }
+
+  private Object writeReplace() throws ObjectStreamException {
+    return toLongsDecimal128();
+  }
+}
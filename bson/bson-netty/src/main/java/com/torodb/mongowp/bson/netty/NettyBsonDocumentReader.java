@@ -49,18 +49,35 @@ public class NettyBsonDocumentReader implements BsonDocumentReader<ByteBuf> {
   @Override
   public BsonDocument readDocument(AllocationType heapAlgorithm,
       @Loose @ModifiesIndexes ByteBuf source) throws NettyBsonReaderException {
+    return getReader(heapAlgorithm).readDocument(source);
+  }
+
+  /**
+   * Reads a document, but only materializes the fields selected by the given projection.
+   *
+   * Values that are not selected are skipped without being decoded, so reading a few fields of a
+   * wide document is much cheaper than reading the whole document. The selected values comply
+   * with the given allocation, but the returned document and the arrays that contain projected
+   * documents are always stored on the heap.
+   */
+  public BsonDocument readDocument(AllocationType heapAlgorithm,
+      @Loose @ModifiesIndexes ByteBuf source, FieldProjection projection)
+      throws NettyBsonReaderException {
+    return getReader(heapAlgorithm).readProjectedDocument(source, projection);
+  }
+
+  private NettyBsonLowLevelReader getReader(AllocationType heapAlgorithm) {
     NettyBsonLowLevelReader reader = readerMap.get(heapAlgorithm);
 
+    AllocationType previousAlgorithm = heapAlgorithm.getLessRestrictive();
+    while (reader == null && previousAlgorithm != null) {
+      reader = readerMap.get(previousAlgorithm);
+      previousAlgorithm = previousAlgorithm.getLessRestrictive();
+    }
     if (reader == null) {
-      AllocationType previousAlgorithm = heapAlgorithm.getLessRestrictive();
-      while (reader == null && previousAlgorithm != null) {
-        reader = readerMap.get(heapAlgorithm);
-      }
-      if (reader == null) {
-        throw new AssertionError("There is no reader that support " + heapAlgorithm
-            + " or a less restrictive algorithm");
-      }
+      throw new AssertionError("There is no reader that support " + heapAlgorithm
+          + " or a less restrictive algorithm");
     }
-    return reader.readDocument(source);
+    return reader;
   }
 }
@@ -15,7 +15,6 @@
  */
 package com.torodb.mongowp.bson.netty;
 
-import com.google.common.base.Charsets;
 import com.google.common.primitives.UnsignedInteger;
 import com.torodb.mongowp.bson.BsonArray;
 import com.torodb.mongowp.bson.BsonBinary;
@@ -41,13 +40,22 @@ import com.torodb.mongowp.bson.BsonTimestamp;
 import com.torodb.mongowp.bson.BsonUndefined;
 import com.torodb.mongowp.bson.BsonValue;
 import com.torodb.mongowp.bson.BsonValueVisitor;
+import com.torodb.mongowp.bson.impl.DoubleArrayBsonArray;
+import com.torodb.mongowp.bson.impl.IntArrayBsonArray;
+import com.torodb.mongowp.bson.impl.LongArrayBsonArray;
+import com.torodb.mongowp.bson.netty.annotations.Loose;
+import com.torodb.mongowp.bson.utils.BsonSizeCalculator;
 import com.torodb.mongowp.bson.utils.NonIoByteSource;
+import com.torodb.mongowp.bson.utils.SerializedSizeAware;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.CompositeByteBuf;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteOrder;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
 /**
@@ -57,27 +65,149 @@ import javax.annotation.concurrent.ThreadSafe;
 public class NettyBsonDocumentWriter {
 
   private static final WriterBsonValueVisitor VISITOR = new WriterBsonValueVisitor();
-
+  /**
+   * Documents and arrays read from a {@link ByteBuf} that are smaller than this are copied even
+   * when they are written on a {@link CompositeByteBuf}, as adding a component is not cheaper
+   * than copying a few bytes.
+   */
+  private static final int MIN_SHARED_BYTES = 512;
+
+  /**
+   * Writes the given document on the given buffer.
+   *
+   * Documents and arrays that were read from a {@link ByteBuf} (like the ones read with
+   * {@link com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType#OFFHEAP offheap}
+   * allocation) are not serialized value by value, but copied as they are. If the given buffer is
+   * a {@link CompositeByteBuf} (or a buffer with a different byte order that wraps one), big
+   * documents and arrays are not even copied: a retained slice of them is added as a new
+   * component, so the composite should be created with a big enough number of components to
+   * not be consolidated.
+   */
   public void writeInto(ByteBuf byteBuf, BsonDocument doc) {
     doc.accept(VISITOR, byteBuf);
   }
 
+  /**
+   * Returns true iff the given document would be written without being copied on a
+   * {@link CompositeByteBuf}.
+   *
+   * @see #writeInto(io.netty.buffer.ByteBuf, com.torodb.mongowp.bson.BsonDocument)
+   */
+  public boolean isShareable(BsonDocument doc) {
+    return doc instanceof IterableNettyBsonDocument
+        && ((IterableNettyBsonDocument) doc).getSerializedSize() >= MIN_SHARED_BYTES;
+  }
+
+  /**
+   * Returns the exact number of bytes the given document will use once it is written.
+   *
+   * It may iterate the whole document (although the sizes cached by {@link SerializedSizeAware}
+   * documents are reused), so it should be used when the buffer is going to be allocated only
+   * once.
+   */
+  public int getSerializedSize(BsonDocument doc) {
+    return BsonSizeCalculator.getSize(doc);
+  }
+
   private static class WriterBsonValueVisitor implements BsonValueVisitor<Void, ByteBuf> {
 
     void writeCString(ByteBuf buf, String str) {
-      buf.writeBytes(str.getBytes(Charsets.UTF_8));
-      buf.writeByte(0x00);
+      Utf8Codec.writeCString(buf, str);
     }
 
     void writeString(ByteBuf buf, String str) {
-      byte[] bytes = str.getBytes(Charsets.UTF_8);
-      int length = bytes.length + 1;
+      Utf8Codec.writeString(buf, str);
+    }
+
+    /**
+     * Writes a document or array that has already been serialized.
+     *
+     * @param content the serialized document after its length field
+     */
+    void writeRaw(ByteBuf buf, @Loose ByteBuf content) {
+      int length = content.readableBytes();
+      buf.writeInt(Integer.BYTES + length);
+
+      CompositeByteBuf composite = getComposite(buf);
+      if (composite == null || length < MIN_SHARED_BYTES) {
+        buf.writeBytes(content, content.readerIndex(), length);
+      } else {
+        //the capacity that has not been written yet is discarded so the slice is the next
+        //readable component. Components are expected to use the default byte order
+        composite.capacity(composite.writerIndex());
+        composite.addComponent(true, content.order(ByteOrder.BIG_ENDIAN)
+            .slice(content.readerIndex(), length)
+            .retain());
+      }
+    }
+
+    //arrays of primitives know their size, so it is written before their elements and the
+    //buffer is expanded only once
+    void writeInt32Array(ByteBuf buf, IntArrayBsonArray array) {
+      int size = array.getSerializedSize();
+      buf.ensureWritable(size);
+      buf.writeInt(size);
+      for (int i = 0; i < array.size(); i++) {
+        buf.writeByte(ParsingTools.INT32_TYPE_BYTE);
+        ArrayIndexKeys.writeKey(buf, i);
+        buf.writeInt(array.getInt(i));
+      }
+      buf.writeByte(0x00);
+    }
+
+    void writeInt64Array(ByteBuf buf, LongArrayBsonArray array) {
+      int size = array.getSerializedSize();
+      buf.ensureWritable(size);
+      buf.writeInt(size);
+      for (int i = 0; i < array.size(); i++) {
+        buf.writeByte(ParsingTools.INT64_TYPE_BYTE);
+        ArrayIndexKeys.writeKey(buf, i);
+        buf.writeLong(array.getLong(i));
+      }
+      buf.writeByte(0x00);
+    }
 
-      buf.writeInt(length).writeBytes(bytes).writeByte(0x00);
+    void writeDoubleArray(ByteBuf buf, DoubleArrayBsonArray array) {
+      int size = array.getSerializedSize();
+      buf.ensureWritable(size);
+      buf.writeInt(size);
+      for (int i = 0; i < array.size(); i++) {
+        buf.writeByte(ParsingTools.DOUBLE_TYPE_BYTE);
+        ArrayIndexKeys.writeKey(buf, i);
+        buf.writeDouble(array.getDouble(i));
+      }
+      buf.writeByte(0x00);
+    }
+
+    @Nullable
+    private CompositeByteBuf getComposite(ByteBuf buf) {
+      //buffers created with ByteBuf#order(ByteOrder) share the indexes with the one they wrap,
+      //which is returned when the default order is requested
+      ByteBuf bigEndian = buf.order(ByteOrder.BIG_ENDIAN);
+      if (bigEndian instanceof CompositeByteBuf) {
+        return (CompositeByteBuf) bigEndian;
+      }
+      return null;
     }
 
     @Override
     public Void visit(BsonArray value, ByteBuf arg) {
+      if (value instanceof IterableNettyBsonArray) {
+        writeRaw(arg, ((IterableNettyBsonArray) value).getContent());
+        return null;
+      }
+      if (value instanceof IntArrayBsonArray) {
+        writeInt32Array(arg, (IntArrayBsonArray) value);
+        return null;
+      }
+      if (value instanceof LongArrayBsonArray) {
+        writeInt64Array(arg, (LongArrayBsonArray) value);
+        return null;
+      }
+      if (value instanceof DoubleArrayBsonArray) {
+        writeDoubleArray(arg, (DoubleArrayBsonArray) value);
+        return null;
+      }
       final int docStart = arg.writerIndex();
       arg.writeInt(0); // reserve space for doc size
 
@@ -88,7 +218,7 @@ public class NettyBsonDocumentWriter {
         } catch (NettyBsonReaderException ex) {
           throw new AssertionError(ex);
         }
-        writeCString(arg, Integer.toString(i));
+        ArrayIndexKeys.writeKey(arg, i);
 
         child.accept(this, arg);
         i++;
@@ -137,6 +267,10 @@ public class NettyBsonDocumentWriter {
 
     @Override
     public Void visit(BsonDocument value, ByteBuf arg) {
+      if (value instanceof IterableNettyBsonDocument) {
+        writeRaw(arg, ((IterableNettyBsonDocument) value).getContent());
+        return null;
+      }
       final int docStart = arg.writerIndex();
       arg.writeInt(0); // reserve space for doc size
 
@@ -232,7 +366,11 @@ public class NettyBsonDocumentWriter {
 
     @Override
     public Void visit(BsonObjectId value, ByteBuf arg) {
-      arg.writeBytes(value.toByteArray());
+      if (value instanceof NettyBsonObjectId) {
+        ((NettyBsonObjectId) value).writeTo(arg);
+      } else {
+        arg.writeBytes(value.toByteArray());
+      }
 
       return null;
     }
@@ -274,9 +412,11 @@ public class NettyBsonDocumentWriter {
     // TODO Review this method
     @Override
     public Void visit(BsonDecimal128 value, ByteBuf arg) {
-      byte[] bytes = value.getBytes();
-      // Assert.assertTrue("Expected 16 bytes but lenght is ", bytes.length == 15);
-      arg.writeBytes(bytes);
+      if (value instanceof NettyBsonDecimal128) {
+        ((NettyBsonDecimal128) value).writeTo(arg);
+      } else {
+        arg.writeLong(value.getLow()).writeLong(value.getHigh());
+      }
       return null;
     }
 
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import com.google.common.primitives.UnsignedBytes;
+import com.torodb.mongowp.bson.BsonType;
+import com.torodb.mongowp.bson.netty.annotations.Loose;
+import com.torodb.mongowp.bson.netty.annotations.ModifiesIndexes;
+import com.torodb.mongowp.bson.netty.annotations.Tight;
+import com.torodb.mongowp.bson.utils.BsonEventHandler;
+import io.netty.buffer.ByteBuf;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+
+/**
+ * Reads serialized documents and pushes their content to a {@link BsonEventHandler} without
+ * creating any {@link com.torodb.mongowp.bson.BsonValue}.
+ *
+ * Raw values are {@link Tight tight} slices of the source, so they share its memory and are only
+ * valid while the source is.
+ */
+@ThreadSafe
+public class NettyBsonEventReader {
+
+  private static final byte CSTRING_TERMINATION = 0x00;
+
+  @Inject
+  public NettyBsonEventReader() {
+  }
+
+  /**
+   * Reads the document that starts on the reader index of the source, which is advanced to the
+   * end of the document.
+   */
+  public void read(@Loose @ModifiesIndexes ByteBuf source, BsonEventHandler<ByteBuf> handler)
+      throws NettyBsonReaderException {
+    readDocument(source, handler);
+  }
+
+  private void readDocument(ByteBuf byteBuf, BsonEventHandler<ByteBuf> handler)
+      throws NettyBsonReaderException {
+    readDocumentContent(readContent(byteBuf), handler);
+  }
+
+  /**
+   * Reads the content of a document (the bytes after its length field, including the final 0x00)
+   * from the reader index of the given buffer, which is advanced to its end.
+   */
+  void readDocumentContent(@Loose @ModifiesIndexes ByteBuf content,
+      BsonEventHandler<ByteBuf> handler) throws NettyBsonReaderException {
+    handler.startDocument();
+    while (content.readableBytes() > 1) {
+      BsonType bsonType = ParsingTools.getBsonType(content.readByte());
+      handler.onName(readCString(content));
+      readValue(bsonType, content, handler);
+    }
+    checkEnd(content);
+    handler.endDocument();
+  }
+
+  private void readArray(ByteBuf byteBuf, BsonEventHandler<ByteBuf> handler)
+      throws NettyBsonReaderException {
+    readArrayContent(readContent(byteBuf), handler);
+  }
+
+  /**
+   * Like {@link #readDocumentContent(ByteBuf, BsonEventHandler)}, but the content is read as the
+   * content of an array.
+   */
+  void readArrayContent(@Loose @ModifiesIndexes ByteBuf content,
+      BsonEventHandler<ByteBuf> handler) throws NettyBsonReaderException {
+    handler.startArray();
+    int index = 0;
+    while (content.readableBytes() > 1) {
+      BsonType bsonType = ParsingTools.getBsonType(content.readByte());
+      skipCString(content);
+      handler.onIndex(index++);
+      readValue(bsonType, content, handler);
+    }
+    checkEnd(content);
+    handler.endArray();
+  }
+
+  private void readValue(BsonType bsonType, ByteBuf byteBuf, BsonEventHandler<ByteBuf> handler)
+      throws NettyBsonReaderException {
+    switch (bsonType) {
+      case DOUBLE:
+        handler.onDouble(byteBuf.readDouble());
+        break;
+      case STRING:
+        handler.onString(readString(byteBuf));
+        break;
+      case DOCUMENT:
+        readDocument(byteBuf, handler);
+        break;
+      case ARRAY:
+        readArray(byteBuf, handler);
+        break;
+      case BINARY: {
+        int length = byteBuf.readInt();
+        byte subtype = byteBuf.readByte();
+        handler.onBinary(ParsingTools.getBinarySubtype(subtype), subtype,
+            byteBuf.readSlice(length));
+        break;
+      }
+      case UNDEFINED:
+        handler.onUndefined();
+        break;
+      case OBJECT_ID:
+        handler.onObjectId(byteBuf.readSlice(12));
+        break;
+      case BOOLEAN:
+        handler.onBoolean(readBoolean(byteBuf));
+        break;
+      case DATETIME:
+        handler.onDateTime(byteBuf.readLong());
+        break;
+      case NULL:
+        handler.onNull();
+        break;
+      case REGEX:
+        handler.onRegex(readCString(byteBuf), readCString(byteBuf));
+        break;
+      case DB_POINTER:
+        handler.onDbPointer(readString(byteBuf), byteBuf.readSlice(12));
+        break;
+      case JAVA_SCRIPT:
+        handler.onJavaScript(readString(byteBuf));
+        break;
+      case DEPRECATED:
+        handler.onDeprecated(readString(byteBuf));
+        break;
+      case JAVA_SCRIPT_WITH_SCOPE:
+        byteBuf.readInt(); //the total length is not needed
+        handler.startJavaScriptWithScope(readString(byteBuf));
+        readDocument(byteBuf, handler);
+        handler.endJavaScriptWithScope();
+        break;
+      case INT32:
+        handler.onInt32(byteBuf.readInt());
+        break;
+      case TIMESTAMP: {
+        int ordinal = byteBuf.readInt();
+        int seconds = byteBuf.readInt();
+        handler.onTimestamp(seconds, ordinal);
+        break;
+      }
+      case INT64:
+        handler.onInt64(byteBuf.readLong());
+        break;
+      case DECIMAL128: {
+        long low = byteBuf.readLong();
+        long high = byteBuf.readLong();
+        handler.onDecimal128(low, high);
+        break;
+      }
+      case MIN:
+        handler.onMin();
+        break;
+      case MAX:
+        handler.onMax();
+        break;
+      default:
+        throw new NettyBsonReaderException("Unexpected bson type " + bsonType);
+    }
+  }
+
+  /**
+   * Reads a length prefixed document or array and returns its content, including the final 0x00.
+   */
+  private ByteBuf readContent(ByteBuf byteBuf) throws NettyBsonReaderException {
+    int length = byteBuf.readInt();
+    if (length < 5 || length - 4 > byteBuf.readableBytes()) {
+      throw new NettyBsonReaderException("Invalid document length " + length);
+    }
+    return byteBuf.readSlice(length - 4);
+  }
+
+  private void checkEnd(ByteBuf content) throws NettyBsonReaderException {
+    if (content.readableBytes() != 1 || content.readByte() != 0x00) {
+      throw new NettyBsonReaderException("Document content overflows its length");
+    }
+  }
+
+  private ByteBuf readString(ByteBuf byteBuf) {
+    int length = byteBuf.readInt();
+    ByteBuf result = byteBuf.readSlice(length - 1);
+    byteBuf.skipBytes(1); //the final 0x00
+    return result;
+  }
+
+  private ByteBuf readCString(ByteBuf byteBuf) throws NettyBsonReaderException {
+    int length = byteBuf.bytesBefore(CSTRING_TERMINATION);
+    if (length < 0) {
+      throw new NettyBsonReaderException("A cstring was expected but no 0x00 byte was found");
+    }
+    ByteBuf result = byteBuf.readSlice(length);
+    byteBuf.skipBytes(1);
+    return result;
+  }
+
+  private void skipCString(ByteBuf byteBuf) throws NettyBsonReaderException {
+    int length = byteBuf.bytesBefore(CSTRING_TERMINATION);
+    if (length < 0) {
+      throw new NettyBsonReaderException("A cstring was expected but no 0x00 byte was found");
+    }
+    byteBuf.skipBytes(length + 1);
+  }
+
+  private boolean readBoolean(ByteBuf byteBuf) throws NettyBsonReaderException {
+    byte readByte = byteBuf.readByte();
+    if (readByte == 0x00) {
+      return false;
+    }
+    if (readByte == 0x01) {
+      return true;
+    }
+    throw new NettyBsonReaderException("Unexpected boolean byte. 0x00 or "
+        + "0x01 was expected, but 0x" + UnsignedBytes.toString(readByte, 16) + " was read");
+  }
+}
@@ -62,14 +62,21 @@ import com.torodb.mongowp.bson.BsonType;
 import com.torodb.mongowp.bson.BsonUndefined;
 import com.torodb.mongowp.bson.BsonValue;
 import com.torodb.mongowp.bson.abst.AbstractBsonDocument.SimpleEntry;
+import com.torodb.mongowp.bson.impl.ListBsonArray;
 import com.torodb.mongowp.bson.netty.annotations.ConservesIndexes;
 import com.torodb.mongowp.bson.netty.annotations.Loose;
 import com.torodb.mongowp.bson.netty.annotations.ModifiesIndexes;
 import com.torodb.mongowp.bson.netty.annotations.Tight;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
 import io.netty.buffer.ByteBuf;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 /**
@@ -94,7 +101,22 @@ public abstract class NettyBsonLowLevelReader {
       throws NettyBsonReaderException {
     BsonType bsonType = ParsingTools.getBsonType(byteBuf.readByte());
     stringReader.skipCString(byteBuf);
-    switch (bsonType) { 
+    return readValue(bsonType, byteBuf);
+  }
+
+  public Entry<?> readDocumentEntry(@Loose @ModifiesIndexes ByteBuf byteBuf)
+      throws NettyBsonReaderException {
+    BsonType bsonType = ParsingTools.getBsonType(byteBuf.readByte());
+    String key = stringReader.readCString(byteBuf, true);
+    return new SimpleEntry<>(key, readValue(bsonType, byteBuf));
+  }
+
+  /**
+   * Reads a value of the given type, whose first byte is the one pointed by the reader index.
+   */
+  BsonValue<?> readValue(BsonType bsonType, @Loose @ModifiesIndexes ByteBuf byteBuf)
+      throws NettyBsonReaderException {
+    switch (bsonType) {
       case ARRAY:
         return readArray(byteBuf);
       case BINARY:
@@ -142,58 +164,144 @@ public abstract class NettyBsonLowLevelReader {
     }
   }
 
-  public Entry<?> readDocumentEntry(@Loose @ModifiesIndexes ByteBuf byteBuf)
+  /**
+   * Skips a value of the given type without decoding it, whose first byte is the one pointed by
+   * the reader index.
+   */
+  void skipValue(BsonType bsonType, @Loose @ModifiesIndexes ByteBuf byteBuf)
       throws NettyBsonReaderException {
-    BsonType bsonType = ParsingTools.getBsonType(byteBuf.readByte());
-    String key = stringReader.readCString(byteBuf, true);
     switch (bsonType) {
+      case DOUBLE:
+      case DATETIME:
+      case INT64:
+      case TIMESTAMP:
+        byteBuf.skipBytes(8);
+        break;
+      case STRING:
+      case JAVA_SCRIPT:
+      case DEPRECATED:
+        byteBuf.skipBytes(byteBuf.readInt());
+        break;
+      case DOCUMENT:
       case ARRAY:
-        return new SimpleEntry<>(key, readArray(byteBuf));
+      case JAVA_SCRIPT_WITH_SCOPE:
+        //the length includes the length field itself
+        byteBuf.skipBytes(byteBuf.readInt() - 4);
+        break;
       case BINARY:
-        return new SimpleEntry<>(key, readBinary(byteBuf));
-      case DATETIME:
-        return new SimpleEntry<>(key, readDateTime(byteBuf));
+        //the length does not include the subtype
+        byteBuf.skipBytes(byteBuf.readInt() + 1);
+        break;
       case DB_POINTER:
-        return new SimpleEntry<>(key, readDbPointer(byteBuf));
+        byteBuf.skipBytes(byteBuf.readInt() + 12);
+        break;
+      case OBJECT_ID:
+        byteBuf.skipBytes(12);
+        break;
       case DECIMAL128:
-        return new SimpleEntry<>(key, readDecimal128(byteBuf));
-      case DEPRECATED:
-        return new SimpleEntry<>(key, readDeprecated(byteBuf));
-      case DOCUMENT:
-        return new SimpleEntry<>(key, readDocument(byteBuf));
-      case DOUBLE:
-        return new SimpleEntry<>(key, readDouble(byteBuf));
-      case BOOLEAN:
-        return new SimpleEntry<>(key, readBoolean(byteBuf));
+        byteBuf.skipBytes(16);
+        break;
       case INT32:
-        return new SimpleEntry<>(key, readInt32(byteBuf));
-      case INT64:
-        return new SimpleEntry<>(key, readInt64(byteBuf));
-      case JAVA_SCRIPT:
-        return new SimpleEntry<>(key, readJavaScript(byteBuf));
-      case JAVA_SCRIPT_WITH_SCOPE:
-        return new SimpleEntry<>(key, readJavaScriptWithScope(byteBuf));
+        byteBuf.skipBytes(4);
+        break;
+      case BOOLEAN:
+        byteBuf.skipBytes(1);
+        break;
+      case REGEX:
+        stringReader.skipCString(byteBuf);
+        stringReader.skipCString(byteBuf);
+        break;
       case MAX:
-        return new SimpleEntry<>(key, readMax(byteBuf));
       case MIN:
-        return new SimpleEntry<>(key, readMin(byteBuf));
       case NULL:
-        return new SimpleEntry<>(key, readNull(byteBuf));
-      case OBJECT_ID:
-        return new SimpleEntry<>(key, readObjectId(byteBuf));
-      case REGEX:
-        return new SimpleEntry<>(key, readRegex(byteBuf));
-      case STRING:
-        return new SimpleEntry<>(key, readString(byteBuf));
-      case TIMESTAMP:
-        return new SimpleEntry<>(key, readTimestamp(byteBuf));
       case UNDEFINED:
-        return new SimpleEntry<>(key, readUndefined(byteBuf));
+        break;
       default:
         throw new NettyBsonReaderException("Unexpected bson type " + bsonType);
     }
   }
 
+  /**
+   * Reads a document, but only materializes the values selected by the given projection.
+   *
+   * Other values are skipped using their length, without being decoded. The returned document
+   * and the arrays that contain projected documents are stored on the heap, while the selected
+   * values are read as this reader usually does.
+   */
+  BsonDocument readProjectedDocument(@Loose @ModifiesIndexes ByteBuf byteBuf,
+      FieldProjection projection) throws NettyBsonReaderException {
+    if (projection.includesAll()) {
+      return readDocument(byteBuf);
+    }
+    int length = byteBuf.readInt();
+    ByteBuf significantSlice = byteBuf.readSlice(length - 4); //the final 0x00 is included
+
+    LinkedHashMap<String, BsonValue<?>> values = new LinkedHashMap<>();
+    while (hasNext(significantSlice)) {
+      BsonType bsonType = ParsingTools.getBsonType(significantSlice.readByte());
+      int nameOffset = significantSlice.readerIndex();
+      int nameLength = significantSlice.bytesBefore((byte) 0x00);
+      if (nameLength < 0) {
+        throw new NettyBsonReaderException("Unterminated field name");
+      }
+      significantSlice.skipBytes(nameLength + 1);
+
+      int childPos = projection.findChild(significantSlice, nameOffset, nameLength);
+      if (childPos < 0) {
+        skipValue(bsonType, significantSlice);
+      } else {
+        BsonValue<?> value = readProjectedValue(bsonType, significantSlice,
+            projection.getChild(childPos));
+        if (value != null) {
+          values.put(projection.getChildName(childPos), value);
+        }
+      }
+    }
+    return DefaultBsonValues.newDocument(values);
+  }
+
+  /**
+   * Reads the selected parts of a value or returns null if no part of it is selected.
+   */
+  @Nullable
+  private BsonValue<?> readProjectedValue(BsonType bsonType,
+      @Loose @ModifiesIndexes ByteBuf byteBuf, FieldProjection projection)
+      throws NettyBsonReaderException {
+    if (projection.includesAll()) {
+      return readValue(bsonType, byteBuf);
+    }
+    switch (bsonType) {
+      case DOCUMENT:
+        return readProjectedDocument(byteBuf, projection);
+      case ARRAY:
+        return readProjectedArray(byteBuf, projection);
+      default:
+        skipValue(bsonType, byteBuf);
+        return null;
+    }
+  }
+
+  /**
+   * Applies the projection to each element of an array, so elements that are neither documents
+   * nor arrays are discarded.
+   */
+  private BsonArray readProjectedArray(@Loose @ModifiesIndexes ByteBuf byteBuf,
+      FieldProjection projection) throws NettyBsonReaderException {
+    int length = byteBuf.readInt();
+    ByteBuf significantSlice = byteBuf.readSlice(length - 4); //the final 0x00 is included
+
+    List<BsonValue<?>> values = new ArrayList<>();
+    while (hasNext(significantSlice)) {
+      BsonType bsonType = ParsingTools.getBsonType(significantSlice.readByte());
+      stringReader.skipCString(significantSlice);
+      BsonValue<?> value = readProjectedValue(bsonType, significantSlice, projection);
+      if (value != null) {
+        values.add(value);
+      }
+    }
+    return new ListBsonArray(values);
+  }
+
   public boolean hasNext(@Tight @ConservesIndexes ByteBuf byteBuf) {
     return byteBuf.getByte(byteBuf.readerIndex()) != 0x00;
   }
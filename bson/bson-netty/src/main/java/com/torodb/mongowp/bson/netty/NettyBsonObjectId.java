@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import com.google.common.primitives.UnsignedInteger;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.abst.AbstractBsonObjectId;
+import com.torodb.mongowp.bson.impl.ByteArrayBsonObjectId;
+import com.torodb.mongowp.bson.netty.annotations.ConservesIndexes;
+import com.torodb.mongowp.bson.netty.annotations.Loose;
+import com.torodb.mongowp.bson.netty.annotations.ModifiesIndexes;
+import com.torodb.mongowp.bson.netty.annotations.Tight;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.netty.buffer.ByteBuf;
+
+import java.io.ObjectStreamException;
+import java.nio.ByteOrder;
+
+/**
+ * An object id whose 12 bytes are read from a buffer when they are needed.
+ *
+ * Comparisons and hashes between instances of this class read the bytes as a long and an int
+ * instead of copying them.
+ */
+@SuppressFBWarnings(value = {"SE_BAD_FIELD", "SE_NO_SERIALVERSIONID"},
+    justification = "writeReplace is used")
+public class NettyBsonObjectId extends AbstractBsonObjectId {
+
+  private static final long serialVersionUID = -3434476380524581652L;
+
+  /**
+   * The fields of an object id are big endian.
+   */
+  @Tight
+  private final ByteBuf byteBuf;
+  private final int offset;
+
+  /**
+   * @param byteBuf a buffer whose readable bytes are the 12 bytes of the object id
+   */
+  public NettyBsonObjectId(@Tight @ConservesIndexes ByteBuf byteBuf) {
+    assert byteBuf.readableBytes() == 12;
+    this.byteBuf = byteBuf.order(ByteOrder.BIG_ENDIAN);
+    this.offset = byteBuf.readerIndex();
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    byte[] result = new byte[12];
+    byteBuf.getBytes(offset, result);
+    return result;
+  }
+
+  @Override
+  public UnsignedInteger getUnsignedTimestamp() {
+    return UnsignedInteger.fromIntBits(byteBuf.getInt(offset));
+  }
+
+  @Override
+  public int getMachineIdentifier() {
+    return byteBuf.getUnsignedMedium(offset + 4);
+  }
+
+  @Override
+  public int getProcessId() {
+    return byteBuf.getUnsignedShort(offset + 7);
+  }
+
+  @Override
+  public int getCounter() {
+    return byteBuf.getUnsignedMedium(offset + 9);
+  }
+
+  /**
+   * Writes the 12 bytes of this object id on the given buffer.
+   */
+  void writeTo(@Loose @ModifiesIndexes ByteBuf target) {
+    target.writeBytes(byteBuf, offset, 12);
+  }
+
+  @Override
+  public int compareTo(BsonValue<?> obj) {
+    if (!(obj instanceof NettyBsonObjectId)) {
+      return super.compareTo(obj);
+    }
+    NettyBsonObjectId other = (NettyBsonObjectId) obj;
+    int diff = Long.compareUnsigned(byteBuf.getLong(offset), other.byteBuf.getLong(other.offset));
+    if (diff != 0) {
+      return diff;
+    }
+    return Integer.compareUnsigned(byteBuf.getInt(offset + 8),
+        other.byteBuf.getInt(other.offset + 8));
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof NettyBsonObjectId)) {
+      return super.equals(obj);
+    }
+    NettyBsonObjectId other = (NettyBsonObjectId) obj;
+    return byteBuf.getLong(offset) == other.byteBuf.getLong(other.offset)
+        && byteBuf.getInt(offset + 8) == other.byteBuf.getInt(other.offset + 8);
+  }
+
+  @Override
+  public int hashCode() {
+    return byteBuf.getUnsignedShort(offset + 2) << 16 | byteBuf.getUnsignedShort(offset + 10);
+  }
+
+  private Object writeReplace() throws ObjectStreamException {
+    return new ByteArrayBsonObjectId(toByteArray());
+  }
+}
@@ -15,7 +15,6 @@
  */
 package com.torodb.mongowp.bson.netty;
 
-import com.google.common.base.Charsets;
 import com.torodb.mongowp.bson.abst.AbstractBsonString;
 import com.torodb.mongowp.bson.impl.StringBsonString;
 import com.torodb.mongowp.bson.netty.annotations.ModifiesIndexes;
@@ -47,10 +46,7 @@ public class NettyBsonString extends AbstractBsonString {
   }
 
   private String getString(@Tight ByteBuf byteBuf) {
-    int lenght = getStringLenght(byteBuf);
-    byte[] bytes = new byte[lenght];
-    byteBuf.getBytes(0, bytes);
-    return new String(bytes, Charsets.UTF_8);
+    return Utf8Codec.decode(byteBuf, byteBuf.readerIndex(), getStringLenght(byteBuf));
   }
 
   private int getStringLenght(@Tight ByteBuf byteBuf) {
@@ -16,12 +16,14 @@
 package com.torodb.mongowp.bson.netty;
 
 import com.torodb.mongowp.bson.BsonBinary;
+import com.torodb.mongowp.bson.BsonDecimal128;
 import com.torodb.mongowp.bson.BsonDocument;
 import com.torodb.mongowp.bson.BsonDocument.Entry;
+import com.torodb.mongowp.bson.BsonObjectId;
 import com.torodb.mongowp.bson.BsonString;
-import com.torodb.mongowp.bson.impl.ListBasedBsonDocument;
 import com.torodb.mongowp.bson.netty.annotations.Loose;
 import com.torodb.mongowp.bson.netty.annotations.ModifiesIndexes;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
 import io.netty.buffer.ByteBuf;
 
 import java.util.ArrayList;
@@ -59,7 +61,7 @@ public class OffHeapValuesNettyBsonLowLevelReader extends DefaultNettyBsonLowLev
       Entry<?> entry = readDocumentEntry(significantSlice);
       list.add(entry);
     }
-    return new ListBasedBsonDocument(list);
+    return DefaultBsonValues.newDocument(list);
   }
 
   @Override
@@ -71,4 +73,14 @@ public class OffHeapValuesNettyBsonLowLevelReader extends DefaultNettyBsonLowLev
 
     return new NettyBsonBsonBinary(subtype, ParsingTools.getBinarySubtype(subtype), content);
   }
+
+  @Override
+  BsonObjectId readObjectId(@Loose @ModifiesIndexes ByteBuf byteBuf) {
+    return new NettyBsonObjectId(byteBuf.readSlice(12));
+  }
+
+  @Override
+  BsonDecimal128 readDecimal128(@Loose @ModifiesIndexes ByteBuf byteBuf) {
+    return new NettyBsonDecimal128(byteBuf.readSlice(16));
+  }
 }
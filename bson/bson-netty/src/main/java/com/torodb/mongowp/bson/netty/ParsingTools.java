@@ -56,6 +56,9 @@ class ParsingTools {
   private static final Logger LOGGER = LogManager.getLogger(ParsingTools.class);
 
   private static final byte FIRST_USER_DEFINED = UnsignedBytes.parseUnsignedByte("80", 16);
+  static final byte DOUBLE_TYPE_BYTE = 0x01;
+  static final byte INT32_TYPE_BYTE = 0x10;
+  static final byte INT64_TYPE_BYTE = 0x12;
 
   /**
    * Translate a byte to the {@link BsonType} it represents, as specified on the
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import com.torodb.mongowp.bson.netty.annotations.ConservesIndexes;
+import com.torodb.mongowp.bson.netty.annotations.Loose;
+import com.torodb.mongowp.bson.netty.annotations.ModifiesIndexes;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes and decodes the UTF-8 strings stored on BSON documents.
+ *
+ * Almost all field names and most string values are ASCII, so both directions have a fast path
+ * for them. The decoder checks 8 bytes at a time whether the bytes are ASCII and, if all
+ * characters are Latin-1, builds the string from a Latin-1 byte array, which is stored as is on
+ * JVMs with compact strings. The encoder writes straight into the destination buffer.
+ */
+public final class Utf8Codec {
+
+  private static final long NON_ASCII_MASK = 0x8080808080808080L;
+  private static final int MAX_SCRATCH_SIZE = 1024;
+  private static final FastThreadLocal<byte[]> SCRATCH = new FastThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() throws Exception {
+      return new byte[MAX_SCRATCH_SIZE];
+    }
+  };
+
+  private Utf8Codec() {
+  }
+
+  /**
+   * Decodes the UTF-8 string stored on the given region of a buffer.
+   */
+  @SuppressWarnings("deprecation")
+  public static String decode(@ConservesIndexes ByteBuf byteBuf, int index, int length) {
+    if (length == 0) {
+      return "";
+    }
+    int firstNonAscii = findFirstNonAscii(byteBuf, index, length);
+    if (firstNonAscii == length && byteBuf.hasArray()) {
+      return new String(byteBuf.array(), 0, byteBuf.arrayOffset() + index, length);
+    }
+
+    byte[] bytes = length <= MAX_SCRATCH_SIZE ? SCRATCH.get() : new byte[length];
+    byteBuf.getBytes(index, bytes, 0, length);
+    if (firstNonAscii == length) {
+      return new String(bytes, 0, 0, length);
+    }
+
+    int latin1Length = toLatin1(bytes, firstNonAscii, length);
+    if (latin1Length < 0) {
+      return byteBuf.toString(index, length, StandardCharsets.UTF_8);
+    }
+    return new String(bytes, 0, 0, latin1Length);
+  }
+
+  /**
+   * Returns the position of the first non ASCII byte or the length if all bytes are ASCII.
+   */
+  private static int findFirstNonAscii(ByteBuf byteBuf, int index, int length) {
+    int i = 0;
+    for (; i + Long.BYTES <= length; i += Long.BYTES) {
+      if ((byteBuf.getLong(index + i) & NON_ASCII_MASK) != 0) {
+        break;
+      }
+    }
+    for (; i < length; i++) {
+      if (byteBuf.getByte(index + i) < 0) {
+        return i;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Transforms, in place, the UTF-8 bytes into Latin-1 bytes.
+   *
+   * @return the number of Latin-1 bytes or -1 if there are non Latin-1 characters, in which case
+   *         the array has been partially overwritten
+   */
+  private static int toLatin1(byte[] bytes, int from, int length) {
+    int written = from;
+    for (int i = from; i < length; i++) {
+      byte b = bytes[i];
+      if (b >= 0) {
+        bytes[written++] = b;
+      } else if ((b & 0xFE) == 0xC2 && i + 1 < length && (bytes[i + 1] & 0xC0) == 0x80) {
+        //two byte sequences whose lead byte is 0xC2 or 0xC3 encode U+0080 to U+00FF
+        bytes[written++] = (byte) (((b & 0x03) << 6) | (bytes[i + 1] & 0x3F));
+        i++;
+      } else {
+        return -1;
+      }
+    }
+    return written;
+  }
+
+  /**
+   * Writes the UTF-8 bytes of the given string, without any terminator.
+   *
+   * Unpaired surrogates are written as {@code '?'}, like {@link String#getBytes(
+   * java.nio.charset.Charset)} does.
+   *
+   * @return the number of written bytes
+   */
+  public static int encode(@Loose @ModifiesIndexes ByteBuf byteBuf, String str) {
+    int length = str.length();
+    byteBuf.ensureWritable(length);
+    int start = byteBuf.writerIndex();
+    int writerIndex = start;
+    int i = 0;
+    for (; i < length; i++) {
+      char c = str.charAt(i);
+      if (c >= 0x80) {
+        break;
+      }
+      byteBuf.setByte(writerIndex++, c);
+    }
+    if (i < length) {
+      byteBuf.writerIndex(writerIndex);
+      byteBuf.ensureWritable((length - i) * 3);
+      writerIndex = encodeNonAscii(byteBuf, str, i, writerIndex);
+    }
+    byteBuf.writerIndex(writerIndex);
+    return writerIndex - start;
+  }
+
+  private static int encodeNonAscii(ByteBuf byteBuf, String str, int from, int writerIndex) {
+    int length = str.length();
+    for (int i = from; i < length; i++) {
+      char c = str.charAt(i);
+      if (c < 0x80) {
+        byteBuf.setByte(writerIndex++, c);
+      } else if (c < 0x800) {
+        byteBuf.setByte(writerIndex++, 0xC0 | (c >> 6));
+        byteBuf.setByte(writerIndex++, 0x80 | (c & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < length
+            && Character.isLowSurrogate(str.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, str.charAt(++i));
+          byteBuf.setByte(writerIndex++, 0xF0 | (codePoint >> 18));
+          byteBuf.setByte(writerIndex++, 0x80 | ((codePoint >> 12) & 0x3F));
+          byteBuf.setByte(writerIndex++, 0x80 | ((codePoint >> 6) & 0x3F));
+          byteBuf.setByte(writerIndex++, 0x80 | (codePoint & 0x3F));
+        } else {
+          byteBuf.setByte(writerIndex++, '?');
+        }
+      } else {
+        byteBuf.setByte(writerIndex++, 0xE0 | (c >> 12));
+        byteBuf.setByte(writerIndex++, 0x80 | ((c >> 6) & 0x3F));
+        byteBuf.setByte(writerIndex++, 0x80 | (c & 0x3F));
+      }
+    }
+    return writerIndex;
+  }
+
+  /**
+   * Writes a BSON string: its length, its UTF-8 bytes and the final 0x00. The length is back
+   * patched once the string has been written.
+   */
+  public static void writeString(@Loose @ModifiesIndexes ByteBuf byteBuf, String str) {
+    int lengthIndex = byteBuf.writerIndex();
+    byteBuf.writeInt(0);
+    int length = encode(byteBuf, str) + 1;
+    byteBuf.writeByte(0x00);
+    byteBuf.setInt(lengthIndex, length);
+  }
+
+  /**
+   * Writes a BSON cstring: its UTF-8 bytes and the final 0x00.
+   */
+  public static void writeCString(@Loose @ModifiesIndexes ByteBuf byteBuf, String str) {
+    encode(byteBuf, str);
+    byteBuf.writeByte(0x00);
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty.pool;
+
+import com.google.common.base.Preconditions;
+import com.torodb.mongowp.bson.netty.annotations.ConservesIndexes;
+import com.torodb.mongowp.bson.netty.annotations.Tight;
+import io.netty.buffer.ByteBuf;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.inject.Inject;
+
+/**
+ * A bounded string pool backed by an open addressing table whose keys are the UTF-8 bytes of the
+ * strings.
+ *
+ * Lookups hash the bytes in place and compare candidates byte by byte against the buffer, so a
+ * hit does not allocate nor decode anything. Readers do not take locks: slots are published and
+ * replaced with CAS operations and each entry is immutable, except for its reference bit.
+ *
+ * Each key can only be stored on a small window of slots after its home slot. When the window is
+ * full, a CLOCK policy restricted to the window chooses the victim: entries that have been read
+ * since the last sweep get a second chance. Eviction is therefore local and bounded, and the pool
+ * never stores more than its capacity.
+ */
+public class OpenAddressingStringPool extends StringPool {
+
+  public static final int DEFAULT_CAPACITY = 4096;
+  private static final int PROBE_WINDOW = 8;
+
+  private final AtomicReferenceArray<PoolEntry> table;
+  private final int mask;
+  private final AtomicInteger clockHand = new AtomicInteger();
+
+  @Inject
+  public OpenAddressingStringPool(StringPoolPolicy heuristic) {
+    this(heuristic, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param heuristic the policy that decides which strings are pooled
+   * @param capacity  the max number of pooled strings, which is rounded up to a power of two
+   */
+  public OpenAddressingStringPool(StringPoolPolicy heuristic, int capacity) {
+    super(heuristic);
+    Preconditions.checkArgument(capacity >= PROBE_WINDOW, "The capacity must be at least "
+        + PROBE_WINDOW);
+    int tableSize = Integer.highestOneBit(capacity - 1) << 1;
+    this.table = new AtomicReferenceArray<>(tableSize);
+    this.mask = tableSize - 1;
+  }
+
+  @Override
+  protected String retrieveFromPool(@Tight @ConservesIndexes ByteBuf stringBuf) {
+    int offset = stringBuf.readerIndex();
+    int length = stringBuf.readableBytes();
+    int hash = hash(stringBuf, offset, length);
+    int home = hash & mask;
+
+    for (int i = 0; i < PROBE_WINDOW; i++) {
+      PoolEntry entry = table.get((home + i) & mask);
+      if (entry != null && entry.hash == hash && entry.matches(stringBuf, offset, length)) {
+        entry.markReferenced();
+        return entry.value;
+      }
+    }
+
+    String value = getString(stringBuf);
+    byte[] bytes = new byte[length];
+    stringBuf.getBytes(offset, bytes);
+    insert(home, new PoolEntry(hash, bytes, value));
+    return value;
+  }
+
+  private void insert(int home, PoolEntry newEntry) {
+    for (int i = 0; i < PROBE_WINDOW; i++) {
+      int slot = (home + i) & mask;
+      if (table.get(slot) == null && table.compareAndSet(slot, null, newEntry)) {
+        return;
+      }
+    }
+    //the window is full, so a victim is chosen with the CLOCK policy
+    int start = clockHand.getAndIncrement();
+    for (int i = 0; i < PROBE_WINDOW; i++) {
+      int slot = (home + ((start + i) & (PROBE_WINDOW - 1))) & mask;
+      PoolEntry current = table.get(slot);
+      if (current == null || !current.clearReferenced()) {
+        if (table.compareAndSet(slot, current, newEntry)) {
+          return;
+        }
+      }
+    }
+    //every entry was referenced, so now they are not and the one pointed by the hand is evicted
+    table.set((home + (start & (PROBE_WINDOW - 1))) & mask, newEntry);
+  }
+
+  /**
+   * @return the number of pooled strings
+   */
+  public int size() {
+    int size = 0;
+    for (int i = 0; i < table.length(); i++) {
+      if (table.get(i) != null) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  private static int hash(ByteBuf byteBuf, int offset, int length) {
+    int hash = 0x811C9DC5;
+    for (int i = offset; i < offset + length; i++) {
+      hash = (hash ^ byteBuf.getByte(i)) * 0x01000193;
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  private static final class PoolEntry {
+
+    private final int hash;
+    private final byte[] bytes;
+    private final String value;
+    /**
+     * The CLOCK reference bit. Races on it only affect which entry is evicted.
+     */
+    private volatile boolean referenced;
+
+    private PoolEntry(int hash, byte[] bytes, String value) {
+      this.hash = hash;
+      this.bytes = bytes;
+      this.value = value;
+    }
+
+    private boolean matches(ByteBuf byteBuf, int offset, int length) {
+      if (bytes.length != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (byteBuf.getByte(offset + i) != bytes[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void markReferenced() {
+      //reading first avoids invalidating the cache line of hot entries on every hit
+      if (!referenced) {
+        referenced = true;
+      }
+    }
+
+    /**
+     * Clears the reference bit and returns its previous value.
+     */
+    private boolean clearReferenced() {
+      if (referenced) {
+        referenced = false;
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -15,7 +15,7 @@
  */
 package com.torodb.mongowp.bson.netty.pool;
 
-import com.google.common.base.Charsets;
+import com.torodb.mongowp.bson.netty.Utf8Codec;
 import com.torodb.mongowp.bson.netty.annotations.ConservesIndexes;
 import com.torodb.mongowp.bson.netty.annotations.Tight;
 import io.netty.buffer.ByteBuf;
@@ -37,7 +37,7 @@ public abstract class StringPool {
   }
 
   protected static String getString(@Tight @ConservesIndexes ByteBuf stringBuf) {
-    return stringBuf.toString(Charsets.UTF_8);
+    return Utf8Codec.decode(stringBuf, stringBuf.readerIndex(), stringBuf.readableBytes());
   }
 
   public String fromPool(boolean likelyCacheable, @Tight @ConservesIndexes ByteBuf stringBuf) {
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ */
+public class ArrayIndexKeysTest {
+
+  @Test
+  public void testKeys() {
+    ByteBuf byteBuf = Unpooled.buffer();
+    for (int i = 0; i < ArrayIndexKeys.CACHED_KEYS * 3; i++) {
+      checkKey(byteBuf, i);
+    }
+    checkKey(byteBuf, 999999);
+    checkKey(byteBuf, 1000000);
+    checkKey(byteBuf, Integer.MAX_VALUE);
+  }
+
+  private void checkKey(ByteBuf byteBuf, int index) {
+    byteBuf.clear();
+    ArrayIndexKeys.writeKey(byteBuf, index);
+
+    String expected = Integer.toString(index) + '\0';
+    assertEquals(expected, byteBuf.toString(StandardCharsets.US_ASCII));
+    assertEquals(expected.length(), ArrayIndexKeys.getKeySize(index));
+  }
+}
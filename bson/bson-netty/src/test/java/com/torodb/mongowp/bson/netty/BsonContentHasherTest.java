@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.torodb.mongowp.bson.BinarySubtype;
+import com.torodb.mongowp.bson.BsonArray;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.impl.ByteArrayBsonBinary;
+import com.torodb.mongowp.bson.impl.IntArrayBsonArray;
+import com.torodb.mongowp.bson.utils.BsonContentHasher;
+import com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Checks the {@link BsonContentHasher content hash} of documents and arrays.
+ */
+public class BsonContentHasherTest {
+
+  private final NettyBsonDocumentReader reader = TestReaders.newDocumentReader();
+  private final NettyBsonDocumentWriter writer = new NettyBsonDocumentWriter();
+
+  private static BsonDocument doc(String key, BsonValue<?> value, String key2,
+      BsonValue<?> value2) {
+    LinkedHashMap<String, BsonValue<?>> map = new LinkedHashMap<>();
+    map.put(key, value);
+    map.put(key2, value2);
+    return DefaultBsonValues.newDocument(map);
+  }
+
+  private BsonDocument toOffHeap(BsonDocument doc) throws NettyBsonReaderException {
+    ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    writer.writeInto(byteBuf, doc);
+    return reader.readDocument(AllocationType.OFFHEAP, byteBuf);
+  }
+
+  @Test
+  public void sameSizeTest() throws NettyBsonReaderException {
+    BsonDocument doc1 = doc("a", DefaultBsonValues.newInt(1), "b", DefaultBsonValues.newInt(2));
+    BsonDocument doc2 = doc("a", DefaultBsonValues.newInt(2), "b", DefaultBsonValues.newInt(1));
+    BsonDocument doc3 = doc("b", DefaultBsonValues.newInt(1), "a", DefaultBsonValues.newInt(2));
+
+    assertNotEquals(BsonContentHasher.getHash(doc1), BsonContentHasher.getHash(doc2));
+    assertNotEquals(BsonContentHasher.getHash(doc1), BsonContentHasher.getHash(doc3));
+    assertNotEquals(BsonContentHasher.getHash(doc2), BsonContentHasher.getHash(doc3));
+    assertNotEquals(toOffHeap(doc1), toOffHeap(doc2));
+    assertNotEquals(toOffHeap(doc1).hashCode(), toOffHeap(doc2).hashCode());
+  }
+
+  @Test
+  public void negativeZeroTest() throws NettyBsonReaderException {
+    BsonDocument positive = doc("a", DefaultBsonValues.newDouble(0.0),
+        "b", DefaultBsonValues.EMPTY_DOC);
+    BsonDocument negative = doc("a", DefaultBsonValues.newDouble(-0.0),
+        "b", DefaultBsonValues.EMPTY_DOC);
+
+    BsonDocument offHeapPositive = toOffHeap(positive);
+    BsonDocument offHeapNegative = toOffHeap(negative);
+    assertEquals(positive, negative);
+    assertEquals(offHeapPositive, offHeapNegative);
+    assertEquals(BsonContentHasher.getHash(positive), BsonContentHasher.getHash(negative));
+    assertEquals(BsonContentHasher.getHash(positive),
+        BsonContentHasher.getHash(offHeapNegative));
+    assertEquals(offHeapPositive.hashCode(), offHeapNegative.hashCode());
+  }
+
+  @Test
+  public void arrayTest() throws NettyBsonReaderException {
+    BsonArray ints = new IntArrayBsonArray(new int[] {1, 2, 3});
+    BsonArray list = DefaultBsonValues.newArray(Arrays.asList(DefaultBsonValues.newInt(1),
+        DefaultBsonValues.newInt(2), DefaultBsonValues.newInt(3)));
+    BsonArray offHeap = toOffHeap(doc("a", list, "b", DefaultBsonValues.NULL))
+        .get("a").asArray();
+
+    assertEquals(BsonContentHasher.getHash(list), BsonContentHasher.getHash(ints));
+    assertEquals(BsonContentHasher.getHash(list), BsonContentHasher.getHash(offHeap));
+    assertEquals(list.hashCode(), offHeap.hashCode());
+    assertEquals(ints, offHeap);
+  }
+
+  @Test
+  public void nanTest() throws NettyBsonReaderException {
+    BsonDocument heap = doc("a", DefaultBsonValues.newDouble(Double.NaN),
+        "b", DefaultBsonValues.newInt(1));
+
+    //serialized documents with the same bytes are equal even if NaN != NaN
+    assertEquals(toOffHeap(heap), toOffHeap(heap));
+    assertNotEquals(toOffHeap(heap), heap);
+    assertEquals(toOffHeap(heap).hashCode(), heap.hashCode());
+  }
+
+  @Test
+  public void userDefinedSubtypesTest() throws NettyBsonReaderException {
+    byte[] data = new byte[] {1, 2, 3};
+    BsonDocument sub80 = doc("a", new ByteArrayBsonBinary(BinarySubtype.USER_DEFINED, (byte) 0x80,
+        data), "b", DefaultBsonValues.newInt(1));
+    BsonDocument sub81 = doc("a", new ByteArrayBsonBinary(BinarySubtype.USER_DEFINED, (byte) 0x81,
+        data), "b", DefaultBsonValues.newInt(1));
+
+    assertNotEquals(sub80, sub81);
+    assertNotEquals(toOffHeap(sub80), toOffHeap(sub81));
+    assertNotEquals(toOffHeap(sub80), sub81);
+    assertEquals(toOffHeap(sub80), sub80);
+    assertEquals(toOffHeap(sub80).hashCode(), sub80.hashCode());
+    assertEquals(toOffHeap(sub81).hashCode(), sub81.hashCode());
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newArray;
+import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newDateTime;
+import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newDocument;
+import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newDouble;
+import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newInt;
+import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newLong;
+import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newString;
+import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newTimestamp;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.primitives.UnsignedBytes;
+import com.torodb.mongowp.bson.BinarySubtype;
+import com.torodb.mongowp.bson.BsonDecimal128;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.impl.ByteArrayBsonBinary;
+import com.torodb.mongowp.bson.impl.ByteArrayBsonObjectId;
+import com.torodb.mongowp.bson.impl.DefaultBsonRegex;
+import com.torodb.mongowp.bson.impl.StringBsonDeprecated;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.bson.types.Decimal128;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Checks that the order of the keys created by {@link BsonKeyEncoder} is the MongoDB order.
+ */
+public class BsonKeyEncoderTest {
+
+  private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+  private final BsonKeyEncoder encoder = new BsonKeyEncoder();
+
+  private static BsonDecimal128 newDecimal(Decimal128 decimal) {
+    return DefaultBsonValues.newDecimal128(decimal.getHigh(), decimal.getLow());
+  }
+
+  private static BsonDecimal128 newDecimal(String decimal) {
+    return newDecimal(new Decimal128(new BigDecimal(decimal)));
+  }
+
+  private static BsonDocument doc(Object... keysAndValues) {
+    LinkedHashMap<String, BsonValue<?>> map = new LinkedHashMap<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      map.put((String) keysAndValues[i], (BsonValue<?>) keysAndValues[i + 1]);
+    }
+    return newDocument(map);
+  }
+
+  private static ByteArrayBsonObjectId newObjectId(int first, int last) {
+    byte[] bytes = new byte[12];
+    bytes[0] = (byte) first;
+    bytes[11] = (byte) last;
+    return new ByteArrayBsonObjectId(bytes);
+  }
+
+  private byte[] descending(BsonValue<?> value) {
+    ByteBuf buf = Unpooled.buffer();
+    encoder.encodeDescending(buf, value);
+    byte[] result = new byte[buf.readableBytes()];
+    buf.readBytes(result);
+    return result;
+  }
+
+  /**
+   * Returns the values on the expected order. Each group contains equivalent values.
+   */
+  private static List<List<BsonValue<?>>> sortedValues() {
+    List<List<BsonValue<?>>> groups = new ArrayList<>();
+    groups.add(Arrays.asList(DefaultBsonValues.MIN));
+    groups.add(Arrays.asList(DefaultBsonValues.UNDEFINED));
+    groups.add(Arrays.asList(DefaultBsonValues.NULL));
+    groups.add(Arrays.asList(newDouble(Double.NaN), newDecimal(Decimal128.NaN)));
+    groups.add(Arrays.asList(newDouble(Double.NEGATIVE_INFINITY),
+        newDecimal(Decimal128.NEGATIVE_INFINITY)));
+    groups.add(Arrays.asList(newLong(Long.MIN_VALUE), newDouble(-0x1p63)));
+    groups.add(Arrays.asList(newDecimal("-1000.5")));
+    groups.add(Arrays.asList(newInt(-1000), newLong(-1000), newDouble(-1000)));
+    groups.add(Arrays.asList(newInt(-999)));
+    groups.add(Arrays.asList(newDouble(-1.5), newDecimal("-1.50")));
+    groups.add(Arrays.asList(newInt(-1), newDecimal("-1")));
+    groups.add(Arrays.asList(newDouble(-0.001)));
+    groups.add(Arrays.asList(newInt(0), newLong(0), newDouble(0), newDouble(-0.0),
+        newDecimal("0.000"), newDecimal(Decimal128.NEGATIVE_ZERO)));
+    groups.add(Arrays.asList(newDecimal("0.01")));
+    groups.add(Arrays.asList(newDouble(0.1)));
+    groups.add(Arrays.asList(newInt(1), newLong(1), newDouble(1), newDecimal("1.00")));
+    groups.add(Arrays.asList(newDecimal("1.01")));
+    groups.add(Arrays.asList(newDouble(2.5), newDecimal("2.5")));
+    groups.add(Arrays.asList(newInt(10), newDecimal("1E+1")));
+    groups.add(Arrays.asList(newInt(99)));
+    groups.add(Arrays.asList(newInt(100), newLong(100), newDouble(100)));
+    groups.add(Arrays.asList(newLong(Long.MAX_VALUE)));
+    groups.add(Arrays.asList(newDouble(0x1p63)));
+    groups.add(Arrays.asList(newDouble(1e300)));
+    groups.add(Arrays.asList(newDecimal("1E+1000")));
+    groups.add(Arrays.asList(newDouble(Double.POSITIVE_INFINITY),
+        newDecimal(Decimal128.POSITIVE_INFINITY)));
+    groups.add(Arrays.asList(newString(""), new StringBsonDeprecated("")));
+    groups.add(Arrays.asList(newString("a")));
+    groups.add(Arrays.asList(newString("a\0")));
+    groups.add(Arrays.asList(newString("a\0b")));
+    groups.add(Arrays.asList(newString("aa"), new StringBsonDeprecated("aa")));
+    groups.add(Arrays.asList(newString("b")));
+    groups.add(Arrays.asList(newString("á")));
+    groups.add(Arrays.asList(newString("€")));
+    groups.add(Arrays.asList(DefaultBsonValues.EMPTY_DOC));
+    groups.add(Arrays.asList(doc("a", DefaultBsonValues.NULL)));
+    groups.add(Arrays.asList(doc("a", newInt(1)), doc("a", newDouble(1))));
+    groups.add(Arrays.asList(doc("a", newInt(1), "b", DefaultBsonValues.MIN)));
+    groups.add(Arrays.asList(doc("a", newString("a"))));
+    groups.add(Arrays.asList(doc("b", newString(""))));
+    groups.add(Arrays.asList(DefaultBsonValues.EMPTY_ARRAY));
+    groups.add(Arrays.asList(newArray(Arrays.asList(newInt(1))),
+        newArray(Arrays.asList(newDecimal("1")))));
+    groups.add(Arrays.asList(newArray(Arrays.asList(newInt(1), newInt(0)))));
+    groups.add(Arrays.asList(newArray(Arrays.asList(newInt(2)))));
+    groups.add(Arrays.asList(
+        new ByteArrayBsonBinary(BinarySubtype.USER_DEFINED, (byte) 0x80, new byte[] {9})));
+    groups.add(Arrays.asList(
+        new ByteArrayBsonBinary(BinarySubtype.GENERIC, (byte) 0, new byte[] {1, 2})));
+    groups.add(Arrays.asList(newObjectId(0, 1)));
+    groups.add(Arrays.asList(newObjectId(0, 0xFF)));
+    groups.add(Arrays.asList(newObjectId(0xFF, 0)));
+    groups.add(Arrays.asList(DefaultBsonValues.FALSE));
+    groups.add(Arrays.asList(DefaultBsonValues.TRUE));
+    groups.add(Arrays.asList(newDateTime(Long.MIN_VALUE)));
+    groups.add(Arrays.asList(newDateTime(-1)));
+    groups.add(Arrays.asList(newDateTime(0)));
+    groups.add(Arrays.asList(newDateTime(Long.MAX_VALUE)));
+    groups.add(Arrays.asList(newTimestamp(1, 5)));
+    groups.add(Arrays.asList(newTimestamp(2, 0)));
+    groups.add(Arrays.asList(newTimestamp(-1, 0)));
+    groups.add(Arrays.asList(new DefaultBsonRegex("", "a")));
+    groups.add(Arrays.asList(new DefaultBsonRegex("i", "a")));
+    groups.add(Arrays.asList(new DefaultBsonRegex("", "b")));
+    groups.add(Arrays.asList(DefaultBsonValues.MAX));
+    return groups;
+  }
+
+  @Test
+  public void orderTest() {
+    List<List<BsonValue<?>>> groups = sortedValues();
+    byte[] previous = null;
+    for (int i = 0; i < groups.size(); i++) {
+      List<BsonValue<?>> group = groups.get(i);
+      byte[] groupKey = encoder.toByteArray(group.get(0));
+      for (int j = 1; j < group.size(); j++) {
+        assertArrayEquals("Values of the group " + i + " must have the same key", groupKey,
+            encoder.toByteArray(group.get(j)));
+      }
+      if (previous != null) {
+        assertEquals("The group " + i + " must be greater than the previous one", -1,
+            Integer.signum(COMPARATOR.compare(previous, groupKey)));
+      }
+      previous = groupKey;
+    }
+  }
+
+  @Test
+  public void descendingTest() {
+    List<List<BsonValue<?>>> groups = sortedValues();
+    for (int i = 1; i < groups.size(); i++) {
+      BsonValue<?> lower = groups.get(i - 1).get(0);
+      BsonValue<?> upper = groups.get(i).get(0);
+      assertEquals("The group " + i + " must be lower than the previous one on descending order",
+          1, Integer.signum(COMPARATOR.compare(descending(lower), descending(upper))));
+    }
+  }
+
+  @Test
+  public void compoundTest() {
+    byte[] first = encoder.toByteArray(newString("a"), newInt(2));
+    byte[] second = encoder.toByteArray(newString("a"), newDouble(10));
+    byte[] third = encoder.toByteArray(newString("aa"), DefaultBsonValues.MIN);
+
+    assertEquals(-1, Integer.signum(COMPARATOR.compare(first, second)));
+    assertEquals(-1, Integer.signum(COMPARATOR.compare(second, third)));
+  }
+}
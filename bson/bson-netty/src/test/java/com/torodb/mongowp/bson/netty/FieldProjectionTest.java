@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import static org.junit.Assert.assertEquals;
+
+import com.torodb.mongowp.bson.org.bson.utils.MongoBsonTranslator;
+import com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.bson.BsonDocument;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+/**
+ *
+ */
+public class FieldProjectionTest {
+
+  private final NettyBsonDocumentReader reader = TestReaders.newDocumentReader();
+
+  private static final BsonDocument SOURCE = BsonDocument.parse("{"
+      + "_id: 1, "
+      + "name: 'a name', "
+      + "bin: {$binary: 'AQID', $type: '00'}, "
+      + "regex: {$regex: 'ab*', $options: 'i'}, "
+      + "nested: {a: 1, b: {c: 2, d: 3}, e: 'text'}, "
+      + "array: [1, {a: 1, b: 2}, [{a: 3}, 'x'], {b: 4}], "
+      + "scalar: 5.5, "
+      + "last: true"
+      + "}");
+
+  private void test(FieldProjection projection, String expected)
+      throws NettyBsonReaderException, IOException {
+    for (AllocationType allocationType : AllocationType.values()) {
+      ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+      MongoBsonUtils.write(SOURCE, byteBuf);
+
+      com.torodb.mongowp.bson.BsonDocument projected =
+          reader.readDocument(allocationType, byteBuf, projection);
+
+      assertEquals(allocationType.toString(), BsonDocument.parse(expected),
+          MongoBsonTranslator.translate(projected));
+      assertEquals(0, byteBuf.readableBytes());
+    }
+  }
+
+  @Test
+  public void topLevelFields() throws NettyBsonReaderException, IOException {
+    test(FieldProjection.of("name", "last", "notAField"), "{name: 'a name', last: true}");
+  }
+
+  @Test
+  public void nestedFields() throws NettyBsonReaderException, IOException {
+    test(FieldProjection.of("nested.b.d", "nested.e", "scalar.a"),
+        "{nested: {b: {d: 3}, e: 'text'}}");
+  }
+
+  @Test
+  public void arrayFields() throws NettyBsonReaderException, IOException {
+    test(FieldProjection.of("array.a"), "{array: [{a: 1}, [{a: 3}], {}]}");
+  }
+
+  @Test
+  public void prefixIncludesAll() throws NettyBsonReaderException, IOException {
+    test(FieldProjection.of("nested.b.c", "nested.b"), "{nested: {b: {c: 2, d: 3}}}");
+    test(FieldProjection.of("nested", "nested.b.c"),
+        "{nested: {a: 1, b: {c: 2, d: 3}, e: 'text'}}");
+  }
+
+  @Test
+  public void fromProjection() throws NettyBsonReaderException, IOException {
+    test(FieldProjection.fromProjection(MongoBsonTranslator.translate(
+        BsonDocument.parse("{regex: 1, 'nested.a': true}"))),
+        "{_id: 1, regex: {$regex: 'ab*', $options: 'i'}, nested: {a: 1}}");
+    test(FieldProjection.fromProjection(MongoBsonTranslator.translate(
+        BsonDocument.parse("{_id: false, scalar: 1}"))),
+        "{scalar: 5.5}");
+  }
+
+  @Test
+  public void fromExclusionProjection() throws NettyBsonReaderException, IOException {
+    String all = SOURCE.toJson();
+    test(FieldProjection.fromProjection(MongoBsonTranslator.translate(
+        BsonDocument.parse("{bin: 0}"))), all);
+    test(FieldProjection.fromProjection(MongoBsonTranslator.translate(
+        BsonDocument.parse("{_id: false, 'nested.a': 0}"))), all);
+    test(FieldProjection.fromProjection(MongoBsonTranslator.translate(
+        BsonDocument.parse("{}"))), all);
+  }
+}
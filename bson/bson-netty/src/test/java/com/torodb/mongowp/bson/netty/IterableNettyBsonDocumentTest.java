@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.torodb.mongowp.bson.utils.BsonContentHasher;
+import com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Checks that keyed accesses on offheap documents, which use a field offset index, are
+ * equivalent to the ones on heap documents.
+ */
+@RunWith(Parameterized.class)
+public class IterableNettyBsonDocumentTest {
+
+  private final NettyBsonDocumentReader reader = TestReaders.newDocumentReader();
+
+  @Parameters(name = "{0}")
+  public static Collection<Object[]> documents() throws IOException {
+    Collection<Object[]> documents = MongoDocumentProvider.readTestDocuments();
+
+    BsonDocument wide = new BsonDocument();
+    for (int i = 0; i < 40; i++) {
+      wide.append("field" + i, new BsonInt32(i));
+    }
+    wide.append("ñandú", new BsonString("non ascii key"));
+    documents.add(new Object[]{"wide document", wide});
+    return documents;
+  }
+
+  @Parameter(0)
+  public String name;
+
+  @Parameter(1)
+  public BsonDocument mongoDoc;
+
+  private com.torodb.mongowp.bson.BsonDocument read(AllocationType allocationType)
+      throws NettyBsonReaderException {
+    ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    MongoBsonUtils.write(mongoDoc, byteBuf);
+    return reader.readDocument(allocationType, byteBuf);
+  }
+
+  @Test
+  public void iterationOrderTest() throws NettyBsonReaderException {
+    Iterator<String> expectedKeys = mongoDoc.keySet().iterator();
+    for (com.torodb.mongowp.bson.BsonDocument.Entry<?> entry : read(AllocationType.HEAP)) {
+      assertEquals(expectedKeys.next(), entry.getKey());
+    }
+    assertFalse(expectedKeys.hasNext());
+  }
+
+  @Test
+  public void keyedAccessTest() throws NettyBsonReaderException {
+    com.torodb.mongowp.bson.BsonDocument heapDoc = read(AllocationType.HEAP);
+    com.torodb.mongowp.bson.BsonDocument offHeapDoc = read(AllocationType.OFFHEAP);
+
+    assertEquals(heapDoc.size(), offHeapDoc.size());
+    for (String key : mongoDoc.keySet()) {
+      assertTrue(key, heapDoc.containsKey(key));
+      assertEquals(key, heapDoc.getEntry(key).getKey());
+      assertTrue(key, offHeapDoc.containsKey(key));
+      assertEquals(key, heapDoc.get(key), offHeapDoc.get(key));
+      assertEquals(key, heapDoc.getEntry(key), offHeapDoc.getEntry(key));
+    }
+    assertFalse(heapDoc.containsKey("notAField"));
+    assertNull(heapDoc.get("notAField"));
+    assertFalse(offHeapDoc.containsKey("notAField"));
+    assertNull(offHeapDoc.get("notAField"));
+    assertNull(offHeapDoc.getEntry("notAField"));
+  }
+
+  @Test
+  public void contentHashTest() throws NettyBsonReaderException {
+    com.torodb.mongowp.bson.BsonDocument heapDoc = read(AllocationType.HEAP);
+    com.torodb.mongowp.bson.BsonDocument offHeapDoc = read(AllocationType.OFFHEAP);
+    com.torodb.mongowp.bson.BsonDocument otherOffHeapDoc = read(AllocationType.OFFHEAP);
+    com.torodb.mongowp.bson.BsonDocument offHeapValuesDoc = read(AllocationType.OFFHEAP_VALUES);
+
+    long expectedHash = BsonContentHasher.calculateDocumentHash(heapDoc);
+    assertEquals(expectedHash, BsonContentHasher.getHash(offHeapDoc));
+    assertEquals(expectedHash, BsonContentHasher.calculateDocumentHash(offHeapDoc));
+    assertEquals(expectedHash, BsonContentHasher.getHash(offHeapValuesDoc));
+
+    assertEquals(heapDoc.hashCode(), offHeapDoc.hashCode());
+    assertEquals(heapDoc.hashCode(), offHeapValuesDoc.hashCode());
+    assertEquals(offHeapDoc, otherOffHeapDoc);
+    assertEquals(offHeapDoc, heapDoc);
+    assertEquals(heapDoc, offHeapDoc);
+  }
+}
@@ -17,8 +17,13 @@ package com.torodb.mongowp.bson.netty;
 
 import static org.junit.Assert.*;
 
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.netty.pool.AlwaysFalseStringPool;
 import com.torodb.mongowp.bson.org.bson.utils.MongoBsonTranslator;
+import com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import org.bson.*;
 import org.junit.Before;
@@ -31,6 +36,7 @@ import org.junit.runners.Parameterized.Parameters;
 import java.io.IOException;
 import java.nio.ByteOrder;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 
 /**
  *
@@ -39,13 +45,30 @@ import java.util.Collection;
 @RunWith(Parameterized.class)
 public class NettyBsonDocumentWriterTest {
 
+  private static final NettyStringReader STRING_READER =
+      new PooledNettyStringReader(AlwaysFalseStringPool.getInstance());
+  private static final NettyBsonDocumentReader READER =
+      new NettyBsonDocumentReader(new DefaultNettyBsonLowLevelReader(STRING_READER),
+          new OffHeapNettyBsonLowLevelReader(STRING_READER),
+          new OffHeapValuesNettyBsonLowLevelReader(STRING_READER));
+
   private final ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
 
   private final NettyBsonDocumentWriter writer = new NettyBsonDocumentWriter();
 
   @Parameters(name = "{0}")
   public static Collection<Object[]> documents() throws IOException {
-    return MongoDocumentProvider.readTestDocuments();
+    Collection<Object[]> documents = MongoDocumentProvider.readTestDocuments();
+
+    BsonArray bigArray = new BsonArray();
+    for (int i = 0; i < 100; i++) {
+      bigArray.add(new BsonDocument("value", new BsonInt64(i)));
+    }
+    BsonDocument big = new BsonDocument()
+        .append("big", bigArray)
+        .append("after", new BsonString("a value after a big array"));
+    documents.add(new Object[]{"big document", big});
+    return documents;
   }
 
   @Parameter(0)
@@ -72,4 +95,73 @@ public class NettyBsonDocumentWriterTest {
     assertEquals(mongoDoc, read);
   }
 
+  @Test
+  public void serializedSizeTest() throws NettyBsonReaderException {
+    com.torodb.mongowp.bson.BsonDocument wpDocument = MongoBsonTranslator.translate(mongoDoc);
+
+    writer.writeInto(byteBuf, wpDocument);
+
+    assertEquals(byteBuf.readableBytes(), writer.getSerializedSize(wpDocument));
+    assertEquals(byteBuf.readableBytes(), writer.getSerializedSize(readOffHeap(byteBuf.copy())));
+  }
+
+  @Test
+  public void writeOffHeapTest() throws NettyBsonReaderException {
+    ByteBuf source = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    MongoBsonUtils.write(mongoDoc, source);
+    int sourceSize = source.readableBytes();
+
+    writer.writeInto(byteBuf, readOffHeap(source));
+
+    assertEquals(sourceSize, byteBuf.readableBytes());
+    assertEquals(mongoDoc, MongoBsonUtils.read(byteBuf));
+  }
+
+  @Test
+  public void writeCompositeTest() throws NettyBsonReaderException {
+    ByteBuf source = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    MongoBsonUtils.write(mongoDoc, source);
+    com.torodb.mongowp.bson.BsonDocument offHeapDoc = readOffHeap(source);
+    boolean shareable = writer.isShareable(offHeapDoc);
+
+    CompositeByteBuf composite = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+    ByteBuf sink = composite.order(ByteOrder.LITTLE_ENDIAN);
+    sink.writeInt(0xCAFE);
+    writer.writeInto(sink, offHeapDoc);
+
+    assertEquals(shareable ? 2 : 1, source.refCnt());
+    assertEquals(0xCAFE, sink.readInt());
+    assertEquals(mongoDoc, MongoBsonUtils.read(sink));
+
+    composite.release();
+    assertEquals(1, source.refCnt());
+  }
+
+  @Test
+  public void writeCompositeNestedTest() throws NettyBsonReaderException {
+    ByteBuf source = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    MongoBsonUtils.write(mongoDoc, source);
+    LinkedHashMap<String, BsonValue<?>> map = new LinkedHashMap<>();
+    map.put("before", DefaultBsonValues.newInt(1));
+    map.put("inner", readOffHeap(source));
+    map.put("after", DefaultBsonValues.newString("after"));
+    com.torodb.mongowp.bson.BsonDocument heapDoc = DefaultBsonValues.newDocument(map);
+
+    CompositeByteBuf composite = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+    ByteBuf sink = composite.order(ByteOrder.LITTLE_ENDIAN);
+    writer.writeInto(sink, heapDoc);
+
+    BsonDocument expected = new BsonDocument()
+        .append("before", new BsonInt32(1))
+        .append("inner", mongoDoc)
+        .append("after", new BsonString("after"));
+    assertEquals(expected, MongoBsonUtils.read(sink));
+    composite.release();
+  }
+
+  private com.torodb.mongowp.bson.BsonDocument readOffHeap(ByteBuf source)
+      throws NettyBsonReaderException {
+    return READER.readDocument(AllocationType.OFFHEAP, source);
+  }
+
 }
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import static org.junit.Assert.assertEquals;
+
+import com.torodb.mongowp.bson.BinarySubtype;
+import com.torodb.mongowp.bson.utils.BsonEventHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonBoolean;
+import org.bson.BsonDateTime;
+import org.bson.BsonDbPointer;
+import org.bson.BsonDecimal128;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonJavaScript;
+import org.bson.BsonJavaScriptWithScope;
+import org.bson.BsonMaxKey;
+import org.bson.BsonMinKey;
+import org.bson.BsonNull;
+import org.bson.BsonObjectId;
+import org.bson.BsonRegularExpression;
+import org.bson.BsonString;
+import org.bson.BsonSymbol;
+import org.bson.BsonTimestamp;
+import org.bson.BsonUndefined;
+import org.bson.BsonValue;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+
+/**
+ * Rebuilds the read documents from the events and checks they are equal to the original ones.
+ */
+@RunWith(Parameterized.class)
+public class NettyBsonEventReaderTest {
+
+  private final NettyBsonEventReader reader = new NettyBsonEventReader();
+
+  @Parameters(name = "{0}")
+  public static Collection<Object[]> documents() throws IOException {
+    Collection<Object[]> documents = MongoDocumentProvider.readTestDocuments();
+    BsonDocument allTypes = new BsonDocument()
+        .append("double", new BsonDouble(1.5))
+        .append("string", new BsonString("ñandú"))
+        .append("doc", new BsonDocument("a", new BsonInt32(1)))
+        .append("array", new BsonArray())
+        .append("binary", new BsonBinary((byte) 0x80, new byte[] {1, 2, 3}))
+        .append("undefined", new BsonUndefined())
+        .append("objectId", new BsonObjectId(new ObjectId()))
+        .append("boolean", BsonBoolean.TRUE)
+        .append("datetime", new BsonDateTime(123456789L))
+        .append("null", BsonNull.VALUE)
+        .append("regex", new BsonRegularExpression("a*b", "i"))
+        .append("dbPointer", new BsonDbPointer("db.col", new ObjectId()))
+        .append("js", new BsonJavaScript("function() {}"))
+        .append("symbol", new BsonSymbol("symbol"))
+        .append("jsWithScope", new BsonJavaScriptWithScope("x", new BsonDocument("x",
+            new BsonInt64(2))))
+        .append("int32", new BsonInt32(-3))
+        .append("timestamp", new BsonTimestamp(1000, 3))
+        .append("int64", new BsonInt64(Long.MAX_VALUE))
+        .append("decimal", new BsonDecimal128(Decimal128.parse("3.14159")))
+        .append("min", new BsonMinKey())
+        .append("max", new BsonMaxKey());
+    allTypes.getArray("array").add(new BsonString("x"));
+    allTypes.getArray("array").add(new BsonArray());
+    documents.add(new Object[]{"all types", allTypes});
+    return documents;
+  }
+
+  @Parameter(0)
+  public String name;
+
+  @Parameter(1)
+  public BsonDocument mongoDoc;
+
+  @Test
+  public void readTest() throws NettyBsonReaderException {
+    ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    MongoBsonUtils.write(mongoDoc, byteBuf);
+    int size = byteBuf.readableBytes();
+
+    DocumentBuilder builder = new DocumentBuilder();
+    reader.read(byteBuf, builder);
+
+    assertEquals(mongoDoc, builder.result);
+    assertEquals(0, byteBuf.readableBytes());
+    assertEquals(size, byteBuf.readerIndex());
+  }
+
+  private static String toString(ByteBuf byteBuf) {
+    return byteBuf.toString(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] toBytes(ByteBuf byteBuf) {
+    byte[] bytes = new byte[byteBuf.readableBytes()];
+    byteBuf.getBytes(byteBuf.readerIndex(), bytes);
+    return bytes;
+  }
+
+  private static class DocumentBuilder implements BsonEventHandler<ByteBuf> {
+
+    private final Deque<Object> stack = new ArrayDeque<>();
+    private final Deque<String> names = new ArrayDeque<>();
+    private String name = "";
+    private BsonDocument result;
+
+    private void add(BsonValue value) {
+      Object parent = stack.peek();
+      if (parent instanceof BsonDocument) {
+        ((BsonDocument) parent).append(name, value);
+      } else if (parent instanceof BsonArray) {
+        ((BsonArray) parent).add(value);
+      } else {
+        ((CodeWithScope) parent).scope = (BsonDocument) value;
+      }
+    }
+
+    private void start(Object container) {
+      names.push(name);
+      stack.push(container);
+    }
+
+    private Object end() {
+      name = names.pop();
+      return stack.pop();
+    }
+
+    @Override
+    public void startDocument() {
+      start(new BsonDocument());
+    }
+
+    @Override
+    public void endDocument() {
+      BsonDocument doc = (BsonDocument) end();
+      if (stack.isEmpty()) {
+        result = doc;
+      } else {
+        add(doc);
+      }
+    }
+
+    @Override
+    public void startArray() {
+      start(new BsonArray());
+    }
+
+    @Override
+    public void endArray() {
+      add((BsonArray) end());
+    }
+
+    @Override
+    public void onName(ByteBuf name) {
+      this.name = NettyBsonEventReaderTest.toString(name);
+    }
+
+    @Override
+    public void onDouble(double value) {
+      add(new BsonDouble(value));
+    }
+
+    @Override
+    public void onString(ByteBuf value) {
+      add(new BsonString(NettyBsonEventReaderTest.toString(value)));
+    }
+
+    @Override
+    public void onBinary(BinarySubtype subtype, byte numericSubtype, ByteBuf data) {
+      add(new BsonBinary(numericSubtype, toBytes(data)));
+    }
+
+    @Override
+    public void onUndefined() {
+      add(new BsonUndefined());
+    }
+
+    @Override
+    public void onObjectId(ByteBuf value) {
+      add(new BsonObjectId(new ObjectId(toBytes(value))));
+    }
+
+    @Override
+    public void onBoolean(boolean value) {
+      add(BsonBoolean.valueOf(value));
+    }
+
+    @Override
+    public void onDateTime(long millisFromUnix) {
+      add(new BsonDateTime(millisFromUnix));
+    }
+
+    @Override
+    public void onNull() {
+      add(BsonNull.VALUE);
+    }
+
+    @Override
+    public void onRegex(ByteBuf pattern, ByteBuf options) {
+      add(new BsonRegularExpression(NettyBsonEventReaderTest.toString(pattern),
+          NettyBsonEventReaderTest.toString(options)));
+    }
+
+    @Override
+    public void onDbPointer(ByteBuf namespace, ByteBuf id) {
+      add(new BsonDbPointer(NettyBsonEventReaderTest.toString(namespace),
+          new ObjectId(toBytes(id))));
+    }
+
+    @Override
+    public void onJavaScript(ByteBuf code) {
+      add(new BsonJavaScript(NettyBsonEventReaderTest.toString(code)));
+    }
+
+    @Override
+    public void startJavaScriptWithScope(ByteBuf code) {
+      start(new CodeWithScope(NettyBsonEventReaderTest.toString(code)));
+    }
+
+    @Override
+    public void endJavaScriptWithScope() {
+      CodeWithScope codeWithScope = (CodeWithScope) end();
+      add(new BsonJavaScriptWithScope(codeWithScope.code, codeWithScope.scope));
+    }
+
+    @Override
+    public void onInt32(int value) {
+      add(new BsonInt32(value));
+    }
+
+    @Override
+    public void onTimestamp(int secondsSinceEpoch, int ordinal) {
+      add(new BsonTimestamp(secondsSinceEpoch, ordinal));
+    }
+
+    @Override
+    public void onInt64(long value) {
+      add(new BsonInt64(value));
+    }
+
+    @Override
+    public void onDecimal128(long low, long high) {
+      add(new BsonDecimal128(Decimal128.fromIEEE754BIDEncoding(high, low)));
+    }
+
+    @Override
+    public void onMin() {
+      add(new BsonMinKey());
+    }
+
+    @Override
+    public void onMax() {
+      add(new BsonMaxKey());
+    }
+
+    @Override
+    public void onDeprecated(ByteBuf value) {
+      add(new BsonSymbol(NettyBsonEventReaderTest.toString(value)));
+    }
+
+    private static class CodeWithScope {
+
+      private final String code;
+      private BsonDocument scope;
+
+      private CodeWithScope(String code) {
+        this.code = code;
+      }
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.impl.ByteArrayBsonObjectId;
+import com.torodb.mongowp.bson.impl.LongsBsonDecimal128;
+import com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.bson.BsonDecimal128;
+import org.bson.BsonObjectId;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteOrder;
+
+/**
+ * Checks the object ids and decimals that are read from offheap values documents.
+ */
+public class NettyBsonValuesTest {
+
+  private final NettyBsonDocumentReader reader = TestReaders.newDocumentReader();
+  private final NettyBsonDocumentWriter writer = new NettyBsonDocumentWriter();
+
+  private final ObjectId objectId = new ObjectId("5a0c2b9e8f1d4c3b2a190807");
+  private final Decimal128 decimal = Decimal128.parse("-1234567.890123456789");
+
+  private BsonDocument read(AllocationType allocationType) throws NettyBsonReaderException {
+    org.bson.BsonDocument mongoDoc = new org.bson.BsonDocument()
+        .append("_id", new BsonObjectId(objectId))
+        .append("dec", new BsonDecimal128(decimal));
+    ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    MongoBsonUtils.write(mongoDoc, byteBuf);
+    return reader.readDocument(allocationType, byteBuf);
+  }
+
+  @Test
+  public void testObjectId() throws NettyBsonReaderException {
+    BsonValue<?> heap = read(AllocationType.HEAP).get("_id");
+    BsonValue<?> offHeap = read(AllocationType.OFFHEAP_VALUES).get("_id");
+
+    assertTrue(offHeap instanceof NettyBsonObjectId);
+    assertArrayEquals(objectId.toByteArray(), offHeap.asObjectId().toByteArray());
+    assertEquals(objectId.getTimestamp(), offHeap.asObjectId().getTimestamp().getEpochSecond());
+    assertEquals(heap, offHeap);
+    assertEquals(offHeap, heap);
+    assertEquals(heap.hashCode(), offHeap.hashCode());
+    assertEquals(0, offHeap.compareTo(heap));
+    assertEquals(offHeap, read(AllocationType.OFFHEAP_VALUES).get("_id"));
+  }
+
+  @Test
+  public void testObjectIdOrder() {
+    ByteBuf lower = Unpooled.wrappedBuffer(new ObjectId("5a0c2b9e8f1d4c3b2a190807").toByteArray());
+    ByteBuf upper = Unpooled.wrappedBuffer(new ObjectId("f10c2b9e8f1d4c3b2a190807").toByteArray());
+    NettyBsonObjectId lowerId = new NettyBsonObjectId(lower);
+    NettyBsonObjectId upperId = new NettyBsonObjectId(upper);
+
+    assertTrue(lowerId.compareTo(upperId) < 0);
+    assertTrue(upperId.compareTo(lowerId) > 0);
+    assertTrue(upperId.compareTo(new ByteArrayBsonObjectId(lowerId.toByteArray())) > 0);
+  }
+
+  @Test
+  public void testDecimal128() throws NettyBsonReaderException {
+    BsonValue<?> heap = read(AllocationType.HEAP).get("dec");
+    BsonValue<?> offHeap = read(AllocationType.OFFHEAP_VALUES).get("dec");
+
+    assertTrue(offHeap instanceof NettyBsonDecimal128);
+    assertEquals(decimal.getLow(), offHeap.asDecimal128().getLow());
+    assertEquals(decimal.getHigh(), offHeap.asDecimal128().getHigh());
+    assertEquals(0, decimal.bigDecimalValue().compareTo(offHeap.asDecimal128().getValue()));
+    assertEquals(heap, offHeap);
+    assertEquals(heap.hashCode(), offHeap.hashCode());
+  }
+
+  @Test
+  public void testWriteRead() throws NettyBsonReaderException {
+    BsonDocument offHeap = read(AllocationType.OFFHEAP_VALUES);
+    ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    writer.writeInto(byteBuf, offHeap);
+
+    org.bson.BsonDocument mongoDoc = MongoBsonUtils.read(byteBuf);
+    assertEquals(objectId, mongoDoc.getObjectId("_id").getValue());
+    assertEquals(decimal, mongoDoc.getDecimal128("dec").getValue());
+  }
+
+  @Test
+  public void testWriteHeapDecimal() {
+    BsonDocument doc = DefaultBsonValues.newDocument("dec",
+        LongsBsonDecimal128.newInstance(new BigDecimal("0.5")));
+    ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    writer.writeInto(byteBuf, doc);
+
+    org.bson.BsonDocument mongoDoc = MongoBsonUtils.read(byteBuf);
+    assertEquals(0, new BigDecimal("0.5")
+        .compareTo(mongoDoc.getDecimal128("dec").getValue().bigDecimalValue()));
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newInt;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.BsonDocument.Entry;
+import com.torodb.mongowp.bson.BsonValue;
+import com.torodb.mongowp.bson.abst.AbstractBsonDocument.SimpleEntry;
+import com.torodb.mongowp.bson.impl.ListBasedBsonDocument;
+import com.torodb.mongowp.bson.impl.OverlayBsonDocument;
+import com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Checks that {@link OverlayBsonDocument overlay documents} behave like a copy of their base
+ * document where the changes have been applied.
+ */
+public class OverlayBsonDocumentTest {
+
+  private final NettyBsonDocumentReader reader = TestReaders.newDocumentReader();
+  private final NettyBsonDocumentWriter writer = new NettyBsonDocumentWriter();
+
+  private static LinkedHashMap<String, BsonValue<?>> baseMap() {
+    LinkedHashMap<String, BsonValue<?>> map = new LinkedHashMap<>();
+    for (int i = 0; i < 5; i++) {
+      map.put("field" + i, newInt(i));
+    }
+    return map;
+  }
+
+  private BsonDocument offHeapBase() throws NettyBsonReaderException {
+    ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    writer.writeInto(byteBuf, DefaultBsonValues.newDocument(baseMap()));
+    return reader.readDocument(AllocationType.OFFHEAP, byteBuf);
+  }
+
+  private static void assertSameEntries(LinkedHashMap<String, BsonValue<?>> expected,
+      BsonDocument doc) {
+    assertEquals(expected.size(), doc.size());
+    Iterator<java.util.Map.Entry<String, BsonValue<?>>> expectedIt =
+        expected.entrySet().iterator();
+    for (Entry<?> entry : doc) {
+      java.util.Map.Entry<String, BsonValue<?>> expectedEntry = expectedIt.next();
+      assertEquals(expectedEntry.getKey(), entry.getKey());
+      assertEquals(expectedEntry.getValue(), entry.getValue());
+      assertEquals(expectedEntry.getValue(), doc.get(entry.getKey()));
+      assertTrue(doc.containsKey(entry.getKey()));
+    }
+    assertFalse(expectedIt.hasNext());
+    assertEquals(DefaultBsonValues.newDocument(expected), doc);
+    assertEquals(DefaultBsonValues.newDocument(expected).hashCode(), doc.hashCode());
+  }
+
+  @Test
+  public void unchangedTest() throws NettyBsonReaderException {
+    BsonDocument base = offHeapBase();
+    assertSame(base, OverlayBsonDocument.builder(base).build());
+  }
+
+  @Test
+  public void changesTest() throws NettyBsonReaderException {
+    BsonDocument doc = OverlayBsonDocument.builder(offHeapBase())
+        .put("field1", newInt(10))
+        .put("new1", newInt(20))
+        .remove("field3")
+        .put("new2", newInt(21))
+        .remove("new1")
+        .remove("field0")
+        .put("field0", newInt(30))
+        .remove("notAField")
+        .build();
+
+    LinkedHashMap<String, BsonValue<?>> expected = baseMap();
+    expected.put("field1", newInt(10));
+    expected.put("new1", newInt(20));
+    expected.remove("field3");
+    expected.put("new2", newInt(21));
+    expected.remove("new1");
+    expected.remove("field0");
+    expected.put("field0", newInt(30));
+
+    assertSameEntries(expected, doc);
+    assertNull(doc.get("field3"));
+    assertNull(doc.getEntry("new1"));
+  }
+
+  @Test
+  public void persistentTest() throws NettyBsonReaderException {
+    OverlayBsonDocument first = (OverlayBsonDocument) OverlayBsonDocument.builder(offHeapBase())
+        .put("ok", newInt(1))
+        .build();
+    OverlayBsonDocument second = first.with("field2", newInt(7)).without("field4");
+
+    LinkedHashMap<String, BsonValue<?>> expectedFirst = baseMap();
+    expectedFirst.put("ok", newInt(1));
+    assertSameEntries(expectedFirst, first);
+
+    LinkedHashMap<String, BsonValue<?>> expectedSecond = baseMap();
+    expectedSecond.put("ok", newInt(1));
+    expectedSecond.put("field2", newInt(7));
+    expectedSecond.remove("field4");
+    assertSameEntries(expectedSecond, second);
+  }
+
+  @Test
+  public void repeatedKeysTest() {
+    BsonDocument base = new ListBasedBsonDocument(Lists.newArrayList(
+        new SimpleEntry<>("a", newInt(1)),
+        new SimpleEntry<>("b", newInt(2)),
+        new SimpleEntry<>("a", newInt(3))
+    ));
+
+    BsonDocument appended = OverlayBsonDocument.builder(base).put("c", newInt(4)).build();
+    assertEquals(4, appended.size());
+    assertEquals(Iterators.size(appended.iterator()), appended.size());
+
+    BsonDocument replaced = OverlayBsonDocument.builder(base).put("a", newInt(5)).build();
+    assertEquals(3, replaced.size());
+    for (Entry<?> entry : replaced) {
+      if (entry.getKey().equals("a")) {
+        assertEquals(newInt(5), entry.getValue());
+      }
+    }
+
+    BsonDocument removed = OverlayBsonDocument.builder(base).remove("a").build();
+    assertEquals(1, removed.size());
+    assertEquals(Iterators.size(removed.iterator()), removed.size());
+    assertEquals("b", removed.getFirstEntry().getKey());
+  }
+}
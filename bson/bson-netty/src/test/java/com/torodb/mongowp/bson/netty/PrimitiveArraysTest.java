@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.torodb.mongowp.bson.BsonArray;
+import com.torodb.mongowp.bson.impl.DoubleArrayBsonArray;
+import com.torodb.mongowp.bson.impl.IntArrayBsonArray;
+import com.torodb.mongowp.bson.impl.ListBsonArray;
+import com.torodb.mongowp.bson.impl.LongArrayBsonArray;
+import com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+
+/**
+ * Checks that homogeneous numeric arrays are read as arrays of primitives and written back.
+ */
+public class PrimitiveArraysTest {
+
+  private static final int SIZE = 12345;
+  private final NettyBsonDocumentReader reader = TestReaders.newDocumentReader();
+  private final NettyBsonDocumentWriter writer = new NettyBsonDocumentWriter();
+
+  private static BsonDocument createDocument() {
+    org.bson.BsonArray ints = new org.bson.BsonArray();
+    org.bson.BsonArray longs = new org.bson.BsonArray();
+    org.bson.BsonArray doubles = new org.bson.BsonArray();
+    for (int i = 0; i < SIZE; i++) {
+      ints.add(new BsonInt32(i * 31 - 1000));
+      longs.add(new BsonInt64(i * 1_000_000_007L));
+      doubles.add(new BsonDouble(i / 3.0));
+    }
+    org.bson.BsonArray mixed = new org.bson.BsonArray();
+    mixed.add(new BsonInt32(1));
+    mixed.add(new BsonInt32(2));
+    mixed.add(new BsonString("three"));
+    mixed.add(new BsonInt32(4));
+
+    return new BsonDocument()
+        .append("ints", ints)
+        .append("longs", longs)
+        .append("doubles", doubles)
+        .append("mixed", mixed)
+        .append("empty", new org.bson.BsonArray());
+  }
+
+  private com.torodb.mongowp.bson.BsonDocument read(BsonDocument mongoDoc,
+      AllocationType allocationType) throws NettyBsonReaderException {
+    ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    MongoBsonUtils.write(mongoDoc, byteBuf);
+    return reader.readDocument(allocationType, byteBuf);
+  }
+
+  @Test
+  public void testRead() throws NettyBsonReaderException {
+    BsonDocument mongoDoc = createDocument();
+    com.torodb.mongowp.bson.BsonDocument heapDoc = read(mongoDoc, AllocationType.HEAP);
+
+    assertTrue(heapDoc.get("ints") instanceof IntArrayBsonArray);
+    assertTrue(heapDoc.get("longs") instanceof LongArrayBsonArray);
+    assertTrue(heapDoc.get("doubles") instanceof DoubleArrayBsonArray);
+    assertTrue(heapDoc.get("mixed") instanceof ListBsonArray);
+
+    assertEquals(read(mongoDoc, AllocationType.OFFHEAP), heapDoc);
+    BsonArray ints = heapDoc.get("ints").asArray();
+    assertEquals(SIZE, ints.size());
+    assertEquals(DefaultBsonValues.newInt(31 * 100 - 1000), ints.get(100));
+    assertTrue(ints.contains(DefaultBsonValues.newInt(-1000)));
+    assertFalse(ints.contains(DefaultBsonValues.newLong(-1000)));
+    assertEquals(4, heapDoc.get("mixed").asArray().size());
+  }
+
+  @Test
+  public void testWrite() throws NettyBsonReaderException {
+    BsonDocument mongoDoc = createDocument();
+    com.torodb.mongowp.bson.BsonDocument heapDoc = read(mongoDoc, AllocationType.HEAP);
+
+    ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    writer.writeInto(byteBuf, heapDoc);
+
+    assertEquals(byteBuf.readableBytes(), writer.getSerializedSize(heapDoc));
+    assertEquals(mongoDoc, MongoBsonUtils.read(byteBuf));
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+
+/**
+ * Checks that small numeric values are shared when they are created or read.
+ */
+public class SmallValuesCacheTest {
+
+  private final NettyBsonDocumentReader reader = TestReaders.newDocumentReader();
+
+  @Test
+  public void factoriesTest() {
+    assertSame(DefaultBsonValues.newInt(-128), DefaultBsonValues.newInt(-128));
+    assertSame(DefaultBsonValues.newInt(1023), DefaultBsonValues.newInt(1023));
+    assertSame(DefaultBsonValues.INT32_ZERO, DefaultBsonValues.newInt(0));
+    assertNotSame(DefaultBsonValues.newInt(-129), DefaultBsonValues.newInt(-129));
+    assertEquals(DefaultBsonValues.newInt(-129), DefaultBsonValues.newInt(-129));
+
+    assertSame(DefaultBsonValues.newLong(500), DefaultBsonValues.newLong(500));
+    assertSame(DefaultBsonValues.INT64_ONE, DefaultBsonValues.newLong(1));
+    assertNotSame(DefaultBsonValues.newLong(1L << 40), DefaultBsonValues.newLong(1L << 40));
+
+    assertSame(DefaultBsonValues.newDouble(-1), DefaultBsonValues.newDouble(-1));
+    assertSame(DefaultBsonValues.DOUBLE_ONE, DefaultBsonValues.newDouble(1));
+    assertNotSame(DefaultBsonValues.newDouble(0.5), DefaultBsonValues.newDouble(0.5));
+    assertEquals(Double.doubleToRawLongBits(-0.0),
+        Double.doubleToRawLongBits(DefaultBsonValues.newDouble(-0.0).doubleValue()));
+    assertEquals(Double.doubleToRawLongBits(0.0),
+        Double.doubleToRawLongBits(DefaultBsonValues.newDouble(0.0).doubleValue()));
+  }
+
+  @Test
+  public void readerTest() throws NettyBsonReaderException {
+    org.bson.BsonDocument mongoDoc = new org.bson.BsonDocument()
+        .append("int", new BsonInt32(7))
+        .append("long", new BsonInt64(7))
+        .append("double", new BsonDouble(7))
+        .append("negativeZero", new BsonDouble(-0.0));
+    ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    MongoBsonUtils.write(mongoDoc, byteBuf);
+    BsonDocument doc = reader.readDocument(AllocationType.HEAP, byteBuf);
+
+    assertSame(DefaultBsonValues.newInt(7), doc.get("int"));
+    assertSame(DefaultBsonValues.newLong(7), doc.get("long"));
+    assertSame(DefaultBsonValues.newDouble(7), doc.get("double"));
+    assertEquals(Double.doubleToRawLongBits(-0.0),
+        Double.doubleToRawLongBits(doc.get("negativeZero").asDouble().doubleValue()));
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import com.torodb.mongowp.bson.netty.pool.AlwaysFalseStringPool;
+
+/**
+ * Creates the readers used by the tests of this package.
+ */
+final class TestReaders {
+
+  private TestReaders() {
+  }
+
+  static NettyBsonDocumentReader newDocumentReader() {
+    NettyStringReader stringReader =
+        new PooledNettyStringReader(AlwaysFalseStringPool.getInstance());
+    return new NettyBsonDocumentReader(new DefaultNettyBsonLowLevelReader(stringReader),
+        new OffHeapNettyBsonLowLevelReader(stringReader),
+        new OffHeapValuesNettyBsonLowLevelReader(stringReader));
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Strings;
+import com.torodb.mongowp.bson.utils.BsonSizeCalculator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ */
+public class Utf8CodecTest {
+
+  private static final String[] STRINGS = {
+      "",
+      "_id",
+      "$query",
+      "an ascii string longer than 8 bytes",
+      "ñandú",
+      "latin-1 after some ascii bytes: àéíóü ÿ",
+      "€uro",
+      "emoji 😀 and more",
+      "unpaired \uD800 surrogate",
+      Strings.repeat("a long string that does not fit on the scratch buffer ", 40),
+      Strings.repeat("ñ", 1500)
+  };
+
+  private static ByteBuf[] createBuffers() {
+    return new ByteBuf[] {
+        Unpooled.buffer(1),
+        Unpooled.directBuffer(1),
+        Unpooled.buffer(1).order(ByteOrder.LITTLE_ENDIAN)
+    };
+  }
+
+  @Test
+  public void encodeTest() {
+    for (String str : STRINGS) {
+      for (ByteBuf byteBuf : createBuffers()) {
+        byteBuf.writeByte(7);
+        int written = Utf8Codec.encode(byteBuf, str);
+
+        byte[] expected = str.getBytes(StandardCharsets.UTF_8);
+        byte[] actual = new byte[byteBuf.readableBytes() - 1];
+        byteBuf.getBytes(1, actual);
+        assertEquals(str, expected.length, written);
+        assertArrayEquals(str, expected, actual);
+        byteBuf.release();
+      }
+    }
+  }
+
+  @Test
+  public void sizeTest() {
+    for (String str : STRINGS) {
+      ByteBuf byteBuf = Unpooled.buffer();
+      int written = Utf8Codec.encode(byteBuf, str);
+      assertEquals(str, written, BsonSizeCalculator.getUtf8Size(str));
+      byteBuf.release();
+    }
+  }
+
+  @Test
+  public void decodeTest() {
+    for (String str : STRINGS) {
+      for (ByteBuf byteBuf : createBuffers()) {
+        byteBuf.writeByte(7);
+        byteBuf.writeBytes(str.getBytes(StandardCharsets.UTF_8));
+
+        String expected = new String(str.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+        assertEquals(expected, Utf8Codec.decode(byteBuf, 1, byteBuf.readableBytes() - 1));
+        byteBuf.release();
+      }
+    }
+  }
+
+  @Test
+  public void writeStringTest() {
+    for (String str : STRINGS) {
+      ByteBuf byteBuf = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+      Utf8Codec.writeString(byteBuf, str);
+
+      byte[] expected = str.getBytes(StandardCharsets.UTF_8);
+      assertEquals(expected.length + 1, byteBuf.readInt());
+      assertEquals(expected.length + 1, byteBuf.readableBytes());
+      assertEquals(0, byteBuf.getByte(byteBuf.writerIndex() - 1));
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.bson.netty.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ */
+public class OpenAddressingStringPoolTest {
+
+  private static ByteBuf toByteBuf(String str) {
+    //some padding is added to check that only the readable bytes are used
+    ByteBuf byteBuf = Unpooled.buffer();
+    byteBuf.writeBytes(new byte[] {1, 2, 3});
+    byteBuf.writeBytes(str.getBytes(StandardCharsets.UTF_8));
+    byteBuf.writeByte(0);
+    return byteBuf.slice(3, byteBuf.writerIndex() - 4);
+  }
+
+  @Test
+  public void testPooledStrings() {
+    OpenAddressingStringPool pool = new OpenAddressingStringPool(
+        OnlyLikelyStringPoolPolicy.getInstance(), 64);
+
+    String[] keys = {"_id", "$query", "ns", "ñandú", ""};
+    String[] pooled = new String[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      pooled[i] = pool.fromPool(true, toByteBuf(keys[i]));
+      assertEquals(keys[i], pooled[i]);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      ByteBuf byteBuf = toByteBuf(keys[i]);
+      int readerIndex = byteBuf.readerIndex();
+      assertSame(pooled[i], pool.fromPool(true, byteBuf));
+      assertEquals(readerIndex, byteBuf.readerIndex());
+    }
+    assertEquals(keys.length, pool.size());
+
+    assertNotSame("Unlikely strings should not be pooled",
+        pooled[0], pool.fromPool(false, toByteBuf(keys[0])));
+  }
+
+  @Test
+  public void testEviction() {
+    OpenAddressingStringPool pool = new OpenAddressingStringPool(
+        OnlyLikelyStringPoolPolicy.getInstance(), 16);
+
+    String hot = pool.fromPool(true, toByteBuf("hot"));
+    for (int i = 0; i < 1000; i++) {
+      String key = "key" + i;
+      assertEquals(key, pool.fromPool(true, toByteBuf(key)));
+      assertEquals("hot", pool.fromPool(true, toByteBuf("hot")));
+      assertTrue(pool.size() <= 16);
+    }
+    assertEquals(hot, pool.fromPool(true, toByteBuf("hot")));
+  }
+}
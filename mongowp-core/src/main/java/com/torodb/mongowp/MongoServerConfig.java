@@ -15,7 +15,183 @@
  */
 package com.torodb.mongowp;
 
+import java.util.Arrays;
+import java.util.List;
+
 public interface MongoServerConfig {
 
   public int getPort();
+
+  /**
+   * Returns the names of the compressors the server is able to negotiate with clients, in order of
+   * preference.
+   *
+   * Compressors whose implementation is not available on the classpath are ignored.
+   */
+  public default List<String> getCompressors() {
+    return Arrays.asList("snappy", "zstd", "zlib");
+  }
+
+  /**
+   * Returns the transport used to accept connections.
+   */
+  public default Transport getTransport() {
+    return Transport.AUTO;
+  }
+
+  /**
+   * Returns the number of threads used to accept new connections or 0 to use the transport
+   * default.
+   */
+  public default int getConnectionThreads() {
+    return 1;
+  }
+
+  /**
+   * Returns the number of threads used to read and write on the accepted connections or 0 to use
+   * the transport default (twice the number of available processors).
+   */
+  public default int getWorkerThreads() {
+    return 0;
+  }
+
+  /**
+   * Returns whether Nagle's algorithm must be disabled on accepted connections.
+   *
+   * Replies are usually small and the client waits for them, so delaying them to coalesce packets
+   * increases the latency.
+   */
+  public default boolean isTcpNoDelay() {
+    return true;
+  }
+
+  /**
+   * Returns the max number of pending connections queued by the OS or 0 to use the OS default.
+   */
+  public default int getBacklog() {
+    return 0;
+  }
+
+  /**
+   * Returns the size of the socket receive buffer or 0 to use the OS default.
+   */
+  public default int getReceiveBufferSize() {
+    return 0;
+  }
+
+  /**
+   * Returns the size of the socket send buffer or 0 to use the OS default.
+   */
+  public default int getSendBufferSize() {
+    return 0;
+  }
+
+  /**
+   * Returns the number of bytes pending to be written on a connection after which the connection
+   * is considered not writable.
+   */
+  public default int getWriteBufferHighWaterMark() {
+    return 64 * 1024;
+  }
+
+  /**
+   * Returns the number of bytes pending to be written on a not writable connection below which
+   * the connection is considered writable again.
+   */
+  public default int getWriteBufferLowWaterMark() {
+    return 32 * 1024;
+  }
+
+  /**
+   * Returns how requests are executed.
+   */
+  public default ExecutionMode getExecutionMode() {
+    return ExecutionMode.INLINE;
+  }
+
+  /**
+   * Returns the number of threads used to execute requests when the execution mode is
+   * {@link ExecutionMode#THREAD_POOL}.
+   */
+  public default int getExecutionThreads() {
+    return Runtime.getRuntime().availableProcessors() * 4;
+  }
+
+  /**
+   * Returns the max number of requests of the same connection that can be executed at the same
+   * time.
+   *
+   * Values greater than 1 let pipelining clients, which send several requests before reading the
+   * replies, have requests executed concurrently. Replies are always sent in the same order the
+   * requests were received. This value is ignored when the execution mode is
+   * {@link ExecutionMode#INLINE}.
+   */
+  public default int getMaxInFlightRequests() {
+    return 1;
+  }
+
+  /**
+   * Returns the number of requests of a connection that can be pending to be executed before the
+   * server stops reading more requests from it.
+   *
+   * This value is ignored when the execution mode is {@link ExecutionMode#INLINE}, as requests are
+   * executed as they are read.
+   */
+  public default int getMaxPendingRequests() {
+    return Math.max(16, 2 * getMaxInFlightRequests());
+  }
+
+  /**
+   * Returns the max number of flushes that can be delayed before the pending replies of a
+   * connection are written, or 0 to write each reply as soon as it is produced.
+   *
+   * Delayed replies are written at the latest when the server finishes reading the data available
+   * on the connection or at the end of the current network thread iteration, so replies produced
+   * together are sent with a single syscall.
+   */
+  public default int getMaxPendingFlushes() {
+    return 256;
+  }
+
+  /**
+   * Returns the max number of bytes of delayed replies after which the pending replies of a
+   * connection are written.
+   *
+   * @see #getMaxPendingFlushes()
+   */
+  public default int getMaxPendingFlushBytes() {
+    return 64 * 1024;
+  }
+
+  public static enum Transport {
+    /**
+     * Use the native epoll transport when it is available and NIO otherwise.
+     */
+    AUTO,
+    /**
+     * Use the native epoll transport, which is only available on Linux.
+     */
+    EPOLL,
+    NIO
+  }
+
+  public static enum ExecutionMode {
+    /**
+     * Requests are executed on the thread that reads them from the network.
+     *
+     * This is the fastest mode when the request processor never blocks, but a request that blocks
+     * delays all the connections that share the same network thread.
+     */
+    INLINE,
+    /**
+     * Requests are executed on a bounded pool of threads.
+     */
+    THREAD_POOL,
+    /**
+     * Each request is executed on its own virtual thread.
+     *
+     * Virtual threads require Java 21 or newer. On older runtimes {@link #THREAD_POOL} is used.
+     */
+    VIRTUAL_THREAD
+  }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.messages.request;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.torodb.mongowp.annotations.Ethereal;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType;
+import com.torodb.mongowp.messages.utils.IterableDocumentProvider;
+
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A request sent using the OP_MSG opcode.
+ *
+ * An OP_MSG contains a single <em>body</em> section (kind 0) that stores the command and zero or
+ * more <em>document sequence</em> sections (kind 1) that contain the (usually big) list of
+ * documents the command refers to, like the documents to insert or the update statements.
+ */
+@Immutable
+public class MsgMessage extends AbstractRequestMessage {
+
+  public static final RequestOpCode REQUEST_OP_CODE = RequestOpCode.OP_MSG;
+
+  @Nonnull
+  private final String database;
+  private final boolean checksumPresent;
+  private final boolean moreToCome;
+  private final boolean exhaustAllowed;
+  @Nonnull
+  @Ethereal("getDataContext")
+  private final BsonDocument body;
+  @Nonnull
+  @Ethereal("getDataContext")
+  private final List<DocumentSequence> documentSequences;
+
+  public MsgMessage(
+      @Nonnull RequestBaseMessage requestBaseMessage,
+      @Nonnull BsonContext dataContext,
+      @Nonnull String database,
+      boolean checksumPresent,
+      boolean moreToCome,
+      boolean exhaustAllowed,
+      @Nonnull @Ethereal("dataContext") BsonDocument body,
+      @Nonnull @Ethereal("dataContext") List<DocumentSequence> documentSequences) {
+    super(requestBaseMessage, dataContext);
+    this.database = database;
+    this.checksumPresent = checksumPresent;
+    this.moreToCome = moreToCome;
+    this.exhaustAllowed = exhaustAllowed;
+    this.body = body;
+    this.documentSequences = ImmutableList.copyOf(documentSequences);
+  }
+
+  @Override
+  public RequestOpCode getOpCode() {
+    return REQUEST_OP_CODE;
+  }
+
+  /**
+   * @return the database on which the command must be executed, as stored on the {@code $db} field
+   *         of the body
+   */
+  @Nonnull
+  public String getDatabase() {
+    return database;
+  }
+
+  public boolean isChecksumPresent() {
+    return checksumPresent;
+  }
+
+  /**
+   * @return true iff the client does not expect a reply to this message
+   */
+  public boolean isMoreToCome() {
+    return moreToCome;
+  }
+
+  public boolean isExhaustAllowed() {
+    return exhaustAllowed;
+  }
+
+  @Nonnull
+  @Ethereal("this")
+  public BsonDocument getBody() {
+    return body;
+  }
+
+  @Nonnull
+  @Ethereal("this")
+  public List<DocumentSequence> getDocumentSequences() {
+    return documentSequences;
+  }
+
+  /**
+   * Returns the document sequence whose identifier is the given one or null if there is no
+   * sequence with that identifier.
+   */
+  @Nullable
+  @Ethereal("this")
+  public DocumentSequence getDocumentSequence(@Nonnull String identifier) {
+    for (DocumentSequence documentSequence : documentSequences) {
+      if (documentSequence.getIdentifier().equals(identifier)) {
+        return documentSequence;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("MsgMessage{")
+        .append(super.toString())
+        .append(", database='")
+        .append(database)
+        .append("', checksumPresent=")
+        .append(checksumPresent)
+        .append(", moreToCome=")
+        .append(moreToCome)
+        .append(", exhaustAllowed=")
+        .append(exhaustAllowed);
+
+    if (getDataContext().isValid()) {
+      //TODO: This must be changed to preserve privacy on logs
+      int docsLimit = 10;
+      sb.append(", body=").append(body);
+      for (DocumentSequence documentSequence : documentSequences) {
+        sb.append(", ")
+            .append(documentSequence.getIdentifier())
+            .append(" (limited to ").append(docsLimit).append(")=")
+            .append(
+                Iterables.toString(
+                    documentSequence.getDocuments().getIterable(AllocationType.HEAP)
+                        .limit(docsLimit)
+                ));
+      }
+    } else {
+      sb.append(", body=<not available>");
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * The bits of the OP_MSG flags field, shared by requests and replies.
+   */
+  public static enum Flag {
+    CHECKSUM_PRESENT(0),
+    MORE_TO_COME(1),
+    EXHAUST_ALLOWED(16);
+
+    @Nonnegative
+    private final int flagBitPosition;
+
+    private Flag(@Nonnegative int flagBitPosition) {
+      this.flagBitPosition = flagBitPosition;
+    }
+
+    @Nonnegative
+    public int getFlagBitPosition() {
+      return flagBitPosition;
+    }
+
+    public int getMask() {
+      return 1 << flagBitPosition;
+    }
+
+    public boolean isActive(int flags) {
+      return (flags & getMask()) != 0;
+    }
+  }
+
+  /**
+   * A kind 1 section of an OP_MSG, which is a list of documents identified by a name that is
+   * semantically equivalent to a field of the body whose value is an array of documents.
+   */
+  @Immutable
+  public static class DocumentSequence {
+
+    @Nonnull
+    private final String identifier;
+    @Nonnull
+    private final IterableDocumentProvider<?> documents;
+
+    public DocumentSequence(
+        @Nonnull String identifier,
+        @Nonnull @Ethereal("dataContext") IterableDocumentProvider<?> documents) {
+      this.identifier = identifier;
+      this.documents = documents;
+    }
+
+    @Nonnull
+    public String getIdentifier() {
+      return identifier;
+    }
+
+    @Nonnull
+    @Ethereal("this")
+    public IterableDocumentProvider<?> getDocuments() {
+      return documents;
+    }
+  }
+}
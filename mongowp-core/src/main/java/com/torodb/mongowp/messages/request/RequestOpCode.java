@@ -22,14 +22,15 @@ import java.util.Map;
  *
  */
 public enum RequestOpCode {
-  OP_MSG(1000),
   OP_UPDATE(2001),
   OP_INSERT(2002),
   RESERVED(2003),
   OP_QUERY(2004),
   OP_GET_MORE(2005),
   OP_DELETE(2006),
-  OP_KILL_CURSORS(2007);
+  OP_KILL_CURSORS(2007),
+  OP_COMPRESSED(2012),
+  OP_MSG(2013);
 
   private final int opCode;
 
@@ -55,6 +56,6 @@ public enum RequestOpCode {
   }
 
   public boolean canReply() {
-    return this.equals(OP_QUERY) || this.equals(OP_GET_MORE);
+    return this.equals(OP_QUERY) || this.equals(OP_GET_MORE) || this.equals(OP_MSG);
   }
 }
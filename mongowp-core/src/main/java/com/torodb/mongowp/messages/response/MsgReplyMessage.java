@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.messages.response;
+
+import com.torodb.mongowp.annotations.Ethereal;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.messages.request.BsonContext;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The reply to a {@link com.torodb.mongowp.messages.request.MsgMessage}, which is sent using the
+ * OP_MSG opcode with a single body section.
+ */
+public class MsgReplyMessage implements AutoCloseable {
+
+  private final int responseTo;
+  private final boolean moreToCome;
+  @Nonnull
+  @Ethereal("dataContext")
+  private final BsonDocument body;
+  @Nonnull
+  private final BsonContext dataContext;
+
+  public MsgReplyMessage(
+      @Nonnull BsonContext dataContext,
+      int responseTo,
+      boolean moreToCome,
+      @Nonnull @Ethereal("dataContext") BsonDocument body) {
+    this.dataContext = dataContext;
+    this.responseTo = responseTo;
+    this.moreToCome = moreToCome;
+    this.body = body;
+  }
+
+  public int getResponseTo() {
+    return responseTo;
+  }
+
+  /**
+   * @return true iff another reply to the same request will be sent after this one
+   */
+  public boolean isMoreToCome() {
+    return moreToCome;
+  }
+
+  @Nonnull
+  @Ethereal("this")
+  public BsonDocument getBody() {
+    return body;
+  }
+
+  @Override
+  public void close() throws Exception {
+    dataContext.close();
+  }
+
+  @Override
+  public String toString() {
+    //TODO: This must be changed to preserve privacy on logs
+    return "MsgReplyMessage{responseTo=" + responseTo + ", moreToCome=" + moreToCome + ", body="
+        + (dataContext.isValid() ? body : "<not available>") + '}';
+  }
+}
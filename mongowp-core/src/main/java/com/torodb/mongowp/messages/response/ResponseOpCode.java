@@ -19,7 +19,9 @@ package com.torodb.mongowp.messages.response;
  *
  */
 public enum ResponseOpCode {
-  OP_REPLY(1);
+  OP_REPLY(1),
+  OP_COMPRESSED(2012),
+  OP_MSG(2013);
 
   private final int opCode;
 
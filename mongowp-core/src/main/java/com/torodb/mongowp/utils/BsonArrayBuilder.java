@@ -18,6 +18,7 @@ package com.torodb.mongowp.utils;
 import static com.torodb.mongowp.bson.utils.DefaultBsonValues.NULL;
 import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newArray;
 import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newBoolean;
+import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newDateTime;
 import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newDouble;
 import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newInt;
 import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newLong;
@@ -35,7 +36,6 @@ import com.torodb.mongowp.bson.BsonObjectId;
 import com.torodb.mongowp.bson.BsonValue;
 import com.torodb.mongowp.bson.annotations.NotMutable;
 import com.torodb.mongowp.bson.impl.InstantBsonDateTime;
-import com.torodb.mongowp.bson.impl.LongBsonDateTime;
 import com.torodb.mongowp.fields.DocField;
 import com.torodb.mongowp.fields.HostAndPortField;
 import com.torodb.mongowp.fields.ObjectIdField;
@@ -238,7 +238,7 @@ public class BsonArrayBuilder {
    */
   public BsonArrayBuilder addInstant(long value) {
     Preconditions.checkState(!built);
-    list.add(new LongBsonDateTime(value));
+    list.add(newDateTime(value));
     return this;
   }
 
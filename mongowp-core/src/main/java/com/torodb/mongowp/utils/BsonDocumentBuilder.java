@@ -19,6 +19,7 @@ package com.torodb.mongowp.utils;
 import static com.torodb.mongowp.bson.utils.DefaultBsonValues.NULL;
 import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newArray;
 import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newBoolean;
+import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newDateTime;
 import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newDocument;
 import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newDouble;
 import static com.torodb.mongowp.bson.utils.DefaultBsonValues.newInt;
@@ -38,7 +39,7 @@ import com.torodb.mongowp.bson.BsonObjectId;
 import com.torodb.mongowp.bson.BsonTimestamp;
 import com.torodb.mongowp.bson.BsonValue;
 import com.torodb.mongowp.bson.impl.InstantBsonDateTime;
-import com.torodb.mongowp.bson.impl.LongBsonDateTime;
+import com.torodb.mongowp.bson.impl.OverlayBsonDocument;
 import com.torodb.mongowp.fields.ArrayField;
 import com.torodb.mongowp.fields.BooleanField;
 import com.torodb.mongowp.fields.BsonField;
@@ -63,35 +64,58 @@ import javax.annotation.Nullable;
 public class BsonDocumentBuilder {
 
   private final LinkedHashMap<String, BsonValue<?>> map;
+  /**
+   * Used instead of the map when the builder is created from a document, so its entries are not
+   * copied.
+   */
+  @Nullable
+  private final OverlayBsonDocument.Builder overlay;
   private boolean built;
 
   public BsonDocumentBuilder() {
     this.map = new LinkedHashMap<>();
+    this.overlay = null;
     built = false;
   }
 
   public BsonDocumentBuilder(int initialCapacity) {
     this.map = new LinkedHashMap<>(initialCapacity);
+    this.overlay = null;
     built = false;
   }
 
+  /**
+   * Creates a builder whose initial entries are the ones of the given document.
+   *
+   * The entries are not copied: the built document is a view of the given one plus the entries
+   * that have been appended or replaced.
+   */
   public BsonDocumentBuilder(BsonDocument doc) {
-    this.map = new LinkedHashMap<>(doc.size());
-    for (Entry<?> entry : doc) {
-      map.put(entry.getKey(), entry.getValue());
-    }
+    this.map = null;
+    this.overlay = OverlayBsonDocument.builder(doc);
     built = false;
   }
 
+  private void put(String fieldName, BsonValue<?> value) {
+    if (overlay != null) {
+      overlay.put(fieldName, value);
+    } else {
+      map.put(fieldName, value);
+    }
+  }
+
   public boolean containsField(@Nonnull BsonField<?, ?> field) {
     Preconditions.checkState(!built);
+    if (overlay != null) {
+      return overlay.containsKey(field.getFieldName());
+    }
     return map.containsKey(field.getFieldName());
   }
 
   public BsonDocumentBuilder copy(@Nonnull BsonDocument otherDoc) {
     Preconditions.checkState(!built);
     for (Entry<?> entrySet : otherDoc) {
-      map.put(entrySet.getKey(), entrySet.getValue());
+      put(entrySet.getKey(), entrySet.getValue());
     }
     return this;
   }
@@ -99,10 +123,10 @@ public class BsonDocumentBuilder {
   public BsonDocumentBuilder appendUnsafe(String fieldName, @Nullable BsonValue value) {
     Preconditions.checkState(!built);
     if (value == null) {
-      map.put(fieldName, NULL);
+      put(fieldName, NULL);
       return this;
     }
-    map.put(fieldName, value);
+    put(fieldName, value);
     return this;
   }
 
@@ -110,10 +134,10 @@ public class BsonDocumentBuilder {
       @Nullable BsonValue<JavaTypeT> value) {
     Preconditions.checkState(!built);
     if (value == null) {
-      map.put(field.getFieldName(), NULL);
+      put(field.getFieldName(), NULL);
       return this;
     }
-    map.put(field.getFieldName(), value);
+    put(field.getFieldName(), value);
     return this;
   }
 
@@ -123,25 +147,25 @@ public class BsonDocumentBuilder {
     if (value == null) {
       return appendNull(field);
     }
-    map.put(field.getFieldName(), translator.apply(value));
+    put(field.getFieldName(), translator.apply(value));
     return this;
   }
 
   public BsonDocumentBuilder append(BooleanField field, boolean value) {
     Preconditions.checkState(!built);
-    map.put(field.getFieldName(), newBoolean(value));
+    put(field.getFieldName(), newBoolean(value));
     return this;
   }
 
   public BsonDocumentBuilder append(IntField field, int value) {
     Preconditions.checkState(!built);
-    map.put(field.getFieldName(), newInt(value));
+    put(field.getFieldName(), newInt(value));
     return this;
   }
 
   public BsonDocumentBuilder append(LongField field, long value) {
     Preconditions.checkState(!built);
-    map.put(field.getFieldName(), newLong(value));
+    put(field.getFieldName(), newLong(value));
     return this;
   }
 
@@ -150,13 +174,13 @@ public class BsonDocumentBuilder {
     if (value == null) {
       return appendNull(field);
     }
-    map.put(field.getFieldName(), newString(value));
+    put(field.getFieldName(), newString(value));
     return this;
   }
 
   public BsonDocumentBuilder append(DoubleField field, double value) {
     Preconditions.checkState(!built);
-    map.put(field.getFieldName(), newDouble(value));
+    put(field.getFieldName(), newDouble(value));
     return this;
   }
 
@@ -165,7 +189,7 @@ public class BsonDocumentBuilder {
     if (value == null) {
       return appendNull(field);
     }
-    map.put(field.getFieldName(), new InstantBsonDateTime(value));
+    put(field.getFieldName(), new InstantBsonDateTime(value));
     return this;
   }
 
@@ -174,7 +198,7 @@ public class BsonDocumentBuilder {
     if (value == null) {
       return appendNull(field);
     }
-    map.put(
+    put(
         field.getFieldName(),
         value.getTimestamp()
     );
@@ -186,7 +210,7 @@ public class BsonDocumentBuilder {
     if (value == null) {
       return appendNull(field);
     }
-    map.put(
+    put(
         field.getFieldName(),
         value
     );
@@ -202,7 +226,7 @@ public class BsonDocumentBuilder {
     if (value == null) {
       return appendNull(field);
     }
-    map.put(field.getFieldName(), value);
+    put(field.getFieldName(), value);
     return this;
   }
 
@@ -211,7 +235,7 @@ public class BsonDocumentBuilder {
     if (value == null) {
       return appendNull(field);
     }
-    map.put(field.getFieldName(), value);
+    put(field.getFieldName(), value);
     return this;
   }
 
@@ -220,7 +244,7 @@ public class BsonDocumentBuilder {
     if (value == null) {
       return appendNull(field);
     }
-    map.put(field.getFieldName(), value.build());
+    put(field.getFieldName(), value.build());
     return this;
   }
 
@@ -229,7 +253,7 @@ public class BsonDocumentBuilder {
     if (value == null) {
       return appendNull(field);
     }
-    map.put(field.getFieldName(), newString(value.toString()));
+    put(field.getFieldName(), newString(value.toString()));
     return this;
   }
 
@@ -238,7 +262,7 @@ public class BsonDocumentBuilder {
     if (value == null) {
       return appendNull(field);
     }
-    map.put(field.getFieldName(), newString(value));
+    put(field.getFieldName(), newString(value));
     return this;
   }
 
@@ -247,22 +271,22 @@ public class BsonDocumentBuilder {
     if (value == null) {
       return appendNull(field);
     }
-    map.put(field.getFieldName(), value);
+    put(field.getFieldName(), value);
     return this;
   }
 
   public BsonDocumentBuilder appendNumber(NumberField<?> field, int value) {
     Preconditions.checkState(!built);
-    map.put(field.getFieldName(), newInt(value));
+    put(field.getFieldName(), newInt(value));
     return this;
   }
 
   public BsonDocumentBuilder appendNumber(NumberField<?> field, long value) {
     Preconditions.checkState(!built);
     if (value < Integer.MAX_VALUE && value > Integer.MIN_VALUE) {
-      map.put(field.getFieldName(), newInt((int) value));
+      put(field.getFieldName(), newInt((int) value));
     } else {
-      map.put(field.getFieldName(), newLong(value));
+      put(field.getFieldName(), newLong(value));
     }
     return this;
   }
@@ -272,7 +296,7 @@ public class BsonDocumentBuilder {
     if (value == null) {
       return appendNull(field);
     }
-    map.put(field.getFieldName(), toBsonNumber(value));
+    put(field.getFieldName(), toBsonNumber(value));
     return this;
   }
 
@@ -302,19 +326,22 @@ public class BsonDocumentBuilder {
    */
   public BsonDocumentBuilder appendInstant(DateTimeField field, long value) {
     Preconditions.checkState(!built);
-    map.put(field.getFieldName(), new LongBsonDateTime(value));
+    put(field.getFieldName(), newDateTime(value));
     return this;
   }
 
   public BsonDocumentBuilder appendNull(BsonField<?, ?> field) {
     Preconditions.checkState(!built);
-    map.put(field.getFieldName(), NULL);
+    put(field.getFieldName(), NULL);
     return this;
   }
 
   @Material
   public BsonDocument build() {
     built = true;
+    if (overlay != null) {
+      return overlay.build();
+    }
     return newDocument(map);
   }
 
@@ -15,9 +15,13 @@
  */
 package com.torodb.mongowp.server.api;
 
+import static com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType.OFFHEAP_VALUES;
+
+import com.torodb.mongowp.ErrorCode;
 import com.torodb.mongowp.MongoConstants;
 import com.torodb.mongowp.Status;
 import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.BsonValue;
 import com.torodb.mongowp.bson.utils.DefaultBsonValues;
 import com.torodb.mongowp.commands.Command;
 import com.torodb.mongowp.commands.CommandLibrary.LibraryEntry;
@@ -32,6 +36,7 @@ import com.torodb.mongowp.exceptions.CommandNotFoundException;
 import com.torodb.mongowp.exceptions.FailedToParseException;
 import com.torodb.mongowp.exceptions.MongoException;
 import com.torodb.mongowp.exceptions.UnauthorizedException;
+import com.torodb.mongowp.fields.DocField;
 import com.torodb.mongowp.fields.DoubleField;
 import com.torodb.mongowp.fields.IntField;
 import com.torodb.mongowp.fields.StringField;
@@ -39,17 +44,26 @@ import com.torodb.mongowp.messages.request.DeleteMessage;
 import com.torodb.mongowp.messages.request.GetMoreMessage;
 import com.torodb.mongowp.messages.request.InsertMessage;
 import com.torodb.mongowp.messages.request.KillCursorsMessage;
+import com.torodb.mongowp.messages.request.MsgMessage;
+import com.torodb.mongowp.messages.request.MsgMessage.DocumentSequence;
 import com.torodb.mongowp.messages.request.QueryMessage;
 import com.torodb.mongowp.messages.request.QueryMessage.QueryOptions;
+import com.torodb.mongowp.messages.request.RequestBaseMessage;
+import com.torodb.mongowp.messages.request.RequestMessage;
 import com.torodb.mongowp.messages.request.RequestOpCode;
 import com.torodb.mongowp.messages.request.UpdateMessage;
 import com.torodb.mongowp.messages.response.ReplyMessage;
 import com.torodb.mongowp.server.callback.MessageReplier;
+import com.torodb.mongowp.server.callback.ReplyStream;
 import com.torodb.mongowp.server.callback.RequestProcessor;
 import com.torodb.mongowp.utils.BsonDocumentBuilder;
+import com.torodb.mongowp.utils.BsonReaderTool;
 import io.netty.util.AttributeKey;
 import io.netty.util.AttributeMap;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
 
@@ -66,6 +80,9 @@ public class RequestProcessorAdaptor<C extends Connection> implements RequestPro
   public static final IntField ERR_CODE = new IntField("code");
   public static final StringField ERR_MSG_FIELD = new StringField("errmsg");
   public static final DoubleField OK_FIELD = new DoubleField("ok");
+  public static final DocField READ_PREFERENCE_FIELD = new DocField("$readPreference");
+  public static final StringField READ_PREFERENCE_MODE_FIELD = new StringField("mode");
+  private static final String READ_PREFERENCE_PRIMARY_MODE = "primary";
 
   private final SafeRequestProcessor<C> safeRequestProcessor;
   private final ErrorHandler errorHandler;
@@ -142,28 +159,50 @@ public class RequestProcessorAdaptor<C extends Connection> implements RequestPro
         requestBuilder.setAutoclose(true);
       }
 
+      Request req = new Request(
+          queryMessage.getDatabase(),
+          new ExternalClientInfo(queryMessage.getClientAddress(), queryMessage.getClientPort()),
+          requestBuilder.isSlaveOk(),
+          null //Set the requested timeout
+      );
       ReplyMessage reply = safeRequestProcessor.query(
           connection,
-          new Request(
-              queryMessage.getDatabase(),
-              new ExternalClientInfo(queryMessage.getClientAddress(), queryMessage.getClientPort()),
-              requestBuilder.isSlaveOk(),
-              null //Set the requested timeout
-          ),
+          req,
           messageReplier.getRequestId(),
           requestBuilder.build()
       );
-      messageReplier.replyMessage(reply);
+      if (queryOptions.isExhaust() && !isLastReply(reply)) {
+        messageReplier.replyStream(reply, new ExhaustReplyStream(connection, req,
+            queryMessage, messageReplier.getRequestId(), reply.getCursorId()));
+      } else {
+        messageReplier.replyMessage(reply);
+      }
     }
 
   }
 
-  @SuppressWarnings("unchecked")
   private void executeCommand(
       C connection,
       QueryMessage queryMessage,
       MessageReplier messageReplier) throws MongoException {
-    BsonDocument document = queryMessage.getQuery();
+    BsonDocument bson = executeCommand(
+        connection,
+        queryMessage.getDatabase(),
+        new ExternalClientInfo(queryMessage.getClientAddress(), queryMessage.getClientPort()),
+        queryMessage.getQueryOptions().isSlaveOk(),
+        queryMessage.getQuery()
+    );
+
+    messageReplier.replyMessageNoCursor(bson);
+  }
+
+  @SuppressWarnings("unchecked")
+  private BsonDocument executeCommand(
+      C connection,
+      String database,
+      ExternalClientInfo clientInfo,
+      boolean slaveOk,
+      BsonDocument document) throws MongoException {
     LibraryEntry libraryEntry = safeRequestProcessor.getCommandsLibrary().find(document);
     Command command;
     if (libraryEntry == null) {
@@ -180,7 +219,7 @@ public class RequestProcessorAdaptor<C extends Connection> implements RequestPro
     }
 
     if (command.isAdminOnly()) {
-      if (!QUERY_MESSAGE_ADMIN_DATABASE.equals(queryMessage.getDatabase())) {
+      if (!QUERY_MESSAGE_ADMIN_DATABASE.equals(database)) {
         throw new UnauthorizedException(
             command.getCommandName() + "may only be run "
             + "against the admin database."
@@ -191,9 +230,9 @@ public class RequestProcessorAdaptor<C extends Connection> implements RequestPro
     Object arg = command.unmarshallArg(document, libraryEntry.getAlias());
 
     Request request = new Request(
-        queryMessage.getDatabase(),
-        new ExternalClientInfo(queryMessage.getClientAddress(), queryMessage.getClientPort()),
-        queryMessage.getQueryOptions().isSlaveOk(),
+        database,
+        clientInfo,
+        slaveOk,
         null //Set the requested timeout
     );
     Status<?> reply = safeRequestProcessor.execute(request, command, arg, connection);
@@ -215,14 +254,75 @@ public class RequestProcessorAdaptor<C extends Connection> implements RequestPro
         throw new FailedToParseException(ex.getLocalizedMessage());
       }
     } else {
-      bson = new BsonDocumentBuilder()
-          .append(ERR_CODE, reply.getErrorCode().getErrorCode())
-          .append(ERR_MSG_FIELD, reply.getErrorMsg())
-          .append(OK_FIELD, MongoConstants.KO)
-          .build();
+      bson = createErrorDocument(reply.getErrorCode(), reply.getErrorMsg());
     }
 
-    messageReplier.replyMessageNoCursor(bson);
+    return bson;
+  }
+
+  private BsonDocument createErrorDocument(ErrorCode errorCode, String errorMsg) {
+    return new BsonDocumentBuilder()
+        .append(ERR_CODE, errorCode.getErrorCode())
+        .append(ERR_MSG_FIELD, errorMsg)
+        .append(OK_FIELD, MongoConstants.KO)
+        .build();
+  }
+
+  @Override
+  public void msg(MsgMessage msgMessage, MessageReplier messageReplier) {
+    C connection = getConnection(messageReplier);
+
+    BsonDocument bson;
+    try {
+      BsonDocument body = msgMessage.getBody();
+      bson = executeCommand(
+          connection,
+          msgMessage.getDatabase(),
+          new ExternalClientInfo(msgMessage.getClientAddress(), msgMessage.getClientPort()),
+          isSlaveOk(body),
+          getCommandDocument(msgMessage)
+      );
+    } catch (MongoException ex) {
+      bson = createErrorDocument(ex.getErrorCode(), ex.getLocalizedMessage());
+    }
+
+    if (!msgMessage.isMoreToCome()) {
+      messageReplier.replyMsg(bson);
+    }
+  }
+
+  /**
+   * OP_MSG does not have a slaveOk flag. Instead, the read preference is sent on the
+   * {@code $readPreference} field of the body.
+   */
+  private boolean isSlaveOk(BsonDocument body) throws MongoException {
+    BsonDocument readPreference = BsonReaderTool.getDocument(body, READ_PREFERENCE_FIELD, null);
+    if (readPreference == null) {
+      return false;
+    }
+    String mode = BsonReaderTool.getString(readPreference, READ_PREFERENCE_MODE_FIELD,
+        READ_PREFERENCE_PRIMARY_MODE);
+    return !READ_PREFERENCE_PRIMARY_MODE.equals(mode);
+  }
+
+  /**
+   * Returns the document that represents the command sent on the given OP_MSG, which is the body
+   * plus one array field for each document sequence.
+   */
+  private BsonDocument getCommandDocument(MsgMessage msgMessage) {
+    List<DocumentSequence> documentSequences = msgMessage.getDocumentSequences();
+    if (documentSequences.isEmpty()) {
+      return msgMessage.getBody();
+    }
+    BsonDocumentBuilder builder = new BsonDocumentBuilder(msgMessage.getBody());
+    for (DocumentSequence documentSequence : documentSequences) {
+      List<BsonValue<?>> docs = new ArrayList<>();
+      for (BsonDocument doc : documentSequence.getDocuments().getIterable(OFFHEAP_VALUES)) {
+        docs.add(doc);
+      }
+      builder.appendUnsafe(documentSequence.getIdentifier(), DefaultBsonValues.newArray(docs));
+    }
+    return builder.build();
   }
 
   @Override
@@ -244,6 +344,10 @@ public class RequestProcessorAdaptor<C extends Connection> implements RequestPro
     }
   }
 
+  private static boolean isLastReply(ReplyMessage reply) {
+    return reply.getCursorId() == 0 || reply.isCursorNotFound() || reply.isQueryFailure();
+  }
+
   @Override
   public void killCursors(KillCursorsMessage killCursorsMessage, MessageReplier messageReplier) {
     C connection = getConnection(messageReplier);
@@ -309,9 +413,26 @@ public class RequestProcessorAdaptor<C extends Connection> implements RequestPro
     }
   }
 
+  @Override
+  public boolean handleError(RequestMessage requestMessage, MessageReplier messageReplier,
+      Throwable throwable) {
+    if (requestMessage.getOpCode() == RequestOpCode.OP_MSG) {
+      assert requestMessage instanceof MsgMessage;
+      //moreToCome requests do not expect a reply, so sending one would desynchronize the client
+      handleMsgError(!((MsgMessage) requestMessage).isMoreToCome(), messageReplier, throwable);
+      return true;
+    }
+    return handleError(requestMessage.getOpCode(), messageReplier, throwable);
+  }
+
   @Override
   public boolean handleError(RequestOpCode requestOpCode, MessageReplier messageReplier,
       Throwable throwable) {
+    if (requestOpCode == RequestOpCode.OP_MSG) {
+      handleMsgError(true, messageReplier, throwable);
+      return true;
+    }
+
     Connection connection = getConnection(messageReplier);
 
     ReplyMessage handleMongodbException;
@@ -334,4 +455,83 @@ public class RequestProcessorAdaptor<C extends Connection> implements RequestPro
     }
     return true;
   }
+
+  private void handleMsgError(boolean canReply, MessageReplier messageReplier,
+      Throwable throwable) {
+    Connection connection = getConnection(messageReplier);
+    ErrorCode errorCode;
+    if (throwable instanceof MongoException) {
+      errorHandler.handleMongodbException(connection, messageReplier.getRequestId(), false,
+          (MongoException) throwable);
+      errorCode = ((MongoException) throwable).getErrorCode();
+    } else {
+      errorHandler.handleUnexpectedError(connection, messageReplier.getRequestId(), false,
+          throwable);
+      errorCode = ErrorCode.UNKNOWN_ERROR;
+    }
+    if (canReply) {
+      messageReplier.replyMsg(createErrorDocument(errorCode, throwable.getLocalizedMessage()));
+    }
+  }
+
+  /**
+   * Streams the batches of an exhaust cursor by executing the equivalent getMore requests on the
+   * backend until the cursor is exhausted.
+   */
+  private class ExhaustReplyStream implements ReplyStream {
+
+    private final C connection;
+    private final Request req;
+    private final RequestBaseMessage baseMessage;
+    private final String database;
+    private final String collection;
+    private final int numberToReturn;
+    private final int requestId;
+    private final long cursorId;
+    private boolean finished;
+
+    public ExhaustReplyStream(C connection, Request req, QueryMessage queryMessage, int requestId,
+        long cursorId) {
+      this.connection = connection;
+      this.req = req;
+      this.baseMessage = queryMessage.getBaseMessage();
+      this.database = queryMessage.getDatabase();
+      this.collection = queryMessage.getCollection();
+      this.numberToReturn = Math.max(0, queryMessage.getNumberToReturn());
+      this.requestId = requestId;
+      this.cursorId = cursorId;
+    }
+
+    @Override
+    public ReplyMessage next(int responseTo) {
+      if (finished) {
+        return null;
+      }
+      GetMoreMessage getMoreMessage = new GetMoreMessage(baseMessage, database, collection,
+          numberToReturn, cursorId);
+      try {
+        ReplyMessage reply = safeRequestProcessor.getMore(connection, req, responseTo,
+            getMoreMessage);
+        finished = isLastReply(reply);
+        return reply;
+      } catch (MongoException ex) {
+        finished = true;
+        return errorHandler.handleMongodbException(connection, responseTo, true, ex);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      try {
+        safeRequestProcessor.killCursors(connection, req,
+            new KillCursorsMessage(baseMessage, 1, new long[] {cursorId}));
+      } catch (MongoException ex) {
+        errorHandler.handleMongodbException(connection, requestId, false, ex);
+      }
+    }
+  }
 }
@@ -18,6 +18,7 @@ package com.torodb.mongowp.server.callback;
 import com.torodb.mongowp.bson.BsonDocument;
 import com.torodb.mongowp.messages.request.BsonContext;
 import com.torodb.mongowp.messages.request.EmptyBsonContext;
+import com.torodb.mongowp.messages.response.MsgReplyMessage;
 import com.torodb.mongowp.messages.response.ReplyMessage;
 import com.torodb.mongowp.messages.utils.IterableDocumentProvider;
 import io.netty.util.AttributeMap;
@@ -34,6 +35,48 @@ public abstract class MessageReplier {
 
   public abstract void replyMessage(ReplyMessage replyMessage);
 
+  /**
+   * Replies to an OP_MSG request.
+   *
+   * Repliers that predate OP_MSG support do not override this method, so by default it throws an
+   * {@link UnsupportedOperationException}.
+   */
+  public void replyMessage(MsgReplyMessage msgReplyMessage) {
+    throw new UnsupportedOperationException(getClass().getName() + " does not support OP_MSG "
+        + "replies. Override replyMessage(MsgReplyMessage) to support them");
+  }
+
+  /**
+   * Replies with the given reply and then with all the replies returned by the stream.
+   *
+   * Implementations should only ask the stream for a new reply when the previous ones have been
+   * sent, so a client that does not read fast enough does not cause unbounded buffering. The
+   * stream is closed if it cannot be completely consumed.
+   *
+   * Each reply must answer to the requestId assigned to the previous one. Repliers that do not know
+   * the requestId assigned to their replies, like this default implementation, use
+   * {@link #getRequestId()} instead.
+   */
+  public void replyStream(@Nonnull ReplyMessage first, @Nonnull ReplyStream stream) {
+    replyMessage(first);
+    boolean consumed = false;
+    try {
+      ReplyMessage next;
+      while ((next = stream.next(getRequestId())) != null) {
+        replyMessage(next);
+      }
+      consumed = true;
+    } finally {
+      if (!consumed) {
+        stream.close();
+      }
+    }
+  }
+
+  public void replyMsg(@Nonnull BsonDocument body) {
+    replyMessage(new MsgReplyMessage(EmptyBsonContext.getInstance(), getRequestId(), false, body));
+  }
+
   public void replyMessage(long cursorId, int startingFrom, @Nonnull BsonDocument document) {
     replyMessageNoFlags(EmptyBsonContext.getInstance(), startingFrom, startingFrom,
         IterableDocumentProvider.of(Collections.singleton(document)));
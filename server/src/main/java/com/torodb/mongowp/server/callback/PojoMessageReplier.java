@@ -15,6 +15,7 @@
  */
 package com.torodb.mongowp.server.callback;
 
+import com.torodb.mongowp.messages.response.MsgReplyMessage;
 import com.torodb.mongowp.messages.response.ReplyMessage;
 import io.netty.util.AttributeMap;
 
@@ -26,6 +27,7 @@ public class PojoMessageReplier extends MessageReplier {
   private final int requestId;
   private final AttributeMap attributeMap;
   private ReplyMessage reply;
+  private MsgReplyMessage msgReply;
 
   public PojoMessageReplier(int requestId, AttributeMap attributeMap) {
     this.requestId = requestId;
@@ -36,11 +38,20 @@ public class PojoMessageReplier extends MessageReplier {
     return reply;
   }
 
+  public MsgReplyMessage getMsgReply() {
+    return msgReply;
+  }
+
   @Override
   public void replyMessage(ReplyMessage replyMessage) {
     reply = replyMessage;
   }
 
+  @Override
+  public void replyMessage(MsgReplyMessage msgReplyMessage) {
+    msgReply = msgReplyMessage;
+  }
+
   @Override
   public int getRequestId() {
     return requestId;
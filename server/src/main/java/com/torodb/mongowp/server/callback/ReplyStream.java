@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.callback;
+
+import com.torodb.mongowp.messages.response.ReplyMessage;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A source of consecutive replies to the same request, like the batches of an exhaust cursor.
+ *
+ * @see MessageReplier#replyStream(ReplyMessage, ReplyStream)
+ */
+@NotThreadSafe
+public interface ReplyStream extends AutoCloseable {
+
+  /**
+   * Returns the next reply or null if there are no more replies.
+   *
+   * Errors must be returned as replies that finish the stream.
+   *
+   * @param responseTo the requestId of the previous reply sent to the client, which must be used as
+   *                   the responseTo of the returned reply
+   */
+  @Nullable
+  public ReplyMessage next(int responseTo);
+
+  /**
+   * Releases the resources used by the stream when it is not going to be completely consumed, for
+   * example because the connection has been closed.
+   */
+  @Override
+  public void close();
+}
@@ -19,7 +19,9 @@ import com.torodb.mongowp.messages.request.DeleteMessage;
 import com.torodb.mongowp.messages.request.GetMoreMessage;
 import com.torodb.mongowp.messages.request.InsertMessage;
 import com.torodb.mongowp.messages.request.KillCursorsMessage;
+import com.torodb.mongowp.messages.request.MsgMessage;
 import com.torodb.mongowp.messages.request.QueryMessage;
+import com.torodb.mongowp.messages.request.RequestMessage;
 import com.torodb.mongowp.messages.request.RequestOpCode;
 import com.torodb.mongowp.messages.request.UpdateMessage;
 import io.netty.util.AttributeMap;
@@ -50,6 +52,21 @@ public interface RequestProcessor {
   public void delete(@Nonnull DeleteMessage deleteMessage, @Nonnull MessageReplier messageReplier)
       throws Exception;
 
+  public void msg(@Nonnull MsgMessage msgMessage, @Nonnull MessageReplier messageReplier)
+      throws Exception;
+
   public boolean handleError(@Nonnull RequestOpCode requestOpCode,
       @Nonnull MessageReplier messageReplier, @Nonnull Throwable throwable) throws Exception;
+
+  /**
+   * Handles an error thrown while the given request was processed.
+   *
+   * Unlike {@link #handleError(RequestOpCode, MessageReplier, Throwable)}, implementations can use
+   * the request itself to decide whether the client expects a reply. By default this method
+   * delegates on the former using the op code of the request.
+   */
+  public default boolean handleError(@Nonnull RequestMessage requestMessage,
+      @Nonnull MessageReplier messageReplier, @Nonnull Throwable throwable) throws Exception {
+    return handleError(requestMessage.getOpCode(), messageReplier, throwable);
+  }
 }
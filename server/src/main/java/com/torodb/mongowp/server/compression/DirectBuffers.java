@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.compression;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Utility methods used by compressors whose native libraries can only work with direct buffers.
+ *
+ * When the given buffers are already direct and backed by a single NIO buffer (as the pooled
+ * buffers the server allocates are), they are used as they are. Otherwise a temporal direct copy is
+ * created, which must be released with {@link #releaseCopy(ByteBuf, ByteBuf)}.
+ */
+final class DirectBuffers {
+
+  private DirectBuffers() {
+  }
+
+  private static boolean isUsable(ByteBuf buf) {
+    return buf.isDirect() && buf.nioBufferCount() == 1;
+  }
+
+  /**
+   * Returns a direct buffer whose readable bytes are the readable bytes of the given one.
+   *
+   * The indexes of the given buffer are not modified.
+   */
+  static ByteBuf readable(ByteBuf source) {
+    if (isUsable(source)) {
+      return source;
+    }
+    int length = source.readableBytes();
+    ByteBuf copy = source.alloc().directBuffer(length);
+    copy.writeBytes(source, source.readerIndex(), length);
+    return copy;
+  }
+
+  /**
+   * Returns a direct buffer with at least {@code minWritableBytes} writable bytes whose content
+   * must be committed on the given target with {@link #commitWrite(ByteBuf, ByteBuf, int)}.
+   */
+  static ByteBuf writable(ByteBuf target, int minWritableBytes) {
+    target.ensureWritable(minWritableBytes);
+    if (isUsable(target)) {
+      return target;
+    }
+    return target.alloc().directBuffer(minWritableBytes);
+  }
+
+  static ByteBuffer readableNioBuffer(ByteBuf buf) {
+    return buf.nioBuffer(buf.readerIndex(), buf.readableBytes());
+  }
+
+  static ByteBuffer writableNioBuffer(ByteBuf buf) {
+    return buf.nioBuffer(buf.writerIndex(), buf.writableBytes());
+  }
+
+  /**
+   * Marks as written the given number of bytes that have been written on the writable version of
+   * the target.
+   */
+  static void commitWrite(ByteBuf writable, ByteBuf target, int written) {
+    if (writable == target) {
+      target.writerIndex(target.writerIndex() + written);
+    } else {
+      target.writeBytes(writable, writable.readerIndex(), written);
+    }
+  }
+
+  static void releaseCopy(ByteBuf direct, ByteBuf original) {
+    if (direct != original) {
+      direct.release();
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.compression;
+
+import com.torodb.mongowp.bson.netty.annotations.Loose;
+import com.torodb.mongowp.bson.netty.annotations.ModifiesIndexes;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A compression algorithm that can be used to compress the body of messages sent as OP_COMPRESSED.
+ */
+@ThreadSafe
+public interface MessageCompressor {
+
+  /**
+   * @return the name used to negotiate this compressor with the client
+   */
+  public String getName();
+
+  /**
+   * @return the id that identifies this compressor on OP_COMPRESSED messages
+   */
+  public byte getId();
+
+  /**
+   * @return the max number of bytes that the compressed version of a message of the given length
+   *         could use
+   */
+  public int getMaxCompressedLength(@Nonnegative int uncompressedLength);
+
+  /**
+   * Compresses all readable bytes of the source and writes them into the target.
+   */
+  public void compress(@Loose @ModifiesIndexes ByteBuf source,
+      @Loose @ModifiesIndexes ByteBuf target) throws IOException;
+
+  /**
+   * Decompresses all readable bytes of the source and writes them into the target.
+   *
+   * @param uncompressedLength the length of the message once it is decompressed, as announced by
+   *                           the client.
+   * @throws IOException if the source cannot be decompressed or its decompressed length is not the
+   *                     expected one
+   */
+  public void decompress(@Loose @ModifiesIndexes ByteBuf source,
+      @Loose @ModifiesIndexes ByteBuf target, @Nonnegative int uncompressedLength)
+      throws IOException;
+}
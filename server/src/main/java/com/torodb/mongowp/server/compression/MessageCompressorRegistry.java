@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.compression;
+
+import com.google.common.collect.ImmutableList;
+import com.torodb.mongowp.MongoServerConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+
+/**
+ * Stores the compressors that can be used on a server.
+ *
+ * Compression is negotiated on the {@code isMaster} command, which is implemented by the backend:
+ * the client sends the names of the compressors it supports on the {@code compression} field and
+ * the server must reply with the ones it also supports, as returned by {@link #getNames()}.
+ */
+@ThreadSafe
+public class MessageCompressorRegistry {
+
+  private static final Logger LOGGER = LogManager.getLogger(MessageCompressorRegistry.class);
+  private static final int MAX_COMPRESSOR_ID = 255;
+
+  private final Map<String, MessageCompressor> byName;
+  private final MessageCompressor[] byId = new MessageCompressor[MAX_COMPRESSOR_ID + 1];
+
+  @Inject
+  public MessageCompressorRegistry(MongoServerConfig config) {
+    byName = new LinkedHashMap<>();
+    for (String name : config.getCompressors()) {
+      MessageCompressor compressor = createCompressor(name);
+      if (compressor != null) {
+        register(compressor);
+      }
+    }
+  }
+
+  public MessageCompressorRegistry(List<MessageCompressor> compressors) {
+    byName = new LinkedHashMap<>();
+    for (MessageCompressor compressor : compressors) {
+      register(compressor);
+    }
+  }
+
+  private void register(MessageCompressor compressor) {
+    byName.put(compressor.getName(), compressor);
+    byId[compressor.getId() & 0xFF] = compressor;
+  }
+
+  @Nullable
+  private static MessageCompressor createCompressor(String name) {
+    switch (name) {
+      case NoopMessageCompressor.NAME:
+        return new NoopMessageCompressor();
+      case ZlibMessageCompressor.NAME:
+        return new ZlibMessageCompressor();
+      case SnappyMessageCompressor.NAME:
+        if (SnappyMessageCompressor.isAvailable()) {
+          return new SnappyMessageCompressor();
+        }
+        break;
+      case ZstdMessageCompressor.NAME:
+        if (ZstdMessageCompressor.isAvailable()) {
+          return new ZstdMessageCompressor();
+        }
+        break;
+      default:
+        LOGGER.warn("Ignoring unknown compressor {}", name);
+        return null;
+    }
+    LOGGER.info("Compressor {} is not available on the classpath and it will be ignored", name);
+    return null;
+  }
+
+  /**
+   * @return the compressor identified by the given id or null if there is no compressor with that
+   *         id
+   */
+  @Nullable
+  public MessageCompressor getById(byte id) {
+    return byId[id & 0xFF];
+  }
+
+  @Nullable
+  public MessageCompressor getByName(String name) {
+    return byName.get(name);
+  }
+
+  /**
+   * @return the names of the available compressors, in order of preference
+   */
+  public List<String> getNames() {
+    return ImmutableList.copyOf(byName.keySet());
+  }
+}
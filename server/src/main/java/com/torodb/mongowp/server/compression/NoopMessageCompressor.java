@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.compression;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ *
+ */
+public class NoopMessageCompressor implements MessageCompressor {
+
+  public static final String NAME = "noop";
+  public static final byte ID = 0;
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte getId() {
+    return ID;
+  }
+
+  @Override
+  public int getMaxCompressedLength(int uncompressedLength) {
+    return uncompressedLength;
+  }
+
+  @Override
+  public void compress(ByteBuf source, ByteBuf target) {
+    target.writeBytes(source);
+  }
+
+  @Override
+  public void decompress(ByteBuf source, ByteBuf target, int uncompressedLength)
+      throws IOException {
+    if (source.readableBytes() != uncompressedLength) {
+      throw new IOException("Expected " + uncompressedLength + " bytes but "
+          + source.readableBytes() + " were found");
+    }
+    target.writeBytes(source);
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.compression;
+
+import io.netty.buffer.ByteBuf;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A compressor that uses the raw snappy format.
+ *
+ * It requires the optional {@code snappy-java} dependency.
+ */
+public class SnappyMessageCompressor implements MessageCompressor {
+
+  public static final String NAME = "snappy";
+  public static final byte ID = 1;
+
+  /**
+   * @return true iff the snappy library can be used
+   */
+  public static boolean isAvailable() {
+    try {
+      Snappy.getNativeLibraryVersion();
+      return true;
+    } catch (LinkageError | RuntimeException ex) {
+      return false;
+    }
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte getId() {
+    return ID;
+  }
+
+  @Override
+  public int getMaxCompressedLength(int uncompressedLength) {
+    return Snappy.maxCompressedLength(uncompressedLength);
+  }
+
+  @Override
+  public void compress(ByteBuf source, ByteBuf target) throws IOException {
+    ByteBuf directSource = DirectBuffers.readable(source);
+    ByteBuf directTarget = DirectBuffers.writable(
+        target, getMaxCompressedLength(source.readableBytes()));
+    try {
+      int written = Snappy.compress(
+          DirectBuffers.readableNioBuffer(directSource),
+          DirectBuffers.writableNioBuffer(directTarget));
+      DirectBuffers.commitWrite(directTarget, target, written);
+      source.skipBytes(source.readableBytes());
+    } finally {
+      DirectBuffers.releaseCopy(directSource, source);
+      DirectBuffers.releaseCopy(directTarget, target);
+    }
+  }
+
+  @Override
+  public void decompress(ByteBuf source, ByteBuf target, int uncompressedLength)
+      throws IOException {
+    ByteBuf directSource = DirectBuffers.readable(source);
+    ByteBuf directTarget = null;
+    try {
+      ByteBuffer sourceNio = DirectBuffers.readableNioBuffer(directSource);
+      int length = Snappy.uncompressedLength(sourceNio);
+      if (length != uncompressedLength) {
+        throw new IOException("Expected " + uncompressedLength + " decompressed bytes but "
+            + length + " were found");
+      }
+      directTarget = DirectBuffers.writable(target, uncompressedLength);
+      int written = Snappy.uncompress(sourceNio, DirectBuffers.writableNioBuffer(directTarget));
+      DirectBuffers.commitWrite(directTarget, target, written);
+      source.skipBytes(source.readableBytes());
+    } finally {
+      DirectBuffers.releaseCopy(directSource, source);
+      if (directTarget != null) {
+        DirectBuffers.releaseCopy(directTarget, target);
+      }
+    }
+  }
+}
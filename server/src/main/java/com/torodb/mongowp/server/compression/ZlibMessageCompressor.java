@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.compression;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compressor that uses the zlib format, as implemented by {@link Deflater} and {@link Inflater}.
+ */
+@SuppressFBWarnings(
+    value = "RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT",
+    justification = "It seems FindBugs considers ByteBuf methods are not side effect")
+public class ZlibMessageCompressor implements MessageCompressor {
+
+  public static final String NAME = "zlib";
+  public static final byte ID = 2;
+  private static final int CHUNK_SIZE = 8 * 1024;
+
+  private final int level;
+
+  public ZlibMessageCompressor() {
+    this(Deflater.DEFAULT_COMPRESSION);
+  }
+
+  public ZlibMessageCompressor(int level) {
+    this.level = level;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte getId() {
+    return ID;
+  }
+
+  @Override
+  public int getMaxCompressedLength(int uncompressedLength) {
+    //the same bound used by zlib's compressBound
+    return uncompressedLength + (uncompressedLength >> 12) + (uncompressedLength >> 14)
+        + (uncompressedLength >> 25) + 13;
+  }
+
+  @Override
+  public void compress(ByteBuf source, ByteBuf target) {
+    Deflater deflater = new Deflater(level);
+    try {
+      deflater.setInput(toArray(source));
+      deflater.finish();
+      byte[] chunk = new byte[CHUNK_SIZE];
+      while (!deflater.finished()) {
+        int written = deflater.deflate(chunk);
+        target.writeBytes(chunk, 0, written);
+      }
+    } finally {
+      deflater.end();
+    }
+  }
+
+  @Override
+  public void decompress(ByteBuf source, ByteBuf target, int uncompressedLength)
+      throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(toArray(source));
+      byte[] chunk = new byte[Math.min(CHUNK_SIZE, Math.max(uncompressedLength, 1))];
+      int total = 0;
+      while (!inflater.finished()) {
+        int read = inflater.inflate(chunk);
+        if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Truncated zlib message");
+        }
+        total += read;
+        if (total > uncompressedLength) {
+          throw new IOException("Decompressed message is bigger than the " + uncompressedLength
+              + " bytes announced");
+        }
+        target.writeBytes(chunk, 0, read);
+      }
+      if (total != uncompressedLength) {
+        throw new IOException("Expected " + uncompressedLength + " decompressed bytes but "
+            + total + " were found");
+      }
+    } catch (DataFormatException ex) {
+      throw new IOException("Invalid zlib message", ex);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static byte[] toArray(ByteBuf source) {
+    byte[] array = new byte[source.readableBytes()];
+    source.readBytes(array);
+    return array;
+  }
+}
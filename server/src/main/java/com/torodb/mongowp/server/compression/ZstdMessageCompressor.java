@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.compression;
+
+import com.github.luben.zstd.Zstd;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ * A compressor that uses the zstd format.
+ *
+ * It requires the optional {@code zstd-jni} dependency.
+ */
+public class ZstdMessageCompressor implements MessageCompressor {
+
+  public static final String NAME = "zstd";
+  public static final byte ID = 3;
+  public static final int DEFAULT_LEVEL = 6;
+
+  private final int level;
+
+  public ZstdMessageCompressor() {
+    this(DEFAULT_LEVEL);
+  }
+
+  public ZstdMessageCompressor(int level) {
+    this.level = level;
+  }
+
+  /**
+   * @return true iff the zstd library can be used
+   */
+  public static boolean isAvailable() {
+    try {
+      Zstd.compressBound(0);
+      return true;
+    } catch (LinkageError | RuntimeException ex) {
+      return false;
+    }
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte getId() {
+    return ID;
+  }
+
+  @Override
+  public int getMaxCompressedLength(int uncompressedLength) {
+    return (int) Zstd.compressBound(uncompressedLength);
+  }
+
+  @Override
+  public void compress(ByteBuf source, ByteBuf target) throws IOException {
+    ByteBuf directSource = DirectBuffers.readable(source);
+    ByteBuf directTarget = DirectBuffers.writable(
+        target, getMaxCompressedLength(source.readableBytes()));
+    try {
+      long result = Zstd.compressDirectByteBuffer(
+          directTarget.nioBuffer(0, directTarget.capacity()),
+          directTarget.writerIndex(),
+          directTarget.writableBytes(),
+          directSource.nioBuffer(0, directSource.capacity()),
+          directSource.readerIndex(),
+          directSource.readableBytes(),
+          level
+      );
+      DirectBuffers.commitWrite(directTarget, target, checkResult(result));
+      source.skipBytes(source.readableBytes());
+    } finally {
+      DirectBuffers.releaseCopy(directSource, source);
+      DirectBuffers.releaseCopy(directTarget, target);
+    }
+  }
+
+  @Override
+  public void decompress(ByteBuf source, ByteBuf target, int uncompressedLength)
+      throws IOException {
+    ByteBuf directSource = DirectBuffers.readable(source);
+    ByteBuf directTarget = DirectBuffers.writable(target, uncompressedLength);
+    try {
+      long result = Zstd.decompressDirectByteBuffer(
+          directTarget.nioBuffer(0, directTarget.capacity()),
+          directTarget.writerIndex(),
+          uncompressedLength,
+          directSource.nioBuffer(0, directSource.capacity()),
+          directSource.readerIndex(),
+          directSource.readableBytes()
+      );
+      int written = checkResult(result);
+      if (written != uncompressedLength) {
+        throw new IOException("Expected " + uncompressedLength + " decompressed bytes but "
+            + written + " were found");
+      }
+      DirectBuffers.commitWrite(directTarget, target, written);
+      source.skipBytes(source.readableBytes());
+    } finally {
+      DirectBuffers.releaseCopy(directSource, source);
+      DirectBuffers.releaseCopy(directTarget, target);
+    }
+  }
+
+  private static int checkResult(long result) throws IOException {
+    if (Zstd.isError(result)) {
+      throw new IOException("Zstd error: " + Zstd.getErrorName(result));
+    }
+    return (int) result;
+  }
+}
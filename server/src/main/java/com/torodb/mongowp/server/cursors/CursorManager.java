@@ -0,0 +1,303 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.cursors;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.torodb.mongowp.commands.pojos.MongoCursor;
+import com.torodb.mongowp.commands.pojos.MongoCursor.Batch;
+import com.torodb.mongowp.exceptions.CursorNotFoundException;
+import com.torodb.mongowp.exceptions.MongoException;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps the server side cursors that are opened by queries and consumed by getMore requests.
+ *
+ * Cursors are stored on a registry indexed by their id that is divided in several stripes, each
+ * one guarded by its own lock, so operations on different cursors rarely contend. Cursors that
+ * have not been used for longer than the idle timeout are closed and removed unless they were
+ * registered with {@code noCursorTimeout}. Expiration is driven by a {@link HashedWheelTimer}, so
+ * it is cheap to reschedule after each getMore.
+ *
+ * If a prefetch executor is provided, the next batch of a (non tailable) cursor is fetched on that
+ * executor while the client consumes the current one, hiding the backend latency on the following
+ * getMore.
+ */
+@ThreadSafe
+public class CursorManager<E> implements AutoCloseable {
+
+  private static final Logger LOGGER = LogManager.getLogger(CursorManager.class);
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  private static final int DEFAULT_STRIPES = 16;
+
+  private final Stripe<E>[] stripes;
+  private final int stripeMask;
+  private final Timer timer;
+  private final boolean ownsTimer;
+  private final long idleTimeoutMillis;
+  @Nullable
+  private final Executor prefetchExecutor;
+
+  /**
+   * Creates a cursor manager that uses its own timer to expire cursors.
+   *
+   * @param threadFactory    the factory used to create the thread of the timer
+   * @param idleTimeout      the time a cursor can be idle before it is closed
+   * @param unit             the unit of the idle timeout
+   * @param prefetchExecutor the executor on which batches are prefetched or null to disable
+   *                         prefetching
+   */
+  public CursorManager(ThreadFactory threadFactory, long idleTimeout, TimeUnit unit,
+      @Nullable Executor prefetchExecutor) {
+    this(createTimer(threadFactory), true, idleTimeout, unit, prefetchExecutor, DEFAULT_STRIPES);
+  }
+
+  /**
+   * @param timer            the timer used to expire cursors, which is not stopped when this
+   *                         manager is closed
+   * @param idleTimeout      the time a cursor can be idle before it is closed
+   * @param unit             the unit of the idle timeout
+   * @param prefetchExecutor the executor on which batches are prefetched or null to disable
+   *                         prefetching
+   * @param stripes          the number of stripes of the registry, which is rounded up to a power
+   *                         of two
+   */
+  public CursorManager(Timer timer, long idleTimeout, TimeUnit unit,
+      @Nullable Executor prefetchExecutor, int stripes) {
+    this(timer, false, idleTimeout, unit, prefetchExecutor, stripes);
+  }
+
+  @SuppressWarnings("unchecked")
+  private CursorManager(Timer timer, boolean ownsTimer, long idleTimeout, TimeUnit unit,
+      @Nullable Executor prefetchExecutor, int stripes) {
+    Preconditions.checkArgument(idleTimeout > 0, "The idle timeout must be positive");
+    Preconditions.checkArgument(stripes > 0, "The number of stripes must be positive");
+    int stripeCount = Integer.highestOneBit(stripes - 1) << 1;
+    if (stripeCount == 0) {
+      stripeCount = 1;
+    }
+    this.stripes = new Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      this.stripes[i] = new Stripe<>();
+    }
+    this.stripeMask = stripeCount - 1;
+    this.timer = timer;
+    this.ownsTimer = ownsTimer;
+    this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+    this.prefetchExecutor = prefetchExecutor;
+  }
+
+  private static Timer createTimer(ThreadFactory threadFactory) {
+    ThreadFactory namedFactory = new ThreadFactoryBuilder()
+        .setThreadFactory(threadFactory)
+        .setNameFormat("mongowp-cursor-timer-%d")
+        .setDaemon(true)
+        .build();
+    return new HashedWheelTimer(namedFactory, 1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Registers a cursor, which will be accessible by its {@link MongoCursor#getId() id}.
+   *
+   * @param cursor          the cursor to register. Its id must not be 0 and there must be no
+   *                        other registered cursor with the same id
+   * @param noCursorTimeout true iff the cursor must not be closed when it is idle
+   * @throws IllegalArgumentException if the id of the cursor is 0 or it is already registered
+   */
+  public void register(@Nonnull MongoCursor<E> cursor, boolean noCursorTimeout) {
+    long cursorId = cursor.getId();
+    Preconditions.checkArgument(cursorId != 0, "0 is not a valid cursor id");
+    ManagedCursor<E> managedCursor = new ManagedCursor<>(this, cursor, noCursorTimeout);
+    Stripe<E> stripe = getStripe(cursorId);
+    synchronized (stripe) {
+      if (stripe.cursors.putIfAbsent(cursorId, managedCursor) != null) {
+        throw new IllegalArgumentException("There is already a cursor with id " + cursorId);
+      }
+    }
+    managedCursor.release(true);
+  }
+
+  /**
+   * Fetches the next batch of the given cursor.
+   *
+   * If the batch was already prefetched, it is returned even if it was fetched with a different
+   * max batch size. The cursor is closed and removed if the fetch fails.
+   *
+   * @param cursorId     the id of the cursor
+   * @param maxBatchSize the max number of elements of the batch
+   * @throws CursorNotFoundException if there is no cursor with the given id
+   * @throws MongoException          if the cursor is being used by another request or the batch
+   *                                 cannot be fetched
+   */
+  @Nonnull
+  public Batch<E> fetchBatch(long cursorId, int maxBatchSize) throws MongoException {
+    return getManagedCursor(cursorId).fetchBatch(maxBatchSize);
+  }
+
+  /**
+   * Returns the cursor with the given id or null if there is no such cursor.
+   *
+   * The returned cursor is shared, so callers should use {@link #fetchBatch(long, int)} to
+   * consume it.
+   */
+  @Nullable
+  public MongoCursor<E> getCursor(long cursorId) {
+    Stripe<E> stripe = getStripe(cursorId);
+    synchronized (stripe) {
+      ManagedCursor<E> managedCursor = stripe.cursors.get(cursorId);
+      return managedCursor == null ? null : managedCursor.getCursor();
+    }
+  }
+
+  /**
+   * Closes and removes the cursor with the given id.
+   *
+   * If the cursor is being used, it is closed once the current operation finishes.
+   *
+   * @return true iff there was a cursor with the given id
+   */
+  public boolean kill(long cursorId) {
+    ManagedCursor<E> managedCursor = remove(cursorId, null);
+    if (managedCursor == null) {
+      return false;
+    }
+    managedCursor.kill();
+    return true;
+  }
+
+  /**
+   * @return the number of registered cursors
+   */
+  public int size() {
+    int size = 0;
+    for (Stripe<E> stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.cursors.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Closes all registered cursors and, if the timer was created by this manager, stops it.
+   */
+  @Override
+  public void close() {
+    List<ManagedCursor<E>> removed = new ArrayList<>();
+    for (Stripe<E> stripe : stripes) {
+      synchronized (stripe) {
+        removed.addAll(stripe.cursors.values());
+        stripe.cursors.clear();
+      }
+    }
+    for (ManagedCursor<E> managedCursor : removed) {
+      managedCursor.kill();
+    }
+    if (ownsTimer) {
+      timer.stop();
+    }
+  }
+
+  Timer getTimer() {
+    return timer;
+  }
+
+  long getIdleTimeoutMillis() {
+    return idleTimeoutMillis;
+  }
+
+  @Nullable
+  Executor getPrefetchExecutor() {
+    return prefetchExecutor;
+  }
+
+  /**
+   * Called when a cursor has been idle for longer than the idle timeout.
+   */
+  void expire(ManagedCursor<E> managedCursor) {
+    long cursorId = managedCursor.getCursor().getId();
+    if (remove(cursorId, managedCursor) != null) {
+      LOGGER.debug("Closing cursor {}, as it has been idle for more than {} ms", cursorId,
+          idleTimeoutMillis);
+      managedCursor.kill();
+    }
+  }
+
+  /**
+   * Called when a cursor is not usable anymore, as it is closed or its last fetch failed.
+   */
+  void discard(ManagedCursor<E> managedCursor) {
+    remove(managedCursor.getCursor().getId(), managedCursor);
+    managedCursor.kill();
+  }
+
+  private ManagedCursor<E> getManagedCursor(long cursorId) throws CursorNotFoundException {
+    Stripe<E> stripe = getStripe(cursorId);
+    ManagedCursor<E> managedCursor;
+    synchronized (stripe) {
+      managedCursor = stripe.cursors.get(cursorId);
+    }
+    if (managedCursor == null) {
+      throw new CursorNotFoundException(cursorId);
+    }
+    return managedCursor;
+  }
+
+  /**
+   * Removes the cursor with the given id if it is associated with the expected one or the
+   * expected one is null.
+   *
+   * @return the removed cursor or null if no cursor was removed
+   */
+  @Nullable
+  private ManagedCursor<E> remove(long cursorId, @Nullable ManagedCursor<E> expected) {
+    Stripe<E> stripe = getStripe(cursorId);
+    synchronized (stripe) {
+      ManagedCursor<E> current = stripe.cursors.get(cursorId);
+      if (current == null || (expected != null && current != expected)) {
+        return null;
+      }
+      stripe.cursors.remove(cursorId);
+      return current;
+    }
+  }
+
+  private Stripe<E> getStripe(long cursorId) {
+    long hash = cursorId * 0x9E3779B97F4A7C15L;
+    int index = (int) (hash ^ (hash >>> 32));
+    return stripes[(index ^ (index >>> 16)) & stripeMask];
+  }
+
+  private static class Stripe<E> {
+
+    private final Map<Long, ManagedCursor<E>> cursors = new HashMap<>();
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.cursors;
+
+import com.torodb.mongowp.commands.pojos.MongoCursor;
+import com.torodb.mongowp.commands.pojos.MongoCursor.Batch;
+import com.torodb.mongowp.exceptions.CursorNotFoundException;
+import com.torodb.mongowp.exceptions.MongoException;
+import com.torodb.mongowp.exceptions.OperationFailedException;
+import io.netty.util.Timeout;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A cursor registered on a {@link CursorManager}.
+ *
+ * A managed cursor is either in use by a request, prefetching its next batch or idle. Only idle
+ * cursors can expire. Methods of this class never call the manager while holding the lock of the
+ * cursor, so they cannot deadlock with the locks of the registry.
+ */
+@ThreadSafe
+class ManagedCursor<E> {
+
+  private static final Logger LOGGER = LogManager.getLogger(ManagedCursor.class);
+
+  private final CursorManager<E> manager;
+  private final MongoCursor<E> cursor;
+  private final boolean noCursorTimeout;
+  @GuardedBy("this")
+  private boolean inUse;
+  @GuardedBy("this")
+  private boolean killed;
+  @GuardedBy("this")
+  private boolean closed;
+  @GuardedBy("this")
+  private Timeout timeout;
+  @GuardedBy("this")
+  private CompletableFuture<Batch<E>> prefetch;
+
+  ManagedCursor(CursorManager<E> manager, MongoCursor<E> cursor, boolean noCursorTimeout) {
+    this.manager = manager;
+    this.cursor = cursor;
+    this.noCursorTimeout = noCursorTimeout;
+  }
+
+  MongoCursor<E> getCursor() {
+    return cursor;
+  }
+
+  Batch<E> fetchBatch(int maxBatchSize) throws MongoException {
+    CompletableFuture<Batch<E>> prefetched;
+    synchronized (this) {
+      if (killed) {
+        throw new CursorNotFoundException(cursor.getId());
+      }
+      if (inUse) {
+        throw new OperationFailedException("cursor id " + cursor.getId() + " is already in use");
+      }
+      inUse = true;
+      cancelTimeout();
+      prefetched = prefetch;
+      prefetch = null;
+    }
+    boolean success = false;
+    try {
+      Batch<E> batch;
+      if (prefetched != null) {
+        batch = join(prefetched);
+      } else {
+        cursor.setMaxBatchSize(maxBatchSize);
+        batch = cursor.fetchBatch();
+      }
+      success = true;
+      return batch;
+    } finally {
+      release(success);
+    }
+  }
+
+  /**
+   * Marks the cursor as idle, which starts its idle timeout and the prefetch of its next batch.
+   *
+   * @param usable false if the cursor must be discarded, as its last operation failed
+   */
+  void release(boolean usable) {
+    boolean discard;
+    synchronized (this) {
+      inUse = false;
+      discard = killed || !usable || cursor.isClosed();
+      if (!discard) {
+        startPrefetch();
+        scheduleTimeout();
+      }
+    }
+    if (discard) {
+      manager.discard(this);
+    }
+  }
+
+  /**
+   * Closes the cursor as soon as it is not used.
+   */
+  void kill() {
+    CompletableFuture<Batch<E>> pending;
+    synchronized (this) {
+      killed = true;
+      cancelTimeout();
+      if (inUse || closed) {
+        //if it is in use, the cursor is closed when the request that uses it releases it
+        return;
+      }
+      closed = true;
+      pending = prefetch;
+      prefetch = null;
+    }
+    if (pending == null) {
+      closeCursor();
+    } else {
+      pending.whenComplete((batch, ex) -> {
+        if (batch != null) {
+          batch.close();
+        }
+        closeCursor();
+      });
+    }
+  }
+
+  @GuardedBy("this")
+  private void startPrefetch() {
+    Executor prefetchExecutor = manager.getPrefetchExecutor();
+    if (prefetchExecutor == null || cursor.isTailable()) {
+      return;
+    }
+    prefetch = CompletableFuture.supplyAsync(() -> {
+      try {
+        return cursor.fetchBatch();
+      } catch (MongoException ex) {
+        throw new CompletionException(ex);
+      }
+    }, prefetchExecutor);
+  }
+
+  @GuardedBy("this")
+  private void scheduleTimeout() {
+    if (noCursorTimeout) {
+      return;
+    }
+    timeout = manager.getTimer().newTimeout(
+        this::onTimeout,
+        manager.getIdleTimeoutMillis(),
+        TimeUnit.MILLISECONDS
+    );
+  }
+
+  @GuardedBy("this")
+  private void cancelTimeout() {
+    if (timeout != null) {
+      timeout.cancel();
+      timeout = null;
+    }
+  }
+
+  private void onTimeout(Timeout firedTimeout) {
+    synchronized (this) {
+      if (timeout != firedTimeout || inUse) {
+        return;
+      }
+      timeout = null;
+    }
+    manager.expire(this);
+  }
+
+  private Batch<E> join(CompletableFuture<Batch<E>> prefetched) throws MongoException {
+    try {
+      return prefetched.join();
+    } catch (CompletionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof MongoException) {
+        throw (MongoException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw ex;
+    }
+  }
+
+  private void closeCursor() {
+    try {
+      cursor.close();
+    } catch (RuntimeException ex) {
+      LOGGER.warn("Error while closing cursor " + cursor.getId(), ex);
+    }
+  }
+}
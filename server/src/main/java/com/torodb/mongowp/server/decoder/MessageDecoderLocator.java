@@ -40,6 +40,7 @@ public class MessageDecoderLocator {
       GetMoreMessageDecoder getMoreDecoder,
       InsertMessageDecoder insertDecoder,
       KillCursorsMessageDecoder killCursorsDecoder,
+      MsgMessageDecoder msgDecoder,
       QueryMessageDecoder queryDecoder,
       UpdateMessageDecoder updateDecoder
   ) {
@@ -49,6 +50,7 @@ public class MessageDecoderLocator {
     decoderMap.put(RequestOpCode.OP_GET_MORE, getMoreDecoder);
     decoderMap.put(RequestOpCode.OP_INSERT, insertDecoder);
     decoderMap.put(RequestOpCode.OP_KILL_CURSORS, killCursorsDecoder);
+    decoderMap.put(RequestOpCode.OP_MSG, msgDecoder);
     decoderMap.put(RequestOpCode.OP_QUERY, queryDecoder);
     decoderMap.put(RequestOpCode.OP_UPDATE, updateDecoder);
 
@@ -60,7 +62,9 @@ public class MessageDecoderLocator {
   }
 
   private static void checkDecoderMap(Map<RequestOpCode, MessageDecoder<?>> decoderMap) {
-    Set<RequestOpCode> opsWithoutDecoder = EnumSet.of(RequestOpCode.OP_MSG, RequestOpCode.RESERVED);
+    //OP_COMPRESSED messages are decompressed before they reach the decoders
+    Set<RequestOpCode> opsWithoutDecoder = EnumSet.of(RequestOpCode.OP_COMPRESSED,
+        RequestOpCode.RESERVED);
     for (RequestOpCode value : RequestOpCode.values()) {
       if (opsWithoutDecoder.contains(value)) {
         continue;
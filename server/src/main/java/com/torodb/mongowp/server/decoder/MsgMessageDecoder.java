@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.decoder;
+
+import static com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType.OFFHEAP_VALUES;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Ints;
+import com.torodb.mongowp.MongoConstants;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.netty.NettyBsonDocumentReader;
+import com.torodb.mongowp.bson.netty.NettyStringReader;
+import com.torodb.mongowp.bson.utils.BsonDocumentReaderException;
+import com.torodb.mongowp.exceptions.BadValueException;
+import com.torodb.mongowp.exceptions.InvalidBsonException;
+import com.torodb.mongowp.exceptions.MongoException;
+import com.torodb.mongowp.fields.StringField;
+import com.torodb.mongowp.messages.request.MsgMessage;
+import com.torodb.mongowp.messages.request.MsgMessage.DocumentSequence;
+import com.torodb.mongowp.messages.request.MsgMessage.Flag;
+import com.torodb.mongowp.messages.request.RequestBaseMessage;
+import com.torodb.mongowp.server.util.ByteBufIterableDocumentProvider;
+import com.torodb.mongowp.utils.BsonReaderTool;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+
+/**
+ * Decodes OP_MSG messages.
+ *
+ * The body section is read as an {@link
+ * com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType#OFFHEAP_VALUES offheap values}
+ * document and each document sequence is exposed as a slice of the original buffer, so no
+ * document is copied or parsed until it is iterated.
+ *
+ * When the optional CRC-32C checksum is present, it is validated against the whole message,
+ * header included. To do that, the buffer must still contain the message header without the
+ * length field just before its reader index, as it is left by
+ * {@link com.torodb.mongowp.server.wp.RequestMessageByteHandler}.
+ */
+@ThreadSafe
+public class MsgMessageDecoder extends AbstractMessageDecoder<MsgMessage> {
+
+  public static final StringField DB_FIELD = new StringField("$db");
+  private static final byte BODY_SECTION_KIND = 0;
+  private static final byte DOCUMENT_SEQUENCE_SECTION_KIND = 1;
+  /**
+   * Bits 0-15 are required: a receiver must fail if it does not understand any of them.
+   */
+  private static final int REQUIRED_FLAGS_MASK = 0xFFFF;
+  private static final int KNOWN_FLAGS_MASK = getKnownFlagsMask();
+
+  private final NettyStringReader stringReader;
+  private final NettyBsonDocumentReader docReader;
+
+  @Inject
+  public MsgMessageDecoder(NettyStringReader stringReader, NettyBsonDocumentReader docReader) {
+    this.stringReader = stringReader;
+    this.docReader = docReader;
+  }
+
+  @Override
+  @SuppressFBWarnings(value = {"RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT"},
+      justification = "Findbugs thinks ByteBuf#readerIndex(...) has no"
+      + "side effect")
+  public MsgMessage decode(ByteBuf buffer, RequestBaseMessage requestBaseMessage)
+      throws MongoException {
+    MyBsonContext context = new MyBsonContext(buffer);
+    int headerStart = buffer.readerIndex()
+        - MongoConstants.MESSAGE_HEADER_WITHOUT_LENGTH_FIELD_BYTES;
+    try {
+      int flags = buffer.readInt();
+      checkRequiredFlags(flags);
+
+      boolean checksumPresent = Flag.CHECKSUM_PRESENT.isActive(flags);
+      int sectionsEnd = buffer.writerIndex();
+      if (checksumPresent) {
+        sectionsEnd -= Ints.BYTES;
+      }
+
+      BsonDocument body = null;
+      List<DocumentSequence> documentSequences = new ArrayList<>(1);
+      while (buffer.readerIndex() < sectionsEnd) {
+        byte kind = buffer.readByte();
+        switch (kind) {
+          case BODY_SECTION_KIND: {
+            if (body != null) {
+              throw new BadValueException("OP_MSG must contain exactly one body section");
+            }
+            body = docReader.readDocument(OFFHEAP_VALUES, buffer);
+            break;
+          }
+          case DOCUMENT_SEQUENCE_SECTION_KIND: {
+            documentSequences.add(readDocumentSequence(buffer, sectionsEnd));
+            break;
+          }
+          default:
+            throw new BadValueException("Unknown OP_MSG section kind " + kind);
+        }
+      }
+      if (buffer.readerIndex() != sectionsEnd) {
+        throw new InvalidBsonException("OP_MSG sections overflow the message");
+      }
+      if (body == null) {
+        throw new BadValueException("OP_MSG must contain exactly one body section");
+      }
+      if (checksumPresent) {
+        checkChecksum(buffer, headerStart, sectionsEnd);
+        buffer.skipBytes(Ints.BYTES);
+      }
+
+      String database = BsonReaderTool.getString(body, DB_FIELD);
+
+      //TODO: improve the way database and cache are pooled
+      return new MsgMessage(
+          requestBaseMessage,
+          context,
+          database.intern(),
+          checksumPresent,
+          Flag.MORE_TO_COME.isActive(flags),
+          Flag.EXHAUST_ALLOWED.isActive(flags),
+          body,
+          documentSequences
+      );
+    } catch (BsonDocumentReaderException ex) {
+      context.close();
+      throw new InvalidBsonException(ex);
+    } catch (MongoException | RuntimeException ex) {
+      context.close();
+      throw ex;
+    }
+  }
+
+  private void checkRequiredFlags(int flags) throws BadValueException {
+    int unknownRequiredFlags = flags & REQUIRED_FLAGS_MASK
+        & ~KNOWN_FLAGS_MASK;
+    if (unknownRequiredFlags != 0) {
+      throw new BadValueException("Unrecognized OP_MSG flags: " + unknownRequiredFlags);
+    }
+  }
+
+  private void checkChecksum(ByteBuf buffer, int headerStart, int checksumIndex)
+      throws InvalidBsonException {
+    Preconditions.checkArgument(headerStart >= 0,
+        "The buffer does not contain the OP_MSG header");
+    int length = checksumIndex - headerStart;
+    int messageLength = MongoConstants.MESSAGE_LENGTH_FIELD_BYTES + length + Ints.BYTES;
+
+    //the length field was stripped from the buffer, so it is hashed from its value (little endian)
+    Hasher hasher = Hashing.crc32c().newHasher().putInt(messageLength);
+    if (buffer.hasArray()) {
+      hasher.putBytes(buffer.array(), buffer.arrayOffset() + headerStart, length);
+    } else {
+      byte[] bytes = new byte[length];
+      buffer.getBytes(headerStart, bytes);
+      hasher.putBytes(bytes);
+    }
+    int expected = buffer.getInt(checksumIndex);
+    int actual = hasher.hash().asInt();
+    if (expected != actual) {
+      throw new InvalidBsonException("OP_MSG checksum mismatch: expected "
+          + Integer.toHexString(expected) + " but was " + Integer.toHexString(actual));
+    }
+  }
+
+  private static int getKnownFlagsMask() {
+    int mask = 0;
+    for (Flag flag : Flag.values()) {
+      mask |= flag.getMask();
+    }
+    return mask;
+  }
+
+  @SuppressFBWarnings(value = {"RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT"},
+      justification = "Findbugs thinks ByteBuf#readerIndex(...) has no"
+      + "side effect")
+  private DocumentSequence readDocumentSequence(ByteBuf buffer, int sectionsEnd)
+      throws MongoException, BsonDocumentReaderException {
+    int sectionStart = buffer.readerIndex();
+    int sectionSize = buffer.readInt();
+    int sectionEnd = sectionStart + sectionSize;
+    if (sectionSize < Ints.BYTES + 1 || sectionEnd > sectionsEnd) {
+      throw new InvalidBsonException("Invalid OP_MSG document sequence size " + sectionSize);
+    }
+    String identifier = stringReader.readCString(buffer, true);
+    if (buffer.readerIndex() > sectionEnd) {
+      throw new InvalidBsonException("Invalid OP_MSG document sequence size " + sectionSize);
+    }
+
+    //the slice shares the reference count with the buffer, which is retained by the context
+    ByteBuf docsBuf = buffer.slice(buffer.readerIndex(), sectionEnd - buffer.readerIndex());
+    buffer.readerIndex(sectionEnd);
+
+    return new DocumentSequence(
+        identifier,
+        new ByteBufIterableDocumentProvider(docsBuf, docReader)
+    );
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.encoder;
+
+import com.google.common.primitives.Ints;
+import com.torodb.mongowp.MongoConstants;
+import com.torodb.mongowp.bson.netty.NettyBsonDocumentWriter;
+import com.torodb.mongowp.messages.request.MsgMessage.Flag;
+import com.torodb.mongowp.messages.response.MsgReplyMessage;
+import com.torodb.mongowp.messages.response.ResponseOpCode;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.netty.buffer.ByteBuf;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+
+/**
+ * Encodes {@link MsgReplyMessage} as OP_MSG messages with a single body section.
+ */
+@SuppressFBWarnings(
+    value = "RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT",
+    justification = "It seems FindBugs considers ByteBuf methods are not side effect")
+@ThreadSafe
+public class MsgReplyMessageEncoder {
+
+  private static final byte BODY_SECTION_KIND = 0;
+
+  private final NettyBsonDocumentWriter writer;
+
+  @Inject
+  public MsgReplyMessageEncoder(NettyBsonDocumentWriter writer) {
+    this.writer = writer;
+  }
+
+  /**
+   * Returns the exact number of bytes the given message uses once it is encoded, without the
+   * message length field.
+   */
+  public int getEncodedSize(MsgReplyMessage message) {
+    return MongoConstants.MESSAGE_HEADER_WITHOUT_LENGTH_FIELD_BYTES + Ints.BYTES + 1
+        + writer.getSerializedSize(message.getBody());
+  }
+
+  public void encodeMessageHeader(ByteBuf buffer, MsgReplyMessage message, int requestId) {
+    buffer.writeInt(requestId);
+    buffer.writeInt(message.getResponseTo());
+    buffer.writeInt(ResponseOpCode.OP_MSG.getOpCode());
+  }
+
+  /**
+   * Returns true iff the body of the given message can be added to a
+   * {@link io.netty.buffer.CompositeByteBuf} instead of being copied.
+   *
+   * @see NettyBsonDocumentWriter#isShareable(com.torodb.mongowp.bson.BsonDocument)
+   */
+  public boolean isShareable(MsgReplyMessage message) {
+    return writer.isShareable(message.getBody());
+  }
+
+  public void encodeMessageBody(ByteBuf buffer, MsgReplyMessage message) {
+    buffer.writeInt(extractFlags(message));
+    buffer.writeByte(BODY_SECTION_KIND);
+    writer.writeInto(buffer, message.getBody());
+  }
+
+  private int extractFlags(MsgReplyMessage message) {
+    int flags = 0;
+    if (message.isMoreToCome()) {
+      flags |= Flag.MORE_TO_COME.getMask();
+    }
+    return flags;
+  }
+}
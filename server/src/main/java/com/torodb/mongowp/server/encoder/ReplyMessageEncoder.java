@@ -15,7 +15,9 @@
  */
 package com.torodb.mongowp.server.encoder;
 
-import com.google.common.collect.FluentIterable;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.torodb.mongowp.MongoConstants;
 import com.torodb.mongowp.bson.BsonDocument;
 import com.torodb.mongowp.bson.netty.NettyBsonDocumentWriter;
 import com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType;
@@ -48,24 +50,51 @@ public class ReplyMessageEncoder {
     this.writer = writer;
   }
 
+  /**
+   * Returns the exact number of bytes the given message uses once it is encoded, without the
+   * message length field.
+   *
+   * Documents are iterated as {@link AllocationType#OFFHEAP offheap} documents, so the ones read
+   * from a buffer are not decoded to calculate their size.
+   */
+  public int getEncodedSize(ReplyMessage message) {
+    int size = MongoConstants.MESSAGE_HEADER_WITHOUT_LENGTH_FIELD_BYTES
+        + Ints.BYTES + Longs.BYTES + Ints.BYTES + Ints.BYTES;
+    for (BsonDocument document : message.getDocuments().getIterable(AllocationType.OFFHEAP)) {
+      size += writer.getSerializedSize(document);
+    }
+    return size;
+  }
+
   public void encodeMessageHeader(ByteBuf buffer, ReplyMessage message, int requestId) {
     buffer.writeInt(requestId);
     buffer.writeInt(message.getResponseTo());
     buffer.writeInt(ResponseOpCode.OP_REPLY.getOpCode());
   }
 
+  /**
+   * Encodes the body of the message iterating its documents only once.
+   *
+   * The number of returned documents is written once all documents have been written. The buffer
+   * is expected to be sized with {@link #getEncodedSize(ReplyMessage)}, otherwise it is expanded
+   * as documents are written.
+   *
+   * Documents are iterated as {@link AllocationType#OFFHEAP offheap} documents, so the ones read
+   * from a buffer are copied as raw bytes instead of being decoded and serialized again.
+   */
   public void encodeMessageBody(ByteBuf buffer, ReplyMessage message) {
-    FluentIterable<? extends BsonDocument> docs = message.getDocuments().getIterable(
-        AllocationType.HEAP);
-
     buffer.writeInt(EnumInt32FlagsUtil.getInt32Flags(extractFlags(message)));
     buffer.writeLong(message.getCursorId());
     buffer.writeInt(message.getStartingFrom());
-    buffer.writeInt(docs.size());
+    int numberReturnedIndex = buffer.writerIndex();
+    buffer.writeInt(0); // reserve space for numberReturned
 
-    for (BsonDocument document : docs) {
+    int numberReturned = 0;
+    for (BsonDocument document : message.getDocuments().getIterable(AllocationType.OFFHEAP)) {
       writer.writeInto(buffer, document);
+      numberReturned++;
     }
+    buffer.setInt(numberReturnedIndex, numberReturned);
   }
 
   private EnumSet<Flag> extractFlags(ReplyMessage message) {
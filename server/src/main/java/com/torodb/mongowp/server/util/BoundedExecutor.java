@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.util;
+
+import com.google.common.base.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An executor that executes at most a given number of tasks at the same time using the threads of
+ * another executor.
+ *
+ * Tasks are started in the same order they were submitted. Several bounded executors can share a
+ * pool without any of them using more than its number of threads. To be fair with other executors,
+ * a thread is released after {@link #MAX_TASKS_PER_RUN} tasks.
+ */
+@ThreadSafe
+public class BoundedExecutor implements Executor {
+
+  private static final Logger LOGGER = LogManager.getLogger(BoundedExecutor.class);
+  private static final int MAX_TASKS_PER_RUN = 16;
+
+  private final Executor delegate;
+  private final int maxConcurrency;
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingTasks = new AtomicInteger();
+  private final AtomicInteger runners = new AtomicInteger();
+  private final Runnable runner = this::run;
+
+  public BoundedExecutor(Executor delegate, int maxConcurrency) {
+    Preconditions.checkArgument(maxConcurrency > 0, "The max concurrency must be positive");
+    this.delegate = delegate;
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    pendingTasks.incrementAndGet();
+    tasks.add(command);
+    schedule();
+  }
+
+  /**
+   * @return the number of tasks that have been submitted and not finished yet
+   */
+  public int getPendingTasks() {
+    return pendingTasks.get();
+  }
+
+  private void schedule() {
+    while (!tasks.isEmpty()) {
+      int current = runners.get();
+      if (current >= maxConcurrency) {
+        return;
+      }
+      if (runners.compareAndSet(current, current + 1)) {
+        try {
+          delegate.execute(runner);
+        } catch (RejectedExecutionException ex) {
+          runners.decrementAndGet();
+          throw ex;
+        }
+        return;
+      }
+    }
+  }
+
+  private void run() {
+    try {
+      Runnable task;
+      for (int i = 0; i < MAX_TASKS_PER_RUN && (task = tasks.poll()) != null; i++) {
+        try {
+          task.run();
+        } catch (RuntimeException ex) {
+          LOGGER.error("Error while executing a task", ex);
+        } finally {
+          pendingTasks.decrementAndGet();
+        }
+      }
+    } finally {
+      runners.decrementAndGet();
+      schedule();
+    }
+  }
+}
@@ -15,7 +15,6 @@
  */
 package com.torodb.mongowp.server.util;
 
-import com.torodb.mongowp.messages.response.ReplyMessage;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
@@ -25,14 +24,14 @@ import java.nio.ByteOrder;
 /**
  *
  */
-public abstract class ChannelLittleEndianEncoder extends MessageToByteEncoder<ReplyMessage> {
+public abstract class ChannelLittleEndianEncoder<T> extends MessageToByteEncoder<T> {
 
   @Override
-  protected void encode(ChannelHandlerContext ctx, ReplyMessage msg, ByteBuf out) throws Exception {
+  protected void encode(ChannelHandlerContext ctx, T msg, ByteBuf out) throws Exception {
     encodeLittleEndian(ctx, msg, out.order(ByteOrder.LITTLE_ENDIAN));
   }
 
-  protected abstract void encodeLittleEndian(ChannelHandlerContext ctx, ReplyMessage msg,
+  protected abstract void encodeLittleEndian(ChannelHandlerContext ctx, T msg,
       ByteBuf out)
       throws Exception;
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.util;
+
+import com.google.common.base.Preconditions;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * A handler that consolidates flushes to reduce the number of write syscalls.
+ *
+ * While the channel is reading, flushes are delayed until {@code channelReadComplete}, so all the
+ * replies produced by the requests of the same read are written together. Flushes issued outside
+ * a read (like the ones done when requests are executed outside the event loop) are delayed to
+ * the end of the current event loop iteration. In both cases, the pending writes are flushed as
+ * soon as there are {@code maxPendingFlushes} flushes or {@code maxPendingBytes} bytes pending.
+ *
+ * This handler must be the first one on the pipeline, so it sees the reads before any other
+ * handler and the final encoded messages on writes. It is a backport of the
+ * {@code FlushConsolidationHandler} added on Netty 4.1.
+ */
+public class FlushConsolidationHandler extends ChannelDuplexHandler {
+
+  private final int maxPendingFlushes;
+  private final long maxPendingBytes;
+  private final Runnable flushTask;
+  private int pendingFlushes;
+  private long pendingBytes;
+  private boolean readInProgress;
+  private boolean flushScheduled;
+  private ChannelHandlerContext ctx;
+
+  public FlushConsolidationHandler(int maxPendingFlushes, long maxPendingBytes) {
+    Preconditions.checkArgument(maxPendingFlushes > 0, "The max pending flushes must be positive");
+    Preconditions.checkArgument(maxPendingBytes > 0, "The max pending bytes must be positive");
+    this.maxPendingFlushes = maxPendingFlushes;
+    this.maxPendingBytes = maxPendingBytes;
+    this.flushTask = () -> {
+      flushScheduled = false;
+      if (!readInProgress) {
+        flushIfNeeded();
+      }
+    };
+  }
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+    this.ctx = ctx;
+  }
+
+  @Override
+  public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+    flushIfNeeded();
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    if (msg instanceof ByteBuf) {
+      pendingBytes += ((ByteBuf) msg).readableBytes();
+    } else if (msg instanceof ByteBufHolder) {
+      pendingBytes += ((ByteBufHolder) msg).content().readableBytes();
+    }
+    ctx.write(msg, promise);
+  }
+
+  @Override
+  public void flush(ChannelHandlerContext ctx) throws Exception {
+    pendingFlushes++;
+    if (pendingFlushes >= maxPendingFlushes || pendingBytes >= maxPendingBytes) {
+      flushNow();
+    } else if (!readInProgress && !flushScheduled) {
+      flushScheduled = true;
+      ctx.channel().eventLoop().execute(flushTask);
+    }
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    readInProgress = true;
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+    readInProgress = false;
+    flushIfNeeded();
+    ctx.fireChannelReadComplete();
+  }
+
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    if (!ctx.channel().isWritable()) {
+      //let the outbound buffer drain
+      flushIfNeeded();
+    }
+    ctx.fireChannelWritabilityChanged();
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+    readInProgress = false;
+    flushIfNeeded();
+    ctx.fireExceptionCaught(cause);
+  }
+
+  @Override
+  public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+    readInProgress = false;
+    flushIfNeeded();
+    ctx.disconnect(promise);
+  }
+
+  @Override
+  public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+    readInProgress = false;
+    flushIfNeeded();
+    ctx.close(promise);
+  }
+
+  private void flushIfNeeded() {
+    if (pendingFlushes > 0) {
+      flushNow();
+    }
+  }
+
+  private void flushNow() {
+    pendingFlushes = 0;
+    pendingBytes = 0;
+    ctx.flush();
+  }
+}
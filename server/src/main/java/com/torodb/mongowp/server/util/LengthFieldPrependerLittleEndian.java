@@ -15,26 +15,70 @@
  */
 package com.torodb.mongowp.server.util;
 
+import com.google.common.base.Preconditions;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.codec.MessageToMessageEncoder;
 
 import java.nio.ByteOrder;
+import java.util.List;
 
 /**
+ * Prepends the length of each message as a little endian number.
  *
+ * Unlike {@link io.netty.handler.codec.LengthFieldPrepender}, the message is not copied after
+ * the length field: the length is written on its own buffer and both are sent to the next
+ * handler, so buffers that share their content (like composite buffers) are not copied.
  */
 @ChannelHandler.Sharable
-public class LengthFieldPrependerLittleEndian extends LengthFieldPrepender {
+public class LengthFieldPrependerLittleEndian extends MessageToMessageEncoder<ByteBuf> {
+
+  private final int lengthFieldLength;
+  private final boolean lengthIncludesLengthFieldLength;
 
   public LengthFieldPrependerLittleEndian(int lengthFieldLength,
       boolean lengthIncludesLengthFieldLength) {
-    super(lengthFieldLength, lengthIncludesLengthFieldLength);
+    Preconditions.checkArgument(lengthFieldLength == 1 || lengthFieldLength == 2
+        || lengthFieldLength == 3 || lengthFieldLength == 4 || lengthFieldLength == 8,
+        "lengthFieldLength must be either 1, 2, 3, 4, or 8: %s", lengthFieldLength);
+    this.lengthFieldLength = lengthFieldLength;
+    this.lengthIncludesLengthFieldLength = lengthIncludesLengthFieldLength;
   }
 
   @Override
-  protected void encode(ChannelHandlerContext ctx, ByteBuf msg, ByteBuf out) throws Exception {
-    super.encode(ctx, msg, out.order(ByteOrder.LITTLE_ENDIAN));
+  protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out)
+      throws Exception {
+    long length = msg.readableBytes();
+    if (lengthIncludesLengthFieldLength) {
+      length += lengthFieldLength;
+    }
+    if (lengthFieldLength < 8 && length >= 1L << (lengthFieldLength * 8)) {
+      throw new IllegalArgumentException("length does not fit into a " + lengthFieldLength
+          + " bytes length field: " + length);
+    }
+
+    ByteBuf lengthField = ctx.alloc().buffer(lengthFieldLength).order(ByteOrder.LITTLE_ENDIAN);
+    switch (lengthFieldLength) {
+      case 1:
+        lengthField.writeByte((int) length);
+        break;
+      case 2:
+        lengthField.writeShort((int) length);
+        break;
+      case 3:
+        lengthField.writeMedium((int) length);
+        break;
+      case 4:
+        lengthField.writeInt((int) length);
+        break;
+      case 8:
+        lengthField.writeLong(length);
+        break;
+      default:
+        throw new AssertionError("Unexpected length field length " + lengthFieldLength);
+    }
+    out.add(lengthField);
+    out.add(msg.retain());
   }
 }
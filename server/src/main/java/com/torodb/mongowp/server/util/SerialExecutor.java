@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.util;
+
+import java.util.concurrent.Executor;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An executor that executes its tasks one after the other, in the same order they were submitted,
+ * using the threads of another executor.
+ */
+@ThreadSafe
+public class SerialExecutor extends BoundedExecutor {
+
+  public SerialExecutor(Executor delegate) {
+    super(delegate, 1);
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.wp;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * Applies backpressure on a connection.
+ *
+ * Reads are suspended (by disabling {@code autoRead}) while the channel is not writable, which
+ * happens when the outbound buffer exceeds its high water mark, or while the connection has too
+ * many pending requests. It also lets reply producers {@link #whenWritable() wait} until the
+ * channel is writable again, so a slow client cannot make the server buffer an unbounded amount
+ * of replies.
+ *
+ * There must be one instance per channel, which is stored on the {@link #BACKPRESSURE} channel
+ * attribute.
+ */
+public class BackpressureHandler extends ChannelInboundHandlerAdapter {
+
+  public static final AttributeKey<BackpressureHandler> BACKPRESSURE = AttributeKey.valueOf(
+      "backpressure");
+
+  private static final int UNWRITABLE = 1;
+  private static final int TOO_MANY_REQUESTS = 1 << 1;
+
+  private final int maxPendingRequests;
+  private final List<Promise<Void>> writabilityWaiters = new ArrayList<>(1);
+  private ChannelHandlerContext ctx;
+  private EventExecutor eventLoop;
+  private int suspendReasons;
+  private int pendingRequests;
+
+  /**
+   * @param maxPendingRequests the number of pending requests after which reads are suspended
+   */
+  public BackpressureHandler(int maxPendingRequests) {
+    this.maxPendingRequests = maxPendingRequests;
+  }
+
+  /**
+   * @return the backpressure handler of the channel of the given context, or null if there is none
+   */
+  @Nullable
+  public static BackpressureHandler get(ChannelHandlerContext ctx) {
+    return ctx.channel().attr(BACKPRESSURE).get();
+  }
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+    this.ctx = ctx;
+    this.eventLoop = ctx.executor();
+    ctx.channel().attr(BACKPRESSURE).set(this);
+  }
+
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    if (ctx.channel().isWritable()) {
+      resume(UNWRITABLE);
+      notifyWaiters();
+    } else {
+      suspend(UNWRITABLE);
+    }
+    ctx.fireChannelWritabilityChanged();
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    notifyWaiters();
+    ctx.fireChannelInactive();
+  }
+
+  /**
+   * Returns a future that is completed once the channel is writable.
+   *
+   * It fails if the channel is closed.
+   */
+  public Future<Void> whenWritable() {
+    Promise<Void> promise = eventLoop.newPromise();
+    if (eventLoop.inEventLoop()) {
+      addWaiter(promise);
+    } else {
+      eventLoop.execute(() -> addWaiter(promise));
+    }
+    return promise;
+  }
+
+  /**
+   * Notifies that a request has been received and it is going to be executed asynchronously.
+   *
+   * This method must be called on the event loop.
+   */
+  void onRequestQueued() {
+    assert eventLoop.inEventLoop();
+    pendingRequests++;
+    if (pendingRequests >= maxPendingRequests) {
+      suspend(TOO_MANY_REQUESTS);
+    }
+  }
+
+  /**
+   * Notifies that an asynchronous request has been completed.
+   */
+  void onRequestCompleted() {
+    if (eventLoop.inEventLoop()) {
+      onRequestCompleted0();
+    } else {
+      eventLoop.execute(this::onRequestCompleted0);
+    }
+  }
+
+  private void onRequestCompleted0() {
+    pendingRequests--;
+    if (pendingRequests < maxPendingRequests) {
+      resume(TOO_MANY_REQUESTS);
+    }
+  }
+
+  private void addWaiter(Promise<Void> promise) {
+    if (!ctx.channel().isActive()) {
+      promise.tryFailure(new ClosedChannelException());
+    } else if (ctx.channel().isWritable()) {
+      promise.trySuccess(null);
+    } else {
+      writabilityWaiters.add(promise);
+    }
+  }
+
+  private void notifyWaiters() {
+    if (writabilityWaiters.isEmpty()) {
+      return;
+    }
+    List<Promise<Void>> waiters = new ArrayList<>(writabilityWaiters);
+    writabilityWaiters.clear();
+    for (Promise<Void> waiter : waiters) {
+      addWaiter(waiter);
+    }
+  }
+
+  private void suspend(int reason) {
+    if (suspendReasons == 0) {
+      ctx.channel().config().setAutoRead(false);
+    }
+    suspendReasons |= reason;
+  }
+
+  private void resume(int reason) {
+    if (suspendReasons == 0) {
+      return;
+    }
+    suspendReasons &= ~reason;
+    if (suspendReasons == 0) {
+      ctx.channel().config().setAutoRead(true);
+    }
+  }
+}
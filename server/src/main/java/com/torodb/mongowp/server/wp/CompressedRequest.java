@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.wp;
+
+import com.torodb.mongowp.messages.request.RequestMessage;
+import com.torodb.mongowp.server.compression.MessageCompressor;
+
+/**
+ * A request that was received as OP_COMPRESSED, together with the compressor that must be used to
+ * compress its replies.
+ */
+class CompressedRequest {
+
+  private final RequestMessage request;
+  private final MessageCompressor compressor;
+
+  CompressedRequest(RequestMessage request, MessageCompressor compressor) {
+    this.request = request;
+    this.compressor = compressor;
+  }
+
+  RequestMessage getRequest() {
+    return request;
+  }
+
+  MessageCompressor getCompressor() {
+    return compressor;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.wp;
+
+import com.torodb.mongowp.server.compression.MessageCompressor;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A message received as OP_COMPRESSED once it has been decompressed by
+ * {@link MessageDecompressorHandler}.
+ *
+ * The content is the original message without the length field. The compressor is kept so the
+ * replies to the message can be compressed with it.
+ */
+public class DecompressedMessage extends DefaultByteBufHolder {
+
+  private final MessageCompressor compressor;
+
+  public DecompressedMessage(@Nonnull ByteBuf content, @Nonnull MessageCompressor compressor) {
+    super(content);
+    this.compressor = compressor;
+  }
+
+  @Nonnull
+  public MessageCompressor getCompressor() {
+    return compressor;
+  }
+
+  @Override
+  public DecompressedMessage copy() {
+    return new DecompressedMessage(content().copy(), compressor);
+  }
+
+  @Override
+  public DecompressedMessage duplicate() {
+    return new DecompressedMessage(content().duplicate(), compressor);
+  }
+
+  @Override
+  public DecompressedMessage retain() {
+    super.retain();
+    return this;
+  }
+
+  @Override
+  public DecompressedMessage retain(int increment) {
+    super.retain(increment);
+    return this;
+  }
+}
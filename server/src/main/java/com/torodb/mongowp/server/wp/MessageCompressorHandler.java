@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.wp;
+
+import com.google.common.primitives.Ints;
+import com.torodb.mongowp.MongoConstants;
+import com.torodb.mongowp.messages.response.ResponseOpCode;
+import com.torodb.mongowp.server.compression.MessageCompressor;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+/**
+ * Compresses the replies using OP_COMPRESSED when the request they reply to was compressed.
+ *
+ * It receives encoded messages without the length field. The compressor is taken from the
+ * {@link ReplyPromise} of each write, so every reply is compressed as its own request was, even
+ * when the requests of the connection are executed concurrently. Messages written with other
+ * promises are not compressed.
+ */
+@ChannelHandler.Sharable
+public class MessageCompressorHandler extends ChannelOutboundHandlerAdapter {
+
+  private static final int COMPRESSED_HEADER_BYTES =
+      MongoConstants.MESSAGE_HEADER_WITHOUT_LENGTH_FIELD_BYTES + Ints.BYTES + Ints.BYTES + 1;
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    MessageCompressor compressor = promise instanceof ReplyPromise
+        ? ((ReplyPromise) promise).getCompressor() : null;
+    if (compressor == null || !(msg instanceof ByteBuf)) {
+      ctx.write(msg, promise);
+      return;
+    }
+    ByteBuf compressed;
+    ByteBuf msgBuf = (ByteBuf) msg;
+    try {
+      compressed = compress(ctx, msgBuf, compressor);
+    } finally {
+      msgBuf.release();
+    }
+    ctx.write(compressed, promise);
+  }
+
+  private ByteBuf compress(ChannelHandlerContext ctx, ByteBuf msg, MessageCompressor compressor)
+      throws IOException {
+    ByteBuf in = msg.order(ByteOrder.LITTLE_ENDIAN);
+    int requestId = in.readInt();
+    int responseTo = in.readInt();
+    int opCode = in.readInt();
+    int uncompressedSize = in.readableBytes();
+
+    ByteBuf result = ctx.alloc().directBuffer(
+        COMPRESSED_HEADER_BYTES + compressor.getMaxCompressedLength(uncompressedSize));
+    try {
+      ByteBuf resultLe = result.order(ByteOrder.LITTLE_ENDIAN);
+      resultLe.writeInt(requestId);
+      resultLe.writeInt(responseTo);
+      resultLe.writeInt(ResponseOpCode.OP_COMPRESSED.getOpCode());
+      resultLe.writeInt(opCode);
+      resultLe.writeInt(uncompressedSize);
+      resultLe.writeByte(compressor.getId());
+      compressor.compress(in, result);
+    } catch (Throwable ex) {
+      result.release();
+      throw ex;
+    }
+    return result;
+  }
+}
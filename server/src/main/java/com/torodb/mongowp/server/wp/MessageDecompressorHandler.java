@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.wp;
+
+import com.google.common.primitives.Ints;
+import com.torodb.mongowp.MongoConstants;
+import com.torodb.mongowp.exceptions.BadValueException;
+import com.torodb.mongowp.messages.request.RequestOpCode;
+import com.torodb.mongowp.server.compression.MessageCompressor;
+import com.torodb.mongowp.server.compression.MessageCompressorRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import javax.inject.Inject;
+
+/**
+ * Decompresses OP_COMPRESSED messages, so the following handlers receive the original message.
+ *
+ * Messages that are not compressed are sent as they are. Decompressed messages are sent as
+ * {@link DecompressedMessage}, which keeps the compressor used by the client, so the replies to
+ * that request can be compressed with it.
+ */
+@ChannelHandler.Sharable
+public class MessageDecompressorHandler extends MessageToMessageDecoder<ByteBuf> {
+
+  private static final int OP_CODE_OFFSET = Ints.BYTES + Ints.BYTES;
+
+  private final MessageCompressorRegistry compressorRegistry;
+
+  @Inject
+  public MessageDecompressorHandler(MessageCompressorRegistry compressorRegistry) {
+    this.compressorRegistry = compressorRegistry;
+  }
+
+  @Override
+  protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out)
+      throws Exception {
+    ByteBuf in = msg.order(ByteOrder.LITTLE_ENDIAN);
+    if (in.readableBytes() < MongoConstants.MESSAGE_HEADER_WITHOUT_LENGTH_FIELD_BYTES
+        || in.getInt(in.readerIndex() + OP_CODE_OFFSET)
+        != RequestOpCode.OP_COMPRESSED.getOpCode()) {
+      out.add(msg.retain());
+      return;
+    }
+
+    int requestId = in.readInt();
+    int responseTo = in.readInt();
+    in.skipBytes(Ints.BYTES); //OP_COMPRESSED
+    int originalOpCode = in.readInt();
+    int uncompressedSize = in.readInt();
+    byte compressorId = in.readByte();
+
+    MessageCompressor compressor = compressorRegistry.getById(compressorId);
+    if (compressor == null) {
+      throw new BadValueException("Unsupported compressor with id " + compressorId);
+    }
+    if (uncompressedSize < 0 || uncompressedSize > MongoConstants.MAX_MESSAGE_SIZE_BYTES
+        - MongoConstants.MESSAGE_HEADER_BYTES) {
+      throw new BadValueException("Invalid uncompressed size " + uncompressedSize);
+    }
+
+    ByteBuf result = ctx.alloc().directBuffer(
+        MongoConstants.MESSAGE_HEADER_WITHOUT_LENGTH_FIELD_BYTES + uncompressedSize);
+    try {
+      ByteBuf resultLe = result.order(ByteOrder.LITTLE_ENDIAN);
+      resultLe.writeInt(requestId);
+      resultLe.writeInt(responseTo);
+      resultLe.writeInt(originalOpCode);
+      compressor.decompress(in, result, uncompressedSize);
+    } catch (IOException | RuntimeException ex) {
+      result.release();
+      throw new BadValueException("Could not decompress the message using "
+          + compressor.getName() + ": " + ex.getMessage());
+    }
+    out.add(new DecompressedMessage(result, compressor));
+  }
+}
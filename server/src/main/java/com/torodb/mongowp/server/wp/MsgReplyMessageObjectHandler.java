@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.wp;
+
+import com.torodb.mongowp.messages.response.MsgReplyMessage;
+import com.torodb.mongowp.server.encoder.MsgReplyMessageEncoder;
+import com.torodb.mongowp.server.util.ChannelLittleEndianEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+
+import javax.inject.Inject;
+
+/**
+ *
+ */
+public class MsgReplyMessageObjectHandler extends ChannelLittleEndianEncoder<MsgReplyMessage> {
+
+  private final RequestIdGenerator requestIdGenerator;
+
+  private final MsgReplyMessageEncoder encoder;
+
+  @Inject
+  public MsgReplyMessageObjectHandler(RequestIdGenerator requestIdGenerator,
+      MsgReplyMessageEncoder encoder) {
+    this.requestIdGenerator = requestIdGenerator;
+    this.encoder = encoder;
+  }
+
+  /**
+   * Replies whose body has been read from a buffer (for example, when a request is echoed) are
+   * written on a composite buffer, so the body is sent without being copied. Other replies are
+   * written on a buffer whose capacity is the exact size of the encoded reply.
+   */
+  @Override
+  protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, MsgReplyMessage msg,
+      boolean preferDirect) throws Exception {
+    if (encoder.isShareable(msg)) {
+      return ctx.alloc().compositeBuffer(Integer.MAX_VALUE);
+    }
+    int size = encoder.getEncodedSize(msg);
+    if (preferDirect) {
+      return ctx.alloc().ioBuffer(size);
+    } else {
+      return ctx.alloc().heapBuffer(size);
+    }
+  }
+
+  @Override
+  protected void encodeLittleEndian(ChannelHandlerContext ctx, MsgReplyMessage message,
+      ByteBuf out) throws Exception {
+    encoder.encodeMessageHeader(out, message, requestIdGenerator.getNextRequestId());
+    encoder.encodeMessageBody(out, message);
+  }
+}
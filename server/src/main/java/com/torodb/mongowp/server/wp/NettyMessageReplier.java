@@ -16,38 +16,78 @@
 package com.torodb.mongowp.server.wp;
 
 import com.google.common.base.Preconditions;
+import com.torodb.mongowp.messages.response.MsgReplyMessage;
 import com.torodb.mongowp.messages.response.ReplyMessage;
 import com.torodb.mongowp.server.callback.MessageReplier;
+import com.torodb.mongowp.server.callback.ReplyStream;
+import com.torodb.mongowp.server.compression.MessageCompressor;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.AttributeKey;
 import io.netty.util.AttributeMap;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * This message replier writes and flush the reply to the given netty channel.
+ *
+ * When the requests of the connection are executed concurrently, replies are written through a
+ * {@link ReplySequencer}, so they are sent in the same order the requests were received.
  */
 public class NettyMessageReplier extends MessageReplier {
 
   private static final Logger LOGGER = LogManager.getLogger(NettyMessageReplier.class);
   /**
-   * The requestId must be unique for each request
+   * The requestId of the last request received on the channel.
+   *
+   * It is overwritten by each received request, so it is only valid when the requests of a
+   * connection are not executed concurrently. Use {@link #getRequestId()} instead.
    */
   public static final AttributeKey<Integer> REQUEST_ID = AttributeKey.valueOf("requestId");
 
   private final ChannelHandlerContext channelHandlerContext;
+  private final int requestId;
+  @Nullable
+  private final ReplySequencer sequencer;
+  private final long sequence;
+  @Nullable
+  private final MessageCompressor compressor;
 
+  /**
+   * Creates a replier that replies to the last request received on the channel, as stored on the
+   * {@link #REQUEST_ID} attribute.
+   */
   public NettyMessageReplier(@Nonnull ChannelHandlerContext channelHandlerContext) {
+    this(channelHandlerContext, channelHandlerContext.attr(REQUEST_ID).get());
+  }
+
+  public NettyMessageReplier(@Nonnull ChannelHandlerContext channelHandlerContext, int requestId) {
+    this(channelHandlerContext, requestId, null, 0, null);
+  }
+
+  /**
+   * @param compressor the compressor used by the client to send the request, which is used to
+   *                   compress the replies, or null if the request was not compressed
+   */
+  NettyMessageReplier(@Nonnull ChannelHandlerContext channelHandlerContext, int requestId,
+      @Nullable ReplySequencer sequencer, long sequence, @Nullable MessageCompressor compressor) {
     Preconditions.checkNotNull(channelHandlerContext);
 
     this.channelHandlerContext = channelHandlerContext;
+    this.requestId = requestId;
+    this.sequencer = sequencer;
+    this.sequence = sequence;
+    this.compressor = compressor;
   }
 
   @Override
   public int getRequestId() {
-    return channelHandlerContext.attr(REQUEST_ID).get();
+    return requestId;
   }
 
   @Override
@@ -57,8 +97,123 @@ public class NettyMessageReplier extends MessageReplier {
 
   @Override
   public void replyMessage(ReplyMessage replyMessage) {
-    channelHandlerContext.writeAndFlush(replyMessage);
+    write(replyMessage);
     LOGGER.debug("Replying " + replyMessage);
   }
 
+  @Override
+  public void replyMessage(MsgReplyMessage msgReplyMessage) {
+    write(msgReplyMessage);
+    LOGGER.debug("Replying " + msgReplyMessage);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * A new reply is requested from the stream once the previous one has been completely written to
+   * the socket, so at most one reply is retained when the client does not read fast enough. Each
+   * reply answers to the requestId assigned to the previous one, as the exhaust protocol requires.
+   *
+   * When this method is called on the event loop (because requests are executed inline) the
+   * stream is consumed asynchronously from the event loop, as it cannot be blocked. Otherwise
+   * the current thread is blocked until the stream is consumed.
+   */
+  @Override
+  public void replyStream(ReplyMessage first, ReplyStream stream) {
+    LOGGER.debug("Replying " + first + " and a stream of replies");
+    if (channelHandlerContext.executor().inEventLoop()) {
+      writeStreamAsync(write(first), stream);
+    } else {
+      writeStream(write(first), stream);
+    }
+  }
+
+  private void writeStream(ReplyPromise firstPromise, ReplyStream stream) {
+    ReplyPromise previous = firstPromise;
+    boolean consumed = false;
+    try {
+      while (true) {
+        Future<?> ready = whenWritable(previous);
+        if (!ready.awaitUninterruptibly().isSuccess()) {
+          LOGGER.debug("Aborting a stream of replies, as a reply could not be written",
+              ready.cause());
+          return;
+        }
+        ReplyMessage next = stream.next(previous.getRequestId());
+        if (next == null) {
+          break;
+        }
+        previous = write(next);
+      }
+      consumed = true;
+    } finally {
+      if (!consumed) {
+        stream.close();
+      }
+    }
+  }
+
+  private void writeStreamAsync(ReplyPromise previous, ReplyStream stream) {
+    whenWritable(previous).addListener(future -> {
+      if (!future.isSuccess()) {
+        LOGGER.debug("Aborting a stream of replies, as a reply could not be written",
+            future.cause());
+        stream.close();
+        return;
+      }
+      ReplyMessage next;
+      try {
+        next = stream.next(previous.getRequestId());
+      } catch (RuntimeException ex) {
+        stream.close();
+        channelHandlerContext.fireExceptionCaught(ex);
+        return;
+      }
+      if (next != null) {
+        writeStreamAsync(write(next), stream);
+      }
+    });
+  }
+
+  /**
+   * Returns a future that is completed once the given write has finished and the channel is
+   * writable.
+   */
+  private Future<?> whenWritable(ChannelFuture previousWrite) {
+    BackpressureHandler backpressure = BackpressureHandler.get(channelHandlerContext);
+    if (backpressure == null) {
+      return previousWrite;
+    }
+    if (!previousWrite.isDone()) {
+      Promise<Void> promise = channelHandlerContext.executor().newPromise();
+      previousWrite.addListener(written -> {
+        if (written.isSuccess()) {
+          backpressure.whenWritable().addListener(writable -> {
+            if (writable.isSuccess()) {
+              promise.trySuccess(null);
+            } else {
+              promise.tryFailure(writable.cause());
+            }
+          });
+        } else {
+          promise.tryFailure(written.cause());
+        }
+      });
+      return promise;
+    }
+    if (!previousWrite.isSuccess()) {
+      return previousWrite;
+    }
+    return backpressure.whenWritable();
+  }
+
+  private ReplyPromise write(Object reply) {
+    ReplyPromise promise = new ReplyPromise(channelHandlerContext.channel(), compressor);
+    if (sequencer == null) {
+      channelHandlerContext.writeAndFlush(reply, promise);
+    } else {
+      sequencer.write(sequence, reply, promise);
+    }
+    return promise;
+  }
 }
@@ -20,14 +20,20 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.torodb.mongowp.MongoConstants;
 import com.torodb.mongowp.MongoServerConfig;
 import com.torodb.mongowp.annotations.MongoWp;
+import com.torodb.mongowp.server.util.FlushConsolidationHandler;
 import com.torodb.mongowp.server.util.LengthFieldPrependerLittleEndian;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelConfig;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -51,24 +57,34 @@ public class NettyMongoServer extends AbstractIdleService {
   private static final Logger LOGGER = LogManager.getLogger(NettyMongoServer.class);
 
   private final int port;
+  private final MongoServerConfig config;
   private EventLoopGroup connectionGroup;
   private EventLoopGroup workerGroup;
   private final RequestMessageObjectHandler requestMessageObjectHandler;
   private final Provider<RequestMessageByteHandler> requestMessageByteHandler;
   private final Provider<ReplyMessageObjectHandler> replyMessageObjectHandler;
+  private final Provider<MsgReplyMessageObjectHandler> msgReplyMessageObjectHandler;
   private final LengthFieldPrependerLittleEndian lengthFieldPrependerLittleEndian;
+  private final MessageDecompressorHandler messageDecompressorHandler;
+  private final MessageCompressorHandler messageCompressorHandler;
   private final ThreadFactory threadFactory;
 
   @Inject
   public NettyMongoServer(@MongoWp ThreadFactory threadFactory, MongoServerConfig mongoServerConfig,
       Provider<RequestMessageByteHandler> requestMessageByteHandler,
       Provider<ReplyMessageObjectHandler> replyMessageObjectHandler,
-      RequestMessageObjectHandler requestMessageObjectHandler) {
+      Provider<MsgReplyMessageObjectHandler> msgReplyMessageObjectHandler,
+      RequestMessageObjectHandler requestMessageObjectHandler,
+      MessageDecompressorHandler messageDecompressorHandler) {
     this.lengthFieldPrependerLittleEndian = new LengthFieldPrependerLittleEndian(
         MongoConstants.MESSAGE_LENGTH_FIELD_BYTES, true);
+    this.messageDecompressorHandler = messageDecompressorHandler;
+    this.messageCompressorHandler = new MessageCompressorHandler();
     this.port = mongoServerConfig.getPort();
+    this.config = mongoServerConfig;
     this.requestMessageByteHandler = requestMessageByteHandler;
     this.replyMessageObjectHandler = replyMessageObjectHandler;
+    this.msgReplyMessageObjectHandler = msgReplyMessageObjectHandler;
     this.requestMessageObjectHandler = requestMessageObjectHandler;
     this.threadFactory = threadFactory;
   }
@@ -83,37 +99,108 @@ public class NettyMongoServer extends AbstractIdleService {
   }
 
   private void buildChildHandlerPipeline(ChannelPipeline pipeline) {
+    if (config.getMaxPendingFlushes() > 0) {
+      pipeline.addLast(new FlushConsolidationHandler(config.getMaxPendingFlushes(),
+          config.getMaxPendingFlushBytes()));
+    }
+    pipeline.addLast(new BackpressureHandler(config.getMaxPendingRequests()));
     pipeline.addLast(new LengthFieldBasedFrameDecoder(
         ByteOrder.LITTLE_ENDIAN, MongoConstants.MAX_MESSAGE_SIZE_BYTES, 0,
         MongoConstants.MESSAGE_LENGTH_FIELD_BYTES, -MongoConstants.MESSAGE_LENGTH_FIELD_BYTES,
         MongoConstants.MESSAGE_LENGTH_FIELD_BYTES, true
     ));
+    pipeline.addLast(messageDecompressorHandler);
     pipeline.addLast(requestMessageByteHandler.get());
     pipeline.addLast(lengthFieldPrependerLittleEndian);
+    pipeline.addLast(messageCompressorHandler);
     pipeline.addLast(replyMessageObjectHandler.get());
+    pipeline.addLast(msgReplyMessageObjectHandler.get());
     pipeline.addLast(requestMessageObjectHandler);
   }
 
+  private boolean useEpoll() {
+    switch (config.getTransport()) {
+      case NIO:
+        return false;
+      case EPOLL:
+        if (!isEpollAvailable()) {
+          throw new IllegalStateException("The epoll transport is not available",
+              Epoll.unavailabilityCause());
+        }
+        return true;
+      case AUTO:
+      default:
+        return isEpollAvailable();
+    }
+  }
+
+  private static boolean isEpollAvailable() {
+    try {
+      return Epoll.isAvailable();
+    } catch (LinkageError ex) {
+      return false;
+    }
+  }
+
+  private EventLoopGroup createEventLoopGroup(boolean epoll, int threads, String nameFormat) {
+    ThreadFactory groupThreadFactory = new ThreadFactoryBuilder().setNameFormat(nameFormat)
+        .build();
+    if (epoll) {
+      return new EpollEventLoopGroup(threads, groupThreadFactory);
+    }
+    return new NioEventLoopGroup(threads, groupThreadFactory);
+  }
+
+  private void configureChildChannel(SocketChannel socketChannel) {
+    ChannelConfig channelConfig = socketChannel.config();
+    int highWaterMark = config.getWriteBufferHighWaterMark();
+    int lowWaterMark = config.getWriteBufferLowWaterMark();
+    //Netty rejects a high water mark lower than the current low one and vice versa
+    if (highWaterMark >= channelConfig.getWriteBufferLowWaterMark()) {
+      channelConfig.setWriteBufferHighWaterMark(highWaterMark);
+      channelConfig.setWriteBufferLowWaterMark(lowWaterMark);
+    } else {
+      channelConfig.setWriteBufferLowWaterMark(lowWaterMark);
+      channelConfig.setWriteBufferHighWaterMark(highWaterMark);
+    }
+  }
+
   @Override
   protected void startUp() throws Exception {
-    LOGGER.info("Listening MongoDB requests on port " + port);
+    boolean epoll = useEpoll();
+    LOGGER.info("Listening MongoDB requests on port {} using the {} transport", port,
+        epoll ? "epoll" : "nio");
 
-    connectionGroup = new NioEventLoopGroup(0, new ThreadFactoryBuilder().setNameFormat(
-        "netty-connection-%d").build());
-    workerGroup = new NioEventLoopGroup(0, new ThreadFactoryBuilder().setNameFormat(
-        "netty-worker-%d").build());
+    connectionGroup = createEventLoopGroup(epoll, config.getConnectionThreads(),
+        "netty-connection-%d");
+    workerGroup = createEventLoopGroup(epoll, config.getWorkerThreads(), "netty-worker-%d");
+    Class<? extends ServerChannel> channelClass = epoll
+        ? EpollServerSocketChannel.class
+        : NioServerSocketChannel.class;
 
     ServerBootstrap bootstrap = new ServerBootstrap();
     bootstrap.group(connectionGroup, workerGroup)
-        .channel(NioServerSocketChannel.class)
+        .channel(channelClass)
         .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+        .childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
         .childHandler(new ChannelInitializer<SocketChannel>() {
           @Override
           protected void initChannel(SocketChannel socketChannel) throws Exception {
+            configureChildChannel(socketChannel);
             buildChildHandlerPipeline(socketChannel.pipeline());
           }
-        }) // TODO: set TCP channel options?
-        ;
+        });
+    if (config.getBacklog() > 0) {
+      bootstrap.option(ChannelOption.SO_BACKLOG, config.getBacklog());
+    }
+    if (config.getReceiveBufferSize() > 0) {
+      //set on the server socket too, as the TCP window scale is negotiated before accepting
+      bootstrap.option(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+      bootstrap.childOption(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+    }
+    if (config.getSendBufferSize() > 0) {
+      bootstrap.childOption(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+    }
 
     ChannelFuture channelFuture = bootstrap.bind(port).awaitUninterruptibly();
     if (!channelFuture.isSuccess()) {
@@ -131,6 +218,7 @@ public class NettyMongoServer extends AbstractIdleService {
     if (connectionGroup != null) {
       connectionGroup.shutdownGracefully().syncUninterruptibly();
     }
+    requestMessageObjectHandler.shutDown();
   }
 
   public int getPort() {
@@ -20,18 +20,27 @@ import com.torodb.mongowp.server.encoder.ReplyMessageEncoder;
 import com.torodb.mongowp.server.util.ChannelLittleEndianEncoder;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 /**
  *
  */
-public class ReplyMessageObjectHandler extends ChannelLittleEndianEncoder {
+public class ReplyMessageObjectHandler extends ChannelLittleEndianEncoder<ReplyMessage> {
 
   private final RequestIdGenerator requestIdGenerator;
 
   private final ReplyMessageEncoder encoder;
 
+  /**
+   * The promise of the reply that is being encoded, used to publish the requestId assigned to the
+   * reply when it is a {@link ReplyPromise}.
+   */
+  @Nullable
+  private ChannelPromise encodingPromise;
+
   @Inject
   public ReplyMessageObjectHandler(RequestIdGenerator requestIdGenerator,
       ReplyMessageEncoder encoder) {
@@ -39,10 +48,40 @@ public class ReplyMessageObjectHandler extends ChannelLittleEndianEncoder {
     this.encoder = encoder;
   }
 
+  /**
+   * Replies are written on a buffer whose capacity is the exact size of the encoded reply, so it
+   * is allocated only once.
+   */
+  @Override
+  protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, ReplyMessage msg,
+      boolean preferDirect) throws Exception {
+    int size = encoder.getEncodedSize(msg);
+    if (preferDirect) {
+      return ctx.alloc().ioBuffer(size);
+    } else {
+      return ctx.alloc().heapBuffer(size);
+    }
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    encodingPromise = promise;
+    try {
+      super.write(ctx, msg, promise);
+    } finally {
+      encodingPromise = null;
+    }
+  }
+
   @Override
   protected void encodeLittleEndian(ChannelHandlerContext ctx, ReplyMessage message, ByteBuf out)
       throws Exception {
-    encoder.encodeMessageHeader(out, message, requestIdGenerator.getNextRequestId());
+    int requestId = requestIdGenerator.getNextRequestId();
+    if (encodingPromise instanceof ReplyPromise) {
+      ((ReplyPromise) encodingPromise).setRequestId(requestId);
+    }
+    encoder.encodeMessageHeader(out, message, requestId);
     encoder.encodeMessageBody(out, message);
   }
 }
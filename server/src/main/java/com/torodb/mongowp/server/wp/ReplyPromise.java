@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.wp;
+
+import com.torodb.mongowp.server.compression.MessageCompressor;
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultChannelPromise;
+
+import javax.annotation.Nullable;
+
+/**
+ * A promise of the write of a reply that carries the state of the request it replies to along the
+ * outbound pipeline.
+ *
+ * <ul>
+ * <li>The compressor used by the request, so {@link MessageCompressorHandler} compresses the reply
+ * with it.</li>
+ * <li>The requestId assigned to a {@link com.torodb.mongowp.messages.response.ReplyMessage} when
+ * it is encoded. Consecutive replies to the same request (like the batches of an exhaust cursor)
+ * must answer to the requestId of the previous reply, which is only known once that reply has been
+ * encoded.</li>
+ * </ul>
+ */
+public class ReplyPromise extends DefaultChannelPromise {
+
+  @Nullable
+  private final MessageCompressor compressor;
+  private volatile int requestId;
+  private volatile boolean requestIdAssigned;
+
+  /**
+   * @param compressor the compressor the reply must be compressed with or null if it must not be
+   *                   compressed
+   */
+  public ReplyPromise(Channel channel, @Nullable MessageCompressor compressor) {
+    super(channel);
+    this.compressor = compressor;
+  }
+
+  @Nullable
+  public MessageCompressor getCompressor() {
+    return compressor;
+  }
+
+  void setRequestId(int requestId) {
+    this.requestId = requestId;
+    this.requestIdAssigned = true;
+  }
+
+  /**
+   * Returns the requestId assigned to the reply.
+   *
+   * @throws IllegalStateException if the reply has not been encoded yet
+   */
+  int getRequestId() {
+    if (!requestIdAssigned) {
+      throw new IllegalStateException("The reply has not been encoded yet");
+    }
+    return requestId;
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.wp;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.EventExecutor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Writes the replies of the requests of a connection in the same order the requests were received,
+ * even if the requests are executed concurrently.
+ *
+ * Each request is identified by a sequence number returned by {@link #register()}. Replies of the
+ * oldest not completed request are written as soon as they are produced, while replies of newer
+ * requests are buffered until all previous requests are {@link #complete(long, AutoCloseable)
+ * completed}.
+ *
+ * All the state is confined to the channel event loop, so methods called from other threads are
+ * executed as event loop tasks.
+ */
+@ThreadSafe
+class ReplySequencer {
+
+  private static final Logger LOGGER = LogManager.getLogger(ReplySequencer.class);
+
+  private final ChannelHandlerContext ctx;
+  private final EventExecutor eventLoop;
+  private final Map<Long, Slot> slots = new HashMap<>();
+  private long nextSequence;
+  private long head;
+  @Nullable
+  private Runnable idleCallback;
+
+  ReplySequencer(ChannelHandlerContext ctx) {
+    this.ctx = ctx;
+    this.eventLoop = ctx.executor();
+  }
+
+  /**
+   * Registers a new request and returns its sequence number.
+   *
+   * This method must be called on the event loop.
+   */
+  long register() {
+    assert eventLoop.inEventLoop();
+    return nextSequence++;
+  }
+
+  /**
+   * @return the number of registered requests that have not been completed yet.
+   */
+  int getOutstanding() {
+    assert eventLoop.inEventLoop();
+    return (int) (nextSequence - head);
+  }
+
+  void write(long sequence, Object reply, ChannelPromise promise) {
+    if (eventLoop.inEventLoop()) {
+      write0(sequence, reply, promise);
+    } else {
+      eventLoop.execute(() -> write0(sequence, reply, promise));
+    }
+  }
+
+  /**
+   * Marks the given request as completed.
+   *
+   * @param resource a resource that will be closed once all the replies of the request have been
+   *                 written
+   */
+  void complete(long sequence, @Nullable AutoCloseable resource) {
+    if (eventLoop.inEventLoop()) {
+      complete0(sequence, resource);
+    } else {
+      eventLoop.execute(() -> complete0(sequence, resource));
+    }
+  }
+
+  /**
+   * Executes the given callback once all registered requests have been completed.
+   *
+   * This method must be called on the event loop.
+   */
+  void whenIdle(Runnable callback) {
+    assert eventLoop.inEventLoop();
+    if (getOutstanding() == 0) {
+      callback.run();
+    } else {
+      idleCallback = callback;
+    }
+  }
+
+  private void write0(long sequence, Object reply, ChannelPromise promise) {
+    if (sequence == head) {
+      ctx.writeAndFlush(reply, promise);
+    } else {
+      Slot slot = getSlot(sequence);
+      slot.replies.add(reply);
+      slot.promises.add(promise);
+    }
+  }
+
+  private void complete0(long sequence, @Nullable AutoCloseable resource) {
+    if (sequence != head) {
+      Slot slot = getSlot(sequence);
+      slot.completed = true;
+      slot.resource = resource;
+      return;
+    }
+    close(resource);
+    head++;
+    Slot slot;
+    while ((slot = slots.remove(head)) != null) {
+      if (!slot.replies.isEmpty()) {
+        for (int i = 0; i < slot.replies.size(); i++) {
+          ctx.write(slot.replies.get(i), slot.promises.get(i));
+        }
+        ctx.flush();
+      }
+      if (!slot.completed) {
+        break;
+      }
+      close(slot.resource);
+      head++;
+    }
+    if (head == nextSequence && idleCallback != null) {
+      Runnable callback = idleCallback;
+      idleCallback = null;
+      callback.run();
+    }
+  }
+
+  private Slot getSlot(long sequence) {
+    return slots.computeIfAbsent(sequence, seq -> new Slot());
+  }
+
+  private static void close(@Nullable AutoCloseable resource) {
+    if (resource == null) {
+      return;
+    }
+    try {
+      resource.close();
+    } catch (Exception ex) {
+      LOGGER.warn("Error while closing a request", ex);
+    }
+  }
+
+  private static class Slot {
+
+    private final List<Object> replies = new ArrayList<>(1);
+    private final List<ChannelPromise> promises = new ArrayList<>(1);
+    private boolean completed;
+    @Nullable
+    private AutoCloseable resource;
+  }
+}
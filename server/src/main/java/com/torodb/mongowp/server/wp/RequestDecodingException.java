@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.wp;
+
+import com.torodb.mongowp.messages.request.RequestOpCode;
+import com.torodb.mongowp.server.compression.MessageCompressor;
+
+import javax.annotation.Nullable;
+
+/**
+ * Thrown when the body of a request cannot be decoded, so the error can be replied to that
+ * request.
+ *
+ * The cause is the error that prevented the request from being decoded.
+ */
+class RequestDecodingException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int requestId;
+  private final RequestOpCode opCode;
+  @Nullable
+  private final transient MessageCompressor compressor;
+
+  RequestDecodingException(int requestId, RequestOpCode opCode,
+      @Nullable MessageCompressor compressor, Throwable cause) {
+    super("Error while decoding the " + opCode + " request " + requestId, cause);
+    this.requestId = requestId;
+    this.opCode = opCode;
+    this.compressor = compressor;
+  }
+
+  int getRequestId() {
+    return requestId;
+  }
+
+  RequestOpCode getOpCode() {
+    return opCode;
+  }
+
+  /**
+   * @return the compressor used by the client to send the request or null if it was not
+   *         compressed
+   */
+  @Nullable
+  MessageCompressor getCompressor() {
+    return compressor;
+  }
+}
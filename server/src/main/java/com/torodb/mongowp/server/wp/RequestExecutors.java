@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.server.wp;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.torodb.mongowp.MongoServerConfig;
+import com.torodb.mongowp.MongoServerConfig.ExecutionMode;
+import com.torodb.mongowp.annotations.MongoWp;
+import com.torodb.mongowp.server.util.BoundedExecutor;
+import com.torodb.mongowp.server.util.SerialExecutor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+
+/**
+ * Creates the executors used to execute requests, depending on the configured
+ * {@link ExecutionMode}.
+ *
+ * All connections share the same underlying executor, but each connection uses its own
+ * {@link BoundedExecutor}, so a connection never executes more than
+ * {@link MongoServerConfig#getMaxInFlightRequests()} requests at the same time and its requests are
+ * started in the same order they were received.
+ */
+@ThreadSafe
+public class RequestExecutors {
+
+  private static final Logger LOGGER = LogManager.getLogger(RequestExecutors.class);
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  @Nullable
+  private final ExecutorService sharedExecutor;
+  private final int maxInFlightRequests;
+
+  @Inject
+  public RequestExecutors(@MongoWp ThreadFactory threadFactory, MongoServerConfig config) {
+    this(createSharedExecutor(threadFactory, config), config.getMaxInFlightRequests());
+  }
+
+  /**
+   * @param sharedExecutor      the executor used to execute requests or null to execute them
+   *                            inline
+   * @param maxInFlightRequests the max number of requests of a connection that can be executed
+   *                            at the same time
+   */
+  public RequestExecutors(@Nullable ExecutorService sharedExecutor, int maxInFlightRequests) {
+    Preconditions.checkArgument(maxInFlightRequests > 0,
+        "The max number of in flight requests must be positive");
+    this.sharedExecutor = sharedExecutor;
+    this.maxInFlightRequests = maxInFlightRequests;
+  }
+
+  @Nullable
+  private static ExecutorService createSharedExecutor(ThreadFactory threadFactory,
+      MongoServerConfig config) {
+    switch (config.getExecutionMode()) {
+      case INLINE:
+        return null;
+      case VIRTUAL_THREAD: {
+        ExecutorService virtualExecutor = createVirtualThreadExecutor();
+        if (virtualExecutor != null) {
+          return virtualExecutor;
+        }
+        LOGGER.warn("Virtual threads are not supported by this JVM. A pool of {} threads will be "
+            + "used to execute requests", config.getExecutionThreads());
+        return createThreadPool(threadFactory, config.getExecutionThreads());
+      }
+      case THREAD_POOL:
+      default:
+        return createThreadPool(threadFactory, config.getExecutionThreads());
+    }
+  }
+
+  private static ExecutorService createThreadPool(ThreadFactory threadFactory, int threads) {
+    ThreadFactory namedFactory = new ThreadFactoryBuilder()
+        .setThreadFactory(threadFactory)
+        .setNameFormat("mongowp-request-%d")
+        .build();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<>(), namedFactory);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Returns a virtual thread per task executor or null if the JVM does not support them.
+   *
+   * This library targets Java 8, so the executor is created by reflection.
+   */
+  @Nullable
+  private static ExecutorService createVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      LOGGER.debug("Virtual threads are not available", ex);
+      return null;
+    }
+  }
+
+  /**
+   * @return true iff requests must be executed on the thread that reads them
+   */
+  public boolean isInline() {
+    return sharedExecutor == null;
+  }
+
+  /**
+   * Creates the executor that will execute the requests of a new connection.
+   *
+   * @throws IllegalStateException if requests are executed {@link #isInline() inline}
+   */
+  public BoundedExecutor newConnectionExecutor() {
+    if (sharedExecutor == null) {
+      throw new IllegalStateException("Requests are executed inline");
+    }
+    if (maxInFlightRequests == 1) {
+      return new SerialExecutor(sharedExecutor);
+    }
+    return new BoundedExecutor(sharedExecutor, maxInFlightRequests);
+  }
+
+  public void shutDown() {
+    if (sharedExecutor != null) {
+      sharedExecutor.shutdown();
+    }
+  }
+}
@@ -18,7 +18,9 @@ package com.torodb.mongowp.server.wp;
 import com.google.common.primitives.Ints;
 import com.torodb.mongowp.exceptions.IllegalOperationException;
 import com.torodb.mongowp.messages.request.RequestBaseMessage;
+import com.torodb.mongowp.messages.request.RequestMessage;
 import com.torodb.mongowp.messages.request.RequestOpCode;
+import com.torodb.mongowp.server.compression.MessageCompressor;
 import com.torodb.mongowp.server.decoder.BaseMessageDecoder;
 import com.torodb.mongowp.server.decoder.MessageDecoder;
 import com.torodb.mongowp.server.decoder.MessageDecoderLocator;
@@ -31,6 +33,7 @@ import org.apache.logging.log4j.Logger;
 
 import java.util.List;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 /**
@@ -44,12 +47,33 @@ public class RequestMessageByteHandler extends ChannelLittleEndianHandler {
       "Message decoder not implemented for opCode ";
 
   private final MessageDecoderLocator decoderLocator;
+  /**
+   * The compressor used by the client to send the message that is being decoded, if it was sent as
+   * OP_COMPRESSED.
+   */
+  @Nullable
+  private MessageCompressor frameCompressor;
 
   @Inject
   public RequestMessageByteHandler(MessageDecoderLocator decoderLocator) {
     this.decoderLocator = decoderLocator;
   }
 
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof DecompressedMessage) {
+      DecompressedMessage decompressed = (DecompressedMessage) msg;
+      frameCompressor = decompressed.getCompressor();
+      try {
+        super.channelRead(ctx, decompressed.content());
+      } finally {
+        frameCompressor = null;
+      }
+    } else {
+      super.channelRead(ctx, msg);
+    }
+  }
+
   @Override
   protected void decodeLittleEndian(
       ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf, List<Object> objects
@@ -71,12 +95,27 @@ public class RequestMessageByteHandler extends ChannelLittleEndianHandler {
     }
 
     // Body
+    int requestId = requestBaseMessage.getRequestId();
     MessageDecoder<?> messageDecoder = decoderLocator.getByOpCode(requestOpCode);
     if (null == messageDecoder) {
       LOGGER.error(OPERATION_NOT_IMPLEMENTED + requestOpCode);
-      throw new UnsupportedOperationException(OPERATION_NOT_IMPLEMENTED + requestOpCode);
+      //the frame is discarded, so the connection can keep being used
+      byteBuf.skipBytes(byteBuf.readableBytes());
+      throw new RequestDecodingException(requestId, requestOpCode, frameCompressor,
+          new UnsupportedOperationException(OPERATION_NOT_IMPLEMENTED + requestOpCode));
     }
 
-    objects.add(messageDecoder.decode(byteBuf, requestBaseMessage));
+    RequestMessage requestMessage;
+    try {
+      requestMessage = messageDecoder.decode(byteBuf, requestBaseMessage);
+    } catch (Exception ex) {
+      byteBuf.skipBytes(byteBuf.readableBytes());
+      throw new RequestDecodingException(requestId, requestOpCode, frameCompressor, ex);
+    }
+    if (frameCompressor == null) {
+      objects.add(requestMessage);
+    } else {
+      objects.add(new CompressedRequest(requestMessage, frameCompressor));
+    }
   }
 }
@@ -19,6 +19,7 @@ import static com.torodb.mongowp.messages.request.RequestOpCode.OP_DELETE;
 import static com.torodb.mongowp.messages.request.RequestOpCode.OP_GET_MORE;
 import static com.torodb.mongowp.messages.request.RequestOpCode.OP_INSERT;
 import static com.torodb.mongowp.messages.request.RequestOpCode.OP_KILL_CURSORS;
+import static com.torodb.mongowp.messages.request.RequestOpCode.OP_MSG;
 import static com.torodb.mongowp.messages.request.RequestOpCode.OP_QUERY;
 import static com.torodb.mongowp.messages.request.RequestOpCode.OP_UPDATE;
 
@@ -26,12 +27,15 @@ import com.torodb.mongowp.messages.request.DeleteMessage;
 import com.torodb.mongowp.messages.request.GetMoreMessage;
 import com.torodb.mongowp.messages.request.InsertMessage;
 import com.torodb.mongowp.messages.request.KillCursorsMessage;
+import com.torodb.mongowp.messages.request.MsgMessage;
 import com.torodb.mongowp.messages.request.QueryMessage;
 import com.torodb.mongowp.messages.request.RequestMessage;
 import com.torodb.mongowp.messages.request.RequestOpCode;
 import com.torodb.mongowp.messages.request.UpdateMessage;
 import com.torodb.mongowp.server.callback.MessageReplier;
 import com.torodb.mongowp.server.callback.RequestProcessor;
+import com.torodb.mongowp.server.compression.MessageCompressor;
+import com.torodb.mongowp.server.util.BoundedExecutor;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
@@ -39,75 +43,219 @@ import io.netty.util.AttributeKey;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 /**
+ * Dispatches the received requests to the {@link RequestProcessor}.
  *
+ * Requests are executed on the network thread or on the executor of the connection, as decided by
+ * {@link RequestExecutors}. The executor of a connection may execute several of its requests
+ * concurrently (see {@link com.torodb.mongowp.MongoServerConfig#getMaxInFlightRequests()}), but
+ * they are started in the order they were received and their replies are written in that same
+ * order by the channel event loop.
  */
 @ChannelHandler.Sharable
 public class RequestMessageObjectHandler extends ChannelInboundHandlerAdapter {
 
   private static final Logger LOGGER = LogManager.getLogger(RequestMessageObjectHandler.class);
 
+  /**
+   * The op code of the last request received on the channel.
+   *
+   * It is overwritten by each received request, so it is only valid when the requests of a
+   * connection are not executed concurrently.
+   */
   public static final AttributeKey<RequestOpCode> REQUEST_OP_CODE = AttributeKey.valueOf(
       "requestOpCode");
 
+  private static final AttributeKey<BoundedExecutor> CONNECTION_EXECUTOR = AttributeKey.valueOf(
+      "connectionExecutor");
+  private static final AttributeKey<ReplySequencer> REPLY_SEQUENCER = AttributeKey.valueOf(
+      "replySequencer");
+
   private final RequestProcessor requestProcessor;
+  private final RequestExecutors requestExecutors;
 
   @Inject
-  public RequestMessageObjectHandler(RequestProcessor requestProcessor) {
+  public RequestMessageObjectHandler(RequestProcessor requestProcessor,
+      RequestExecutors requestExecutors) {
     this.requestProcessor = requestProcessor;
+    this.requestExecutors = requestExecutors;
   }
 
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-    try (RequestMessage requestMessage = (RequestMessage) msg) {
-      ctx.attr(NettyMessageReplier.REQUEST_ID).set(requestMessage.getBaseMessage().getRequestId());
-      LOGGER.debug("Received message type: {}, data: {}", 
-          requestMessage.getOpCode(), requestMessage);
-
-      MessageReplier messageReplier = new NettyMessageReplier(ctx);
-      ctx.attr(REQUEST_OP_CODE).set(requestMessage.getOpCode());
-      switch (requestMessage.getOpCode()) {
-        case OP_QUERY:
-          assert requestMessage instanceof QueryMessage;
-          requestProcessor.queryMessage((QueryMessage) requestMessage, messageReplier);
-          break;
-        case OP_GET_MORE:
-          assert requestMessage instanceof GetMoreMessage;
-          requestProcessor.getMore((GetMoreMessage) requestMessage, messageReplier);
-          break;
-        case OP_KILL_CURSORS:
-          assert requestMessage instanceof KillCursorsMessage;
-          requestProcessor.killCursors((KillCursorsMessage) requestMessage, messageReplier);
-          break;
-        case OP_INSERT:
-          assert requestMessage instanceof InsertMessage;
-          requestProcessor.insert((InsertMessage) requestMessage, messageReplier);
-          break;
-        case OP_UPDATE:
-          assert requestMessage instanceof UpdateMessage;
-          requestProcessor.update((UpdateMessage) requestMessage, messageReplier);
-          break;
-        case OP_DELETE:
-          assert requestMessage instanceof DeleteMessage;
-          requestProcessor.delete((DeleteMessage) requestMessage, messageReplier);
-          break;
-        default:
-          throw new UnsupportedOperationException(
-              "Message replier not implemented for "
-              + requestMessage.getOpCode() + " opCode"
-          );
+    RequestMessage requestMessage;
+    MessageCompressor compressor;
+    if (msg instanceof CompressedRequest) {
+      requestMessage = ((CompressedRequest) msg).getRequest();
+      compressor = ((CompressedRequest) msg).getCompressor();
+    } else {
+      requestMessage = (RequestMessage) msg;
+      compressor = null;
+    }
+    int requestId = requestMessage.getBaseMessage().getRequestId();
+    ctx.attr(NettyMessageReplier.REQUEST_ID).set(requestId);
+    ctx.attr(REQUEST_OP_CODE).set(requestMessage.getOpCode());
+
+    BoundedExecutor connectionExecutor = ctx.attr(CONNECTION_EXECUTOR).get();
+    if (connectionExecutor == null) {
+      try (RequestMessage closeable = requestMessage) {
+        NettyMessageReplier messageReplier = new NettyMessageReplier(ctx, requestId, null, 0,
+            compressor);
+        try {
+          process(requestMessage, messageReplier);
+        } catch (Throwable ex) {
+          handleError(ctx, requestMessage, messageReplier, ex);
+        }
+      }
+      return;
+    }
+
+    ReplySequencer sequencer = ctx.attr(REPLY_SEQUENCER).get();
+    BackpressureHandler backpressure = BackpressureHandler.get(ctx);
+    long sequence = sequencer.register();
+    NettyMessageReplier messageReplier = new NettyMessageReplier(ctx, requestId, sequencer,
+        sequence, compressor);
+    if (backpressure != null) {
+      backpressure.onRequestQueued();
+    }
+    try {
+      connectionExecutor.execute(() -> {
+        try {
+          process(requestMessage, messageReplier);
+        } catch (Throwable ex) {
+          handleError(ctx, requestMessage, messageReplier, ex);
+        } finally {
+          //the request is closed once its replies have been written, as they can share buffers
+          sequencer.complete(sequence, requestMessage);
+          if (backpressure != null) {
+            backpressure.onRequestCompleted();
+          }
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      sequencer.complete(sequence, requestMessage);
+      if (backpressure != null) {
+        backpressure.onRequestCompleted();
       }
+      throw ex;
     }
   }
 
+  private void process(RequestMessage requestMessage, MessageReplier messageReplier)
+      throws Exception {
+    LOGGER.debug("Received message type: {}, data: {}",
+        requestMessage.getOpCode(), requestMessage);
+
+    switch (requestMessage.getOpCode()) {
+      case OP_QUERY:
+        assert requestMessage instanceof QueryMessage;
+        requestProcessor.queryMessage((QueryMessage) requestMessage, messageReplier);
+        break;
+      case OP_GET_MORE:
+        assert requestMessage instanceof GetMoreMessage;
+        requestProcessor.getMore((GetMoreMessage) requestMessage, messageReplier);
+        break;
+      case OP_KILL_CURSORS:
+        assert requestMessage instanceof KillCursorsMessage;
+        requestProcessor.killCursors((KillCursorsMessage) requestMessage, messageReplier);
+        break;
+      case OP_INSERT:
+        assert requestMessage instanceof InsertMessage;
+        requestProcessor.insert((InsertMessage) requestMessage, messageReplier);
+        break;
+      case OP_UPDATE:
+        assert requestMessage instanceof UpdateMessage;
+        requestProcessor.update((UpdateMessage) requestMessage, messageReplier);
+        break;
+      case OP_DELETE:
+        assert requestMessage instanceof DeleteMessage;
+        requestProcessor.delete((DeleteMessage) requestMessage, messageReplier);
+        break;
+      case OP_MSG:
+        assert requestMessage instanceof MsgMessage;
+        requestProcessor.msg((MsgMessage) requestMessage, messageReplier);
+        break;
+      default:
+        throw new UnsupportedOperationException(
+            "Message replier not implemented for "
+            + requestMessage.getOpCode() + " opCode"
+        );
+    }
+  }
+
+  /**
+   * Replies with the error when it was raised while a request was decoded. Otherwise the error
+   * cannot be tied to a request, so the connection is closed.
+   *
+   * The error reply is written through the {@link ReplySequencer}, as any other reply, so it is
+   * sent after the replies of the requests received before the one that failed.
+   */
   @Override
   public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+    RequestDecodingException decodingException = findDecodingException(cause);
+    if (decodingException == null) {
+      logCaughtException(cause);
+      LOGGER.error("Closing the connection, as the error is not related to a request");
+      ctx.close();
+      return;
+    }
+
+    int requestId = decodingException.getRequestId();
+    RequestOpCode opCode = decodingException.getOpCode();
+    MessageCompressor compressor = decodingException.getCompressor();
+    ReplySequencer sequencer = ctx.attr(REPLY_SEQUENCER).get();
+    if (sequencer == null) {
+      handleError(ctx, opCode, new NettyMessageReplier(ctx, requestId, null, 0, compressor),
+          decodingException.getCause());
+    } else {
+      long sequence = sequencer.register();
+      try {
+        handleError(ctx, opCode,
+            new NettyMessageReplier(ctx, requestId, sequencer, sequence, compressor),
+            decodingException.getCause());
+      } finally {
+        sequencer.complete(sequence, null);
+      }
+    }
+  }
+
+  @Nullable
+  private static RequestDecodingException findDecodingException(Throwable cause) {
+    Throwable current = cause;
+    while (current != null) {
+      if (current instanceof RequestDecodingException) {
+        return (RequestDecodingException) current;
+      }
+      current = current.getCause();
+    }
+    return null;
+  }
+
+  private void handleError(ChannelHandlerContext ctx, RequestMessage requestMessage,
+      MessageReplier messageReplier, Throwable cause) {
     logCaughtException(cause);
+    try {
+      requestProcessor.handleError(requestMessage, messageReplier, cause);
+    } catch (Throwable ex) {
+      LOGGER.error("Error while handling an error", ex);
+      ctx.close();
+    }
+  }
 
-    MessageReplier messageReplier = new NettyMessageReplier(ctx);
-    requestProcessor.handleError(ctx.attr(REQUEST_OP_CODE).get(), messageReplier, cause);
+  private void handleError(ChannelHandlerContext ctx, RequestOpCode requestOpCode,
+      MessageReplier messageReplier, Throwable cause) {
+    logCaughtException(cause);
+    try {
+      requestProcessor.handleError(requestOpCode, messageReplier, cause);
+    } catch (Throwable ex) {
+      LOGGER.error("Error while handling an error", ex);
+      ctx.close();
+    }
   }
 
   private void logCaughtException(Throwable cause) {
@@ -127,6 +275,10 @@ public class RequestMessageObjectHandler extends ChannelInboundHandlerAdapter {
       LOGGER.debug("Exception raised while logging connection", e);
     }
 
+    if (!requestExecutors.isInline()) {
+      ctx.attr(CONNECTION_EXECUTOR).set(requestExecutors.newConnectionExecutor());
+      ctx.attr(REPLY_SEQUENCER).set(new ReplySequencer(ctx));
+    }
     requestProcessor.onChannelActive(ctx);
 
     super.channelActive(ctx);
@@ -142,6 +294,22 @@ public class RequestMessageObjectHandler extends ChannelInboundHandlerAdapter {
 
     super.channelInactive(ctx);
 
-    requestProcessor.onChannelInactive(ctx);
+    ReplySequencer sequencer = ctx.attr(REPLY_SEQUENCER).get();
+    if (sequencer == null) {
+      requestProcessor.onChannelInactive(ctx);
+    } else {
+      //the connection is released once the pending requests have been executed
+      sequencer.whenIdle(() -> {
+        try {
+          requestProcessor.onChannelInactive(ctx);
+        } catch (RuntimeException ex) {
+          LOGGER.error("Error while closing the connection", ex);
+        }
+      });
+    }
+  }
+
+  void shutDown() {
+    requestExecutors.shutDown();
   }
 }
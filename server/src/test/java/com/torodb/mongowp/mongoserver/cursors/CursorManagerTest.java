@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.mongoserver.cursors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Range;
+import com.google.common.net.HostAndPort;
+import com.torodb.mongowp.commands.pojos.IteratorMongoCursor;
+import com.torodb.mongowp.commands.pojos.MongoCursor.Batch;
+import com.torodb.mongowp.exceptions.CursorNotFoundException;
+import com.torodb.mongowp.exceptions.MongoException;
+import com.torodb.mongowp.server.cursors.CursorManager;
+import io.netty.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ */
+public class CursorManagerTest {
+
+  private HashedWheelTimer timer;
+
+  @Before
+  public void setUp() {
+    timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    timer.stop();
+  }
+
+  @Test
+  public void testFetchAndKill() throws MongoException {
+    try (CursorManager<Integer> manager = new CursorManager<>(timer, 1, TimeUnit.MINUTES,
+        null, 4)) {
+      CountingCursor cursor = new CountingCursor(1, 10);
+      manager.register(cursor, false);
+
+      assertEquals(Arrays.asList(0, 1, 2), manager.fetchBatch(1, 3).asList());
+      assertEquals(Arrays.asList(3, 4), manager.fetchBatch(1, 2).asList());
+      assertEquals(1, manager.size());
+
+      assertTrue(manager.kill(1));
+      assertFalse(manager.kill(1));
+      assertTrue(cursor.isClosed());
+      assertEquals(0, manager.size());
+      assertNull(manager.getCursor(1));
+      try {
+        manager.fetchBatch(1, 3);
+        fail("A killed cursor should not be found");
+      } catch (CursorNotFoundException ex) {
+        assertEquals(1, ex.getCursorId());
+      }
+    }
+  }
+
+  @Test
+  public void testDuplicatedId() {
+    try (CursorManager<Integer> manager = new CursorManager<>(timer, 1, TimeUnit.MINUTES,
+        null, 4)) {
+      manager.register(new CountingCursor(1, 10), false);
+      try {
+        manager.register(new CountingCursor(1, 10), false);
+        fail("Cursor ids must be unique");
+      } catch (IllegalArgumentException ex) {
+        //expected
+      }
+    }
+  }
+
+  @Test
+  public void testIdleTimeout() throws InterruptedException {
+    CountingCursor expiring = new CountingCursor(1, 10);
+    CountingCursor notExpiring = new CountingCursor(2, 10);
+    try (CursorManager<Integer> manager = new CursorManager<>(timer, 50, TimeUnit.MILLISECONDS,
+        null, 4)) {
+      manager.register(expiring, false);
+      manager.register(notExpiring, true);
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (manager.getCursor(1) != null && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertNull(manager.getCursor(1));
+      assertTrue(expiring.isClosed());
+      assertNotNull(manager.getCursor(2));
+      assertFalse(notExpiring.isClosed());
+    }
+    assertTrue(notExpiring.isClosed());
+  }
+
+  @Test
+  public void testPrefetch() throws MongoException {
+    try (CursorManager<Integer> manager = new CursorManager<>(timer, 1, TimeUnit.MINUTES,
+        Runnable::run, 4)) {
+      CountingCursor cursor = new CountingCursor(1, 10);
+      cursor.setMaxBatchSize(4);
+      manager.register(cursor, false);
+      //the first batch is prefetched as soon as the cursor is registered
+      assertEquals(1, cursor.fetches.get());
+
+      Batch<Integer> batch = manager.fetchBatch(1, 4);
+      assertEquals(Arrays.asList(0, 1, 2, 3), batch.asList());
+      assertEquals(2, cursor.fetches.get());
+
+      assertEquals(Arrays.asList(4, 5, 6, 7), manager.fetchBatch(1, 4).asList());
+      assertEquals(3, cursor.fetches.get());
+    }
+  }
+
+  private static class CountingCursor extends IteratorMongoCursor<Integer> {
+
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    public CountingCursor(long id, int size) {
+      super("db", "col", id, HostAndPort.fromHost("localhost"),
+          ContiguousSet.create(Range.closedOpen(0, size), DiscreteDomain.integers()).iterator());
+    }
+
+    @Override
+    public Batch<Integer> fetchBatch() throws MongoException {
+      fetches.incrementAndGet();
+      return super.fetchBatch();
+    }
+  }
+}
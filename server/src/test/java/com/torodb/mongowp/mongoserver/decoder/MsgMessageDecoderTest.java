@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.mongoserver.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.netty.DefaultNettyBsonLowLevelReader;
+import com.torodb.mongowp.bson.netty.NettyBsonDocumentReader;
+import com.torodb.mongowp.bson.netty.NettyBsonDocumentWriter;
+import com.torodb.mongowp.bson.netty.NettyStringReader;
+import com.torodb.mongowp.bson.netty.OffHeapNettyBsonLowLevelReader;
+import com.torodb.mongowp.bson.netty.OffHeapValuesNettyBsonLowLevelReader;
+import com.torodb.mongowp.bson.netty.PooledNettyStringReader;
+import com.torodb.mongowp.bson.netty.pool.AlwaysFalseStringPool;
+import com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
+import com.torodb.mongowp.exceptions.BadValueException;
+import com.torodb.mongowp.exceptions.InvalidBsonException;
+import com.torodb.mongowp.exceptions.NoSuchKeyException;
+import com.torodb.mongowp.messages.request.MsgMessage;
+import com.torodb.mongowp.messages.request.MsgMessage.DocumentSequence;
+import com.torodb.mongowp.messages.request.RequestBaseMessage;
+import com.torodb.mongowp.messages.request.RequestOpCode;
+import com.torodb.mongowp.server.decoder.MsgMessageDecoder;
+import com.torodb.mongowp.utils.BsonDocumentBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ *
+ */
+public class MsgMessageDecoderTest {
+
+  private static final NettyStringReader STRING_READER =
+      new PooledNettyStringReader(AlwaysFalseStringPool.getInstance());
+  private static final NettyBsonDocumentReader DOC_READER =
+      new NettyBsonDocumentReader(new DefaultNettyBsonLowLevelReader(STRING_READER),
+          new OffHeapNettyBsonLowLevelReader(STRING_READER),
+          new OffHeapValuesNettyBsonLowLevelReader(STRING_READER));
+  private static final NettyBsonDocumentWriter DOC_WRITER = new NettyBsonDocumentWriter();
+  private static final RequestBaseMessage BASE_MESSAGE = new RequestBaseMessage(null, 0, 1);
+
+  private final MsgMessageDecoder decoder = new MsgMessageDecoder(STRING_READER, DOC_READER);
+  private ByteBuf buffer;
+
+  @Before
+  public void setUp() {
+    buffer = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    //the header without the length field, as left by RequestMessageByteHandler
+    buffer.writeInt(BASE_MESSAGE.getRequestId());
+    buffer.writeInt(0);
+    buffer.writeInt(RequestOpCode.OP_MSG.getOpCode());
+    buffer.readerIndex(buffer.writerIndex());
+  }
+
+  @Test
+  public void testBodyOnly() throws Exception {
+    BsonDocument body = new BsonDocumentBuilder()
+        .appendUnsafe("ping", DefaultBsonValues.newInt(1))
+        .appendUnsafe("$db", DefaultBsonValues.newString("admin"))
+        .build();
+    buffer.writeInt(0);
+    writeBody(body);
+
+    try (MsgMessage message = decoder.decode(buffer, BASE_MESSAGE)) {
+      assertEquals("admin", message.getDatabase());
+      assertEquals(body, message.getBody());
+      assertTrue(message.getDocumentSequences().isEmpty());
+      assertFalse(message.isMoreToCome());
+      assertFalse(message.isChecksumPresent());
+    }
+  }
+
+  @Test
+  public void testDocumentSequence() throws Exception {
+    BsonDocument body = new BsonDocumentBuilder()
+        .appendUnsafe("insert", DefaultBsonValues.newString("coll"))
+        .appendUnsafe("$db", DefaultBsonValues.newString("test"))
+        .build();
+    BsonDocument doc1 = DefaultBsonValues.newDocument("_id", DefaultBsonValues.newInt(1));
+    BsonDocument doc2 = DefaultBsonValues.newDocument("_id", DefaultBsonValues.newInt(2));
+
+    buffer.writeInt(1 << 1); //more to come
+    writeDocumentSequence("documents", doc1, doc2);
+    writeBody(body);
+
+    try (MsgMessage message = decoder.decode(buffer, BASE_MESSAGE)) {
+      assertEquals("test", message.getDatabase());
+      assertTrue(message.isMoreToCome());
+      assertEquals(body, message.getBody());
+      assertEquals(1, message.getDocumentSequences().size());
+      assertNull(message.getDocumentSequence("updates"));
+
+      DocumentSequence sequence = message.getDocumentSequence("documents");
+      List<BsonDocument> docs = Lists.newArrayList(
+          sequence.getDocuments().getIterable(AllocationType.HEAP));
+      assertEquals(Lists.newArrayList(doc1, doc2), docs);
+    }
+    assertEquals(0, buffer.readableBytes());
+  }
+
+  @Test
+  public void testChecksum() throws Exception {
+    BsonDocument body = DefaultBsonValues.newDocument("$db", DefaultBsonValues.newString("admin"));
+    buffer.writeInt(1);
+    writeBody(body);
+    writeChecksum();
+
+    try (MsgMessage message = decoder.decode(buffer, BASE_MESSAGE)) {
+      assertTrue(message.isChecksumPresent());
+      assertEquals(body, message.getBody());
+    }
+    assertEquals(0, buffer.readableBytes());
+  }
+
+  @Test(expected = InvalidBsonException.class)
+  public void testWrongChecksum() throws Exception {
+    buffer.writeInt(1);
+    writeBody(DefaultBsonValues.newDocument("$db", DefaultBsonValues.newString("admin")));
+    writeChecksum();
+    buffer.setInt(buffer.writerIndex() - 4, buffer.getInt(buffer.writerIndex() - 4) ^ 1);
+
+    decoder.decode(buffer, BASE_MESSAGE);
+  }
+
+  @Test(expected = BadValueException.class)
+  public void testUnknownRequiredFlag() throws Exception {
+    buffer.writeInt(1 << 5);
+    writeBody(DefaultBsonValues.newDocument("$db", DefaultBsonValues.newString("admin")));
+
+    decoder.decode(buffer, BASE_MESSAGE);
+  }
+
+  @Test(expected = BadValueException.class)
+  public void testWithoutBody() throws Exception {
+    buffer.writeInt(0);
+    writeDocumentSequence("documents", DefaultBsonValues.EMPTY_DOC);
+
+    decoder.decode(buffer, BASE_MESSAGE);
+  }
+
+  @Test(expected = NoSuchKeyException.class)
+  public void testWithoutDatabase() throws Exception {
+    buffer.writeInt(0);
+    writeBody(DefaultBsonValues.newDocument("ping", DefaultBsonValues.newInt(1)));
+
+    decoder.decode(buffer, BASE_MESSAGE);
+  }
+
+  private void writeBody(BsonDocument body) {
+    buffer.writeByte(0);
+    DOC_WRITER.writeInto(buffer, body);
+  }
+
+  private void writeChecksum() {
+    //the checksum covers the whole message, including the length field
+    byte[] message = new byte[buffer.writerIndex()];
+    buffer.getBytes(0, message);
+    int checksum = Hashing.crc32c().newHasher()
+        .putInt(message.length + 4 + 4)
+        .putBytes(message)
+        .hash()
+        .asInt();
+    buffer.writeInt(checksum);
+  }
+
+  private void writeDocumentSequence(String identifier, BsonDocument... docs) {
+    buffer.writeByte(1);
+    int sectionStart = buffer.writerIndex();
+    buffer.writeInt(0);
+    buffer.writeBytes(identifier.getBytes(StandardCharsets.UTF_8)).writeByte(0);
+    for (BsonDocument doc : docs) {
+      DOC_WRITER.writeInto(buffer, doc);
+    }
+    buffer.setInt(sectionStart, buffer.writerIndex() - sectionStart);
+  }
+}
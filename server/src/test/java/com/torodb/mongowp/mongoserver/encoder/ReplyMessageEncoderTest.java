@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.mongoserver.encoder;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.google.common.collect.FluentIterable;
+import com.torodb.mongowp.bson.BsonDocument;
+import com.torodb.mongowp.bson.netty.DefaultNettyBsonLowLevelReader;
+import com.torodb.mongowp.bson.netty.NettyBsonDocumentReader;
+import com.torodb.mongowp.bson.netty.NettyBsonDocumentWriter;
+import com.torodb.mongowp.bson.netty.NettyStringReader;
+import com.torodb.mongowp.bson.netty.OffHeapNettyBsonLowLevelReader;
+import com.torodb.mongowp.bson.netty.OffHeapValuesNettyBsonLowLevelReader;
+import com.torodb.mongowp.bson.netty.PooledNettyStringReader;
+import com.torodb.mongowp.bson.netty.pool.AlwaysFalseStringPool;
+import com.torodb.mongowp.bson.utils.BsonDocumentReader.AllocationType;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
+import com.torodb.mongowp.messages.request.EmptyBsonContext;
+import com.torodb.mongowp.messages.response.ReplyMessage;
+import com.torodb.mongowp.messages.utils.IterableDocumentProvider;
+import com.torodb.mongowp.server.encoder.ReplyMessageEncoder;
+import com.torodb.mongowp.server.util.ByteBufIterableDocumentProvider;
+import com.torodb.mongowp.utils.BsonDocumentBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ *
+ */
+public class ReplyMessageEncoderTest {
+
+  private static final NettyStringReader STRING_READER =
+      new PooledNettyStringReader(AlwaysFalseStringPool.getInstance());
+  private static final NettyBsonDocumentReader DOC_READER =
+      new NettyBsonDocumentReader(new DefaultNettyBsonLowLevelReader(STRING_READER),
+          new OffHeapNettyBsonLowLevelReader(STRING_READER),
+          new OffHeapValuesNettyBsonLowLevelReader(STRING_READER));
+
+  private final NettyBsonDocumentWriter writer = new NettyBsonDocumentWriter();
+  private final ReplyMessageEncoder encoder = new ReplyMessageEncoder(writer);
+
+  @Test
+  public void testEncodeMessageBody() {
+    List<BsonDocument> docs = Lists.newArrayList(
+        new BsonDocumentBuilder().appendUnsafe("a", DefaultBsonValues.newInt(1)).build(),
+        new BsonDocumentBuilder().appendUnsafe("b", DefaultBsonValues.newString("text")).build(),
+        DefaultBsonValues.EMPTY_DOC
+    );
+    ReplyMessage message = new ReplyMessage(EmptyBsonContext.getInstance(), 3, false, false,
+        false, false, 17, 5, IterableDocumentProvider.of(docs));
+    ByteBuf buffer = Unpooled.buffer(1).order(ByteOrder.LITTLE_ENDIAN);
+
+    encoder.encodeMessageBody(buffer, message);
+
+    assertEquals(0, buffer.readInt());
+    assertEquals(17, buffer.readLong());
+    assertEquals(5, buffer.readInt());
+    assertEquals(docs.size(), buffer.readInt());
+
+    ByteBuf expectedDocs = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    for (BsonDocument doc : docs) {
+      writer.writeInto(expectedDocs, doc);
+    }
+    assertEquals(expectedDocs, buffer);
+  }
+
+  @Test
+  public void testEncodedSize() {
+    List<BsonDocument> docs = Lists.newArrayList(
+        new BsonDocumentBuilder().appendUnsafe("a", DefaultBsonValues.newInt(1)).build(),
+        new BsonDocumentBuilder().appendUnsafe("b", DefaultBsonValues.newString("text")).build()
+    );
+    ReplyMessage message = new ReplyMessage(EmptyBsonContext.getInstance(), 3, false, false,
+        false, false, 17, 5, IterableDocumentProvider.of(docs));
+    int size = encoder.getEncodedSize(message);
+    ByteBuf buffer = Unpooled.buffer(size, size).order(ByteOrder.LITTLE_ENDIAN);
+
+    encoder.encodeMessageHeader(buffer, message, 1);
+    encoder.encodeMessageBody(buffer, message);
+
+    assertEquals(size, buffer.readableBytes());
+  }
+
+  @Test
+  public void testEncodeOffHeapDocuments() {
+    ByteBuf source = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    writer.writeInto(source,
+        new BsonDocumentBuilder().appendUnsafe("a", DefaultBsonValues.newInt(1)).build());
+    writer.writeInto(source,
+        new BsonDocumentBuilder().appendUnsafe("b", DefaultBsonValues.newString("text")).build());
+    ByteBufIterableDocumentProvider provider =
+        new ByteBufIterableDocumentProvider(source.slice(), DOC_READER);
+    EnumSet<AllocationType> usedAllocations = EnumSet.noneOf(AllocationType.class);
+    IterableDocumentProvider<BsonDocument> documents =
+        new IterableDocumentProvider<BsonDocument>() {
+          @Override
+          public FluentIterable<BsonDocument> getIterable(AllocationType algorithm) {
+            usedAllocations.add(algorithm);
+            return provider.getIterable(algorithm);
+          }
+        };
+    ReplyMessage message = new ReplyMessage(EmptyBsonContext.getInstance(), 3, false, false,
+        false, false, 17, 5, documents);
+    ByteBuf buffer = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+
+    encoder.encodeMessageBody(buffer, message);
+
+    //documents read from a buffer are copied as they are instead of being decoded to the heap
+    assertEquals(EnumSet.of(AllocationType.OFFHEAP), usedAllocations);
+    buffer.skipBytes(Ints.BYTES + Longs.BYTES + Ints.BYTES);
+    assertEquals(2, buffer.readInt());
+    assertEquals(source, buffer);
+  }
+}
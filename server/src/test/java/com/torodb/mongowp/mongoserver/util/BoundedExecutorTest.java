@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.mongoserver.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.torodb.mongowp.server.util.BoundedExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ */
+public class BoundedExecutorTest {
+
+  private ExecutorService pool;
+
+  @Before
+  public void setUp() {
+    pool = Executors.newFixedThreadPool(8);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void testMaxConcurrency() throws InterruptedException {
+    int maxConcurrency = 3;
+    BoundedExecutor executor = new BoundedExecutor(pool, maxConcurrency);
+    CountDownLatch started = new CountDownLatch(maxConcurrency);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger concurrent = new AtomicInteger();
+    AtomicInteger maxObserved = new AtomicInteger();
+    int tasks = 50;
+    CountDownLatch finished = new CountDownLatch(tasks);
+
+    for (int i = 0; i < tasks; i++) {
+      executor.execute(() -> {
+        maxObserved.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        concurrent.decrementAndGet();
+        finished.countDown();
+      });
+    }
+
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    assertEquals(tasks, executor.getPendingTasks());
+    release.countDown();
+
+    assertTrue(finished.await(10, TimeUnit.SECONDS));
+    assertEquals(maxConcurrency, maxObserved.get());
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.mongoserver.util;
+
+import static org.junit.Assert.assertEquals;
+
+import com.torodb.mongowp.server.util.FlushConsolidationHandler;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ */
+public class FlushConsolidationHandlerTest {
+
+  private static EmbeddedChannel createChannel(AtomicInteger flushes, int maxPendingFlushes) {
+    return new EmbeddedChannel(
+        new ChannelOutboundHandlerAdapter() {
+          @Override
+          public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes.incrementAndGet();
+            ctx.flush();
+          }
+        },
+        new FlushConsolidationHandler(maxPendingFlushes, Long.MAX_VALUE),
+        new ChannelInboundHandlerAdapter() {
+          @Override
+          public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            ctx.writeAndFlush(msg);
+          }
+        }
+    );
+  }
+
+  @Test
+  public void testFlushesAreConsolidatedOnRead() {
+    AtomicInteger flushes = new AtomicInteger();
+    EmbeddedChannel channel = createChannel(flushes, 256);
+
+    channel.writeInbound(Unpooled.wrappedBuffer(new byte[] {1}),
+        Unpooled.wrappedBuffer(new byte[] {2}), Unpooled.wrappedBuffer(new byte[] {3}));
+
+    assertEquals(1, flushes.get());
+    assertEquals(3, channel.outboundMessages().size());
+    channel.finish();
+  }
+
+  @Test
+  public void testMaxPendingFlushes() {
+    AtomicInteger flushes = new AtomicInteger();
+    EmbeddedChannel channel = createChannel(flushes, 2);
+
+    channel.writeInbound(Unpooled.wrappedBuffer(new byte[] {1}),
+        Unpooled.wrappedBuffer(new byte[] {2}), Unpooled.wrappedBuffer(new byte[] {3}));
+
+    assertEquals(2, flushes.get());
+    assertEquals(3, channel.outboundMessages().size());
+    channel.finish();
+  }
+
+  @Test
+  public void testFlushOutsideRead() {
+    AtomicInteger flushes = new AtomicInteger();
+    EmbeddedChannel channel = createChannel(flushes, 256);
+
+    channel.write(Unpooled.wrappedBuffer(new byte[] {1}));
+    channel.flush();
+    channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[] {2}));
+    assertEquals(0, flushes.get());
+
+    channel.runPendingTasks();
+    assertEquals(1, flushes.get());
+    assertEquals(2, channel.outboundMessages().size());
+    channel.finish();
+  }
+}
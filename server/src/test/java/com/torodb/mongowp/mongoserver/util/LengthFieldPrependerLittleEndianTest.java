@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.mongoserver.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.torodb.mongowp.server.util.LengthFieldPrependerLittleEndian;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+
+/**
+ *
+ */
+public class LengthFieldPrependerLittleEndianTest {
+
+  @Test
+  public void testMessageIsNotCopied() {
+    EmbeddedChannel channel = new EmbeddedChannel(new LengthFieldPrependerLittleEndian(4, true));
+    ByteBuf message = Unpooled.wrappedBuffer(new byte[] {1, 2, 3});
+
+    channel.writeOutbound(message);
+
+    ByteBuf lengthField = (ByteBuf) channel.readOutbound();
+    assertEquals(4, lengthField.readableBytes());
+    assertEquals(7, lengthField.order(ByteOrder.LITTLE_ENDIAN).getInt(0));
+    assertSame(message, channel.readOutbound());
+    assertNull(channel.readOutbound());
+    lengthField.release();
+    message.release();
+  }
+
+  @Test
+  public void testLengthWithoutLengthField() {
+    EmbeddedChannel channel = new EmbeddedChannel(new LengthFieldPrependerLittleEndian(2, false));
+    ByteBuf message = Unpooled.wrappedBuffer(new byte[] {1, 2, 3});
+
+    channel.writeOutbound(message);
+
+    ByteBuf lengthField = (ByteBuf) channel.readOutbound();
+    assertEquals(2, lengthField.readableBytes());
+    assertEquals(3, lengthField.order(ByteOrder.LITTLE_ENDIAN).getShort(0));
+    lengthField.release();
+    ((ByteBuf) channel.readOutbound()).release();
+  }
+}
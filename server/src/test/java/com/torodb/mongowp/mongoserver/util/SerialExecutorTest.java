@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.mongoserver.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.torodb.mongowp.server.util.SerialExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ */
+public class SerialExecutorTest {
+
+  private ExecutorService pool;
+
+  @Before
+  public void setUp() {
+    pool = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void testOrder() throws InterruptedException {
+    SerialExecutor executor = new SerialExecutor(pool);
+    int tasks = 1000;
+    List<Integer> executed = new ArrayList<>(tasks);
+    AtomicInteger concurrent = new AtomicInteger();
+    AtomicInteger maxConcurrent = new AtomicInteger();
+    CountDownLatch latch = new CountDownLatch(tasks);
+
+    for (int i = 0; i < tasks; i++) {
+      int task = i;
+      executor.execute(() -> {
+        int current = concurrent.incrementAndGet();
+        maxConcurrent.accumulateAndGet(current, Math::max);
+        executed.add(task);
+        concurrent.decrementAndGet();
+        latch.countDown();
+      });
+    }
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertEquals(1, maxConcurrent.get());
+    for (int i = 0; i < tasks; i++) {
+      assertEquals(i, (int) executed.get(i));
+    }
+  }
+
+  @Test
+  public void testFailingTaskDoesNotStopExecution() throws InterruptedException {
+    SerialExecutor executor = new SerialExecutor(pool);
+    CountDownLatch latch = new CountDownLatch(1);
+
+    executor.execute(() -> {
+      throw new IllegalStateException("expected exception");
+    });
+    executor.execute(latch::countDown);
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+  }
+}
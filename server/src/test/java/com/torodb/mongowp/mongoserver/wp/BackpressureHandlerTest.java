@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.mongoserver.wp;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.torodb.mongowp.server.wp.BackpressureHandler;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.Future;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.channels.ClosedChannelException;
+
+/**
+ *
+ */
+public class BackpressureHandlerTest {
+
+  private EmbeddedChannel channel;
+  private BackpressureHandler handler;
+
+  @Before
+  public void setUp() {
+    channel = new EmbeddedChannel();
+    channel.config().setOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, 8);
+    channel.config().setOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, 16);
+    handler = new BackpressureHandler(4);
+    channel.pipeline().addLast(handler);
+  }
+
+  @Test
+  public void testWritableChannel() {
+    Future<Void> future = handler.whenWritable();
+    channel.runPendingTasks();
+    assertTrue(future.isSuccess());
+    assertTrue(channel.config().isAutoRead());
+  }
+
+  @Test
+  public void testSuspendsWhileUnwritable() {
+    channel.write(Unpooled.wrappedBuffer(new byte[32]));
+    assertFalse(channel.isWritable());
+    assertFalse(channel.config().isAutoRead());
+
+    Future<Void> future = handler.whenWritable();
+    channel.runPendingTasks();
+    assertFalse(future.isDone());
+
+    channel.flush();
+    channel.runPendingTasks();
+    assertTrue(channel.isWritable());
+    assertTrue(channel.config().isAutoRead());
+    assertTrue(future.isSuccess());
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testWaitersFailOnClose() {
+    channel.write(Unpooled.wrappedBuffer(new byte[32]));
+    Future<Void> future = handler.whenWritable();
+    channel.runPendingTasks();
+    assertFalse(future.isDone());
+
+    channel.finishAndReleaseAll();
+    assertTrue(future.isDone());
+    assertTrue(future.cause() instanceof ClosedChannelException);
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.mongoserver.wp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.Lists;
+import com.torodb.mongowp.messages.request.RequestOpCode;
+import com.torodb.mongowp.messages.response.ResponseOpCode;
+import com.torodb.mongowp.server.compression.MessageCompressor;
+import com.torodb.mongowp.server.compression.MessageCompressorRegistry;
+import com.torodb.mongowp.server.compression.NoopMessageCompressor;
+import com.torodb.mongowp.server.compression.SnappyMessageCompressor;
+import com.torodb.mongowp.server.compression.ZlibMessageCompressor;
+import com.torodb.mongowp.server.compression.ZstdMessageCompressor;
+import com.torodb.mongowp.server.wp.DecompressedMessage;
+import com.torodb.mongowp.server.wp.MessageCompressorHandler;
+import com.torodb.mongowp.server.wp.MessageDecompressorHandler;
+import com.torodb.mongowp.server.wp.ReplyPromise;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ */
+public class MessageCompressionHandlersTest {
+
+  private static final int REQUEST_ID = 17;
+  private static final int RESPONSE_TO = 3;
+
+  private final MessageCompressorRegistry registry = new MessageCompressorRegistry(
+      Lists.newArrayList(
+          new NoopMessageCompressor(),
+          new SnappyMessageCompressor(),
+          new ZlibMessageCompressor(),
+          new ZstdMessageCompressor()
+      )
+  );
+
+  private static ByteBuf createBody() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      sb.append("a repetitive body that should be easy to compress ").append(i);
+    }
+    return Unpooled.copiedBuffer(sb, StandardCharsets.UTF_8);
+  }
+
+  private static ByteBuf createMessage(int opCode, ByteBuf body) {
+    ByteBuf message = Unpooled.buffer().order(ByteOrder.LITTLE_ENDIAN);
+    message.writeInt(REQUEST_ID);
+    message.writeInt(RESPONSE_TO);
+    message.writeInt(opCode);
+    message.writeBytes(body, body.readerIndex(), body.readableBytes());
+    return message;
+  }
+
+  private void testRoundTrip(String compressorName) {
+    MessageCompressor compressor = registry.getByName(compressorName);
+    EmbeddedChannel channel = new EmbeddedChannel(new MessageCompressorHandler());
+    ByteBuf body = createBody();
+
+    channel.writeAndFlush(createMessage(ResponseOpCode.OP_MSG.getOpCode(), body),
+        new ReplyPromise(channel, compressor));
+    ByteBuf compressed = ((ByteBuf) channel.readOutbound()).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(RequestOpCode.OP_COMPRESSED.getOpCode(),
+        compressed.getInt(compressed.readerIndex() + 8));
+    assertEquals(ResponseOpCode.OP_MSG.getOpCode(),
+        compressed.getInt(compressed.readerIndex() + 12));
+
+    EmbeddedChannel decompressChannel = new EmbeddedChannel(
+        new MessageDecompressorHandler(registry));
+    decompressChannel.writeInbound(compressed);
+    DecompressedMessage decompressed = (DecompressedMessage) decompressChannel.readInbound();
+
+    assertSame(compressor, decompressed.getCompressor());
+    assertEquals(createMessage(ResponseOpCode.OP_MSG.getOpCode(), body),
+        decompressed.content().order(ByteOrder.LITTLE_ENDIAN));
+    decompressed.release();
+    body.release();
+  }
+
+  @Test
+  public void testNoop() {
+    testRoundTrip(NoopMessageCompressor.NAME);
+  }
+
+  @Test
+  public void testSnappy() {
+    testRoundTrip(SnappyMessageCompressor.NAME);
+  }
+
+  @Test
+  public void testZlib() {
+    testRoundTrip(ZlibMessageCompressor.NAME);
+  }
+
+  @Test
+  public void testZstd() {
+    testRoundTrip(ZstdMessageCompressor.NAME);
+  }
+
+  @Test
+  public void testUncompressedMessage() {
+    EmbeddedChannel channel = new EmbeddedChannel(new MessageDecompressorHandler(registry));
+    ByteBuf body = createBody();
+    ByteBuf message = createMessage(RequestOpCode.OP_QUERY.getOpCode(), body);
+
+    channel.writeInbound(message.copy());
+    Object read = channel.readInbound();
+
+    assertFalse(read instanceof DecompressedMessage);
+    assertEquals(message, read);
+    ((ByteBuf) read).release();
+    body.release();
+  }
+
+  @Test
+  public void testRepliesWithoutCompressor() {
+    EmbeddedChannel channel = new EmbeddedChannel(new MessageCompressorHandler());
+    ByteBuf body = createBody();
+    ByteBuf message = createMessage(ResponseOpCode.OP_MSG.getOpCode(), body);
+
+    channel.writeAndFlush(message.copy(), new ReplyPromise(channel, null));
+    channel.writeAndFlush(message.copy());
+
+    for (int i = 0; i < 2; i++) {
+      ByteBuf written = (ByteBuf) channel.readOutbound();
+      assertEquals(message, written);
+      written.release();
+    }
+    body.release();
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 8Kdata Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torodb.mongowp.mongoserver.wp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.torodb.mongowp.bson.netty.NettyBsonDocumentWriter;
+import com.torodb.mongowp.bson.utils.DefaultBsonValues;
+import com.torodb.mongowp.messages.request.EmptyBsonContext;
+import com.torodb.mongowp.messages.response.ReplyMessage;
+import com.torodb.mongowp.messages.utils.IterableDocumentProvider;
+import com.torodb.mongowp.server.callback.ReplyStream;
+import com.torodb.mongowp.server.encoder.ReplyMessageEncoder;
+import com.torodb.mongowp.server.wp.DefaultRequestIdGenerator;
+import com.torodb.mongowp.server.wp.NettyMessageReplier;
+import com.torodb.mongowp.server.wp.ReplyMessageObjectHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ */
+public class NettyMessageReplierTest {
+
+  private static final int REQUEST_ID = 42;
+
+  private EmbeddedChannel channel;
+  private NettyMessageReplier replier;
+
+  @Before
+  public void setUp() {
+    channel = new EmbeddedChannel(
+        new ReplyMessageObjectHandler(new DefaultRequestIdGenerator(),
+            new ReplyMessageEncoder(new NettyBsonDocumentWriter())),
+        new ChannelInboundHandlerAdapter()
+    );
+    replier = new NettyMessageReplier(channel.pipeline().lastContext(), REQUEST_ID);
+  }
+
+  @Test
+  public void testStreamChainsResponseTo() {
+    List<Integer> requestedResponseTos = new ArrayList<>();
+    replier.replyStream(newReply(REQUEST_ID), new ReplyStream() {
+      @Override
+      public ReplyMessage next(int responseTo) {
+        if (requestedResponseTos.size() == 3) {
+          return null;
+        }
+        requestedResponseTos.add(responseTo);
+        return newReply(responseTo);
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+    channel.runPendingTasks();
+
+    List<Integer> requestIds = new ArrayList<>();
+    List<Integer> responseTos = new ArrayList<>();
+    ByteBuf frame;
+    while ((frame = (ByteBuf) channel.readOutbound()) != null) {
+      ByteBuf frameLe = frame.order(ByteOrder.LITTLE_ENDIAN);
+      requestIds.add(frameLe.readInt());
+      responseTos.add(frameLe.readInt());
+      frame.release();
+    }
+
+    assertEquals(4, requestIds.size());
+    assertEquals(REQUEST_ID, (int) responseTos.get(0));
+    for (int i = 1; i < requestIds.size(); i++) {
+      assertEquals("frame " + i + " must answer to the previous one",
+          requestIds.get(i - 1), responseTos.get(i));
+      assertEquals(requestIds.get(i - 1), requestedResponseTos.get(i - 1));
+    }
+    assertNull(channel.readOutbound());
+  }
+
+  private static ReplyMessage newReply(int responseTo) {
+    return new ReplyMessage(EmptyBsonContext.getInstance(), responseTo, false, false, false,
+        false, 1, 0, IterableDocumentProvider.of(Collections.singletonList(
+            DefaultBsonValues.newDocument("a", DefaultBsonValues.newInt(1)))));
+  }
+}